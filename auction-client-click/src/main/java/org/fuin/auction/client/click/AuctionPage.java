@@ -48,9 +48,11 @@ public abstract class AuctionPage extends Page {
 	/** Error message code for an internal error. */
 	protected static final String INTERNAL_ERROR = "00001";
 
-	private final AuctionCommandService commandService;
+	/** Thread safe validator shared by all pages. */
+	private static final Validator VALIDATOR = Validation.buildDefaultValidatorFactory()
+	        .getValidator();
 
-	private final Validator validator;
+	private final AuctionCommandService commandService;
 
 	@Bindable
 	protected Form searchForm = new Form();
@@ -62,7 +64,6 @@ public abstract class AuctionPage extends Page {
 		super();
 
 		// TODO michael Refactor the following when switching to Spring
-		validator = Validation.buildDefaultValidatorFactory().getValidator();
 		try {
 			commandService = (AuctionCommandService) new HessianProxyFactory().create(
 			        AuctionCommandService.class,
@@ -218,7 +219,7 @@ public abstract class AuctionPage extends Page {
 					textField = new PasswordField(tf.getField().getName(), field.getLabelText(),
 					        field.isRequired());
 				} else {
-					textField = new BeanValidationTextField(validator, renderClassInfo.getClasz(),
+					textField = new BeanValidationTextField(VALIDATOR, renderClassInfo.getClasz(),
 					        tf.getField().getName(), field.getLabelText(), field.isRequired());
 				}
 				final Long minLength = field.getMinLength();
@@ -239,7 +240,7 @@ public abstract class AuctionPage extends Page {
 	}
 
 	protected final Validator getValidator() {
-		return validator;
+		return VALIDATOR;
 	}
 
 	/**
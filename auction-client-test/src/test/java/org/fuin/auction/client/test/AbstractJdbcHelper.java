@@ -22,6 +22,8 @@ import java.sql.Connection;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 import javax.sql.DataSource;
@@ -40,10 +42,14 @@ import com.mchange.v2.c3p0.ComboPooledDataSource;
  */
 public abstract class AbstractJdbcHelper {
 
+	/** Pools shared by all instances - Key is the properties resource name. */
+	private static final Map<String, DataSource> DATA_SOURCES = new HashMap<String, DataSource>();
+
 	private final DataSource dataSource;
 
 	/**
-	 * Constructor with JDBC properties.
+	 * Constructor with JDBC properties. All instances using the same properties
+	 * resource share one connection pool.
 	 * 
 	 * @param clasz
 	 *            Class to use for loading the properties.
@@ -52,14 +58,24 @@ public abstract class AbstractJdbcHelper {
 	 *            (Keys='driverclass', 'url', 'username', 'password').
 	 */
 	public AbstractJdbcHelper(final Class<?> clasz, final String jdbcPropResName) {
+		synchronized (DATA_SOURCES) {
+			DataSource ds = DATA_SOURCES.get(jdbcPropResName);
+			if (ds == null) {
+				ds = createDataSource(loadJdbcProperties(clasz, jdbcPropResName));
+				DATA_SOURCES.put(jdbcPropResName, ds);
+			}
+			this.dataSource = ds;
+		}
+	}
+
+	private static DataSource createDataSource(final Properties jdbcProperties) {
 		try {
-			final Properties jdbcProperties = loadJdbcProperties(clasz, jdbcPropResName);
 			final ComboPooledDataSource cpds = new ComboPooledDataSource();
 			cpds.setDriverClass(jdbcProperties.getProperty("driverclass"));
 			cpds.setJdbcUrl(jdbcProperties.getProperty("url"));
 			cpds.setUser(jdbcProperties.getProperty("username"));
 			cpds.setPassword(jdbcProperties.getProperty("password"));
-			this.dataSource = cpds;
+			return cpds;
 		} catch (final PropertyVetoException ex) {
 			throw new RuntimeException(ex);
 		}
@@ -15,6 +15,8 @@
  */
 package org.fuin.auction.command.api.base;
 
+import java.util.List;
+
 import org.fuin.auction.common.Operation;
 import org.fuin.auction.common.OperationResult;
 
@@ -43,4 +45,17 @@ public interface AuctionCommandService {
 	 */
 	public OperationResult send(Operation command);
 
+	/**
+	 * Sends a list of commands to the server with a single request. Use this
+	 * for bulk operations like imports. The commands are executed
+	 * concurrently - The execution order is only guaranteed for commands that
+	 * target the same aggregate.
+	 * 
+	 * @param commands
+	 *            Commands to execute.
+	 * 
+	 * @return One result for every command in the same order as the commands.
+	 */
+	public List<OperationResult> sendBatch(List<Operation> commands);
+
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.command.server.base;
+
+import org.fuin.axon.support.base.LruCache;
+import org.fuin.axon.support.base.VersionCheckingCachingRepository;
+
+/**
+ * Statistics of the aggregate cache of a repository. Only primitive values
+ * are returned, so the attributes can be read by any JMX client. Exposed via
+ * JMX and the "/metrics" HTTP endpoint.
+ */
+public final class AggregateCacheMetrics {
+
+	private final String name;
+
+	private final VersionCheckingCachingRepository<?> repository;
+
+	private final LruCache cache;
+
+	/**
+	 * Constructor with all necessary values.
+	 * 
+	 * @param name
+	 *            Name of the cache used in the report (for example "User").
+	 * @param repository
+	 *            Repository that uses the cache.
+	 * @param cache
+	 *            Cache of the repository.
+	 */
+	public AggregateCacheMetrics(final String name,
+	        final VersionCheckingCachingRepository<?> repository, final LruCache cache) {
+		super();
+		if (name == null) {
+			throw new IllegalArgumentException("The argument 'name' cannot be null");
+		}
+		if (repository == null) {
+			throw new IllegalArgumentException("The argument 'repository' cannot be null");
+		}
+		if (cache == null) {
+			throw new IllegalArgumentException("The argument 'cache' cannot be null");
+		}
+		this.name = name;
+		this.repository = repository;
+		this.cache = cache;
+	}
+
+	/**
+	 * Returns the name of the cache.
+	 * 
+	 * @return Name used in the report.
+	 */
+	public final String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the number of cached aggregates.
+	 * 
+	 * @return Number of entries.
+	 */
+	public final int getSize() {
+		return cache.size();
+	}
+
+	/**
+	 * Returns the maximum number of cached aggregates.
+	 * 
+	 * @return Maximum number of entries.
+	 */
+	public final int getMaxSize() {
+		return cache.getMaxSize();
+	}
+
+	/**
+	 * Returns the number of aggregates found in the cache.
+	 * 
+	 * @return Number of hits.
+	 */
+	public final int getHits() {
+		return cache.getHits();
+	}
+
+	/**
+	 * Returns the number of aggregates that had to be loaded from the store.
+	 * 
+	 * @return Number of misses.
+	 */
+	public final int getMisses() {
+		return cache.getMisses();
+	}
+
+	/**
+	 * Returns the number of aggregates evicted because the cache was full.
+	 * 
+	 * @return Number of evictions.
+	 */
+	public final int getEvictions() {
+		return cache.getEvictions();
+	}
+
+	/**
+	 * Returns the number of cached aggregates that were outdated.
+	 * 
+	 * @return Number of discarded cache entries.
+	 */
+	public final int getStaleEntries() {
+		return repository.getStaleEntries();
+	}
+
+	/**
+	 * Returns the statistics as a single line of human readable text.
+	 * 
+	 * @return Report.
+	 */
+	public final String getReport() {
+		return "cache " + name + ": size=" + getSize() + "/" + getMaxSize() + ", hits="
+		        + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions()
+		        + ", stale=" + getStaleEntries() + "\n";
+	}
+
+}
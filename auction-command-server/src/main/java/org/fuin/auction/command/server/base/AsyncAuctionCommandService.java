@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.command.server.base;
+
+import org.fuin.auction.common.Operation;
+
+/**
+ * Non blocking variant of the
+ * {@link org.fuin.auction.command.api.base.AuctionCommandService}.
+ */
+public interface AsyncAuctionCommandService {
+
+	/**
+	 * Sends a command without waiting for the result. Commands and results are
+	 * validated the same way as by the synchronous service.
+	 * 
+	 * @param command
+	 *            Command to execute.
+	 * @param callback
+	 *            Receives the result exactly once.
+	 */
+	public void sendAsync(Operation command, OperationResultCallback callback);
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.command.server.base;
+
+import org.fuin.auction.command.api.base.CreateCategoryCommand;
+import org.fuin.auction.command.api.base.DeleteCategoryCommand;
+import org.fuin.auction.command.api.base.MarkCategoryForDeletionCommand;
+import org.fuin.auction.command.api.base.RegisterUserCommand;
+import org.fuin.auction.command.api.base.UserChangePasswordCommand;
+import org.fuin.axon.support.base.CommandRoutingKeyResolver;
+
+/**
+ * Routes commands for the same aggregate to the same lane. Commands that
+ * create an aggregate use the unique name, so two attempts to register the
+ * same name don't compete for the constraint.
+ */
+public final class AuctionCommandRoutingKeyResolver implements CommandRoutingKeyResolver {
+
+	@Override
+	public final Object getRoutingKey(final Object command) {
+		if (command instanceof MarkCategoryForDeletionCommand) {
+			return ((MarkCategoryForDeletionCommand) command).getAggregateId();
+		}
+		if (command instanceof DeleteCategoryCommand) {
+			return ((DeleteCategoryCommand) command).getAggregateId();
+		}
+		if (command instanceof UserChangePasswordCommand) {
+			return ((UserChangePasswordCommand) command).getAggregateId();
+		}
+		if (command instanceof CreateCategoryCommand) {
+			return ((CreateCategoryCommand) command).getName();
+		}
+		if (command instanceof RegisterUserCommand) {
+			return ((RegisterUserCommand) command).getUserName();
+		}
+		return null;
+	}
+
+}
@@ -15,31 +15,50 @@
  */
 package org.fuin.auction.command.server.base;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.inject.Inject;
 
 import org.axonframework.commandhandling.CommandBus;
+import org.axonframework.commandhandling.CommandCallback;
 import org.axonframework.commandhandling.callbacks.FutureCallback;
 import org.fuin.auction.command.api.base.AuctionCommandService;
 import org.fuin.auction.command.api.base.InvalidCommandResult;
 import org.fuin.auction.common.InternalErrorResult;
 import org.fuin.auction.common.Operation;
 import org.fuin.auction.common.OperationResult;
-import org.fuin.objects4j.Contract;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Implements the {@link AuctionCommandService}.
+ * Implements the {@link AuctionCommandService} and the
+ * {@link AsyncAuctionCommandService}.
  */
-public class AuctionCommandServiceImpl implements AuctionCommandService {
+public class AuctionCommandServiceImpl implements AuctionCommandService,
+        AsyncAuctionCommandService {
 
 	private static final Logger LOG = LoggerFactory.getLogger(AuctionCommandServiceImpl.class);
 
+	/** Default maximum number of commands of one batch executed at the same time. */
+	public static final int DEFAULT_MAX_BATCH_IN_FLIGHT = 200;
+
 	@Inject
 	private CommandBus commandBus;
 
+	@Inject
+	private OperationValidator operationValidator;
+
+	@Inject
+	private CommandMetrics commandMetrics;
+
+	private int maxBatchInFlight = DEFAULT_MAX_BATCH_IN_FLIGHT;
+
 	/**
 	 * Sets the command bus.
 	 * 
@@ -50,43 +69,210 @@ public class AuctionCommandServiceImpl implements AuctionCommandService {
 		this.commandBus = commandBus;
 	}
 
+	/**
+	 * Sets the validator for commands and results.
+	 * 
+	 * @param operationValidator
+	 *            Validator.
+	 */
+	public final void setOperationValidator(final OperationValidator operationValidator) {
+		this.operationValidator = operationValidator;
+	}
+
+	/**
+	 * Sets the metrics to update.
+	 * 
+	 * @param commandMetrics
+	 *            Metrics.
+	 */
+	public final void setCommandMetrics(final CommandMetrics commandMetrics) {
+		this.commandMetrics = commandMetrics;
+	}
+
+	/**
+	 * Sets the maximum number of commands of a single batch that are
+	 * dispatched but not yet completed. This keeps a large batch from filling
+	 * up the command bus queues.
+	 * 
+	 * @param maxBatchInFlight
+	 *            Number of commands.
+	 */
+	public final void setMaxBatchInFlight(final int maxBatchInFlight) {
+		if (maxBatchInFlight < 1) {
+			throw new IllegalArgumentException("The value must be at least 1: "
+			        + maxBatchInFlight);
+		}
+		this.maxBatchInFlight = maxBatchInFlight;
+	}
+
 	@Override
 	public final OperationResult send(final Operation command) {
 
+		final FutureCallback<OperationResult> future = new FutureCallback<OperationResult>();
+		sendAsync(command, new OperationResultCallback() {
+			@Override
+			public void onResult(final OperationResult result) {
+				future.onSuccess(result);
+			}
+		});
+		try {
+			return future.get();
+		} catch (final ExecutionException ex) {
+			LOG.error("Error executing command: " + command.toTraceString(), ex);
+			return new InternalErrorResult();
+		} catch (final InterruptedException ex) {
+			LOG.error("Interrupted error: " + command.toTraceString(), ex);
+			return new InternalErrorResult();
+		}
+
+	}
+
+	@Override
+	public final List<OperationResult> sendBatch(final List<Operation> commands) {
+
+		if (commands == null) {
+			LOG.error("Invalid command batch: null");
+			return new ArrayList<OperationResult>();
+		}
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Received command batch: " + commands.size() + " commands");
+		}
+
+		final OperationResult[] results = new OperationResult[commands.size()];
+		final CountDownLatch done = new CountDownLatch(results.length);
+		final Semaphore inFlight = new Semaphore(maxBatchInFlight);
+		boolean interrupted = false;
+		for (int i = 0; i < results.length; i++) {
+			final Operation command = commands.get(i);
+			if (command == null) {
+				LOG.error("Invalid command: null (index=" + i + ")");
+				results[i] = new InvalidCommandResult();
+				done.countDown();
+				continue;
+			}
+			if (interrupted) {
+				results[i] = new InternalErrorResult();
+				done.countDown();
+				continue;
+			}
+			try {
+				inFlight.acquire();
+			} catch (final InterruptedException ex) {
+				LOG.error("Interrupted error: " + command.toTraceString(), ex);
+				interrupted = true;
+				results[i] = new InternalErrorResult();
+				done.countDown();
+				continue;
+			}
+			final int index = i;
+			sendAsync(command, new OperationResultCallback() {
+				@Override
+				public void onResult(final OperationResult result) {
+					results[index] = result;
+					inFlight.release();
+					done.countDown();
+				}
+			});
+		}
+
+		try {
+			done.await();
+		} catch (final InterruptedException ex) {
+			LOG.error("Interrupted while waiting for command batch", ex);
+			Thread.currentThread().interrupt();
+			for (int i = 0; i < results.length; i++) {
+				if (results[i] == null) {
+					results[i] = new InternalErrorResult();
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return new ArrayList<OperationResult>(Arrays.asList(results));
+
+	}
+
+	@Override
+	public final void sendAsync(final Operation command,
+	        final OperationResultCallback resultCallback) {
+
+		final long start = System.nanoTime();
+		final AtomicBoolean completed = new AtomicBoolean();
+		final OperationResultCallback callback = new OperationResultCallback() {
+			@Override
+			public void onResult(final OperationResult result) {
+				// The bus reports a failure if "onSuccess" throws - Only the
+				// first result counts
+				if (!completed.compareAndSet(false, true)) {
+					LOG.error("Ignored additional result " + result.toTraceString()
+					        + " for command: " + command.toTraceString());
+					return;
+				}
+				commandMetrics.recordDispatch(command, System.nanoTime() - start, result);
+				try {
+					resultCallback.onResult(result);
+				} catch (final RuntimeException ex) {
+					LOG.error("Error in result callback: " + command.toTraceString(), ex);
+				}
+			}
+		};
 		try {
 			if (LOG.isDebugEnabled()) {
 				LOG.debug("Received command: " + command.toTraceString());
 			}
 			validateCommand(command);
 
-			final FutureCallback<OperationResult> callback = new FutureCallback<OperationResult>();
-			commandBus.dispatch(command, callback);
-			final OperationResult result = callback.get();
+			commandBus.dispatch(command, new CommandCallback<OperationResult>() {
+
+				@Override
+				public void onSuccess(final OperationResult result) {
+					callback.onResult(checkResult(command, result));
+				}
+
+				@Override
+				public void onFailure(final Throwable cause) {
+					LOG.error("Error executing command: " + command.toTraceString(), cause);
+					callback.onResult(new InternalErrorResult());
+				}
+
+			});
+
+		} catch (final InvalidCommandException ex) {
+			LOG.error("Invalid command: " + command.toTraceString(), ex);
+			callback.onResult(new InvalidCommandResult());
+		} catch (final RuntimeException ex) {
+			LOG.error("Internal error: " + command.toTraceString(), ex);
+			callback.onResult(new InternalErrorResult());
+		}
+
+	}
+
+	/**
+	 * Logs and validates the result of a command.
+	 * 
+	 * @param command
+	 *            Executed command.
+	 * @param result
+	 *            Result returned by the command handler.
+	 * 
+	 * @return The result or an {@link InternalErrorResult} if it was invalid.
+	 */
+	private OperationResult checkResult(final Operation command, final OperationResult result) {
+		try {
 			if (LOG.isDebugEnabled()) {
 				LOG.debug("Command result: " + result.toTraceString());
 			}
 			validateResult(result);
-
 			return result;
-
-		} catch (final InvalidCommandException ex) {
-			LOG.error("Invalid command: " + command.toTraceString(), ex);
-			return new InvalidCommandResult();
-		} catch (final ExecutionException ex) {
-			LOG.error("Error executing command: " + command.toTraceString(), ex);
-			return new InternalErrorResult();
 		} catch (final InvalidResultException ex) {
 			LOG.error("Invalid result: " + ex.getResult().toTraceString() + ", command: "
 			        + command.toTraceString(), ex);
 			return new InternalErrorResult();
-		} catch (final InterruptedException ex) {
-			LOG.error("Interrupted error: " + command.toTraceString(), ex);
-			return new InternalErrorResult();
 		} catch (final RuntimeException ex) {
 			LOG.error("Internal error: " + command.toTraceString(), ex);
 			return new InternalErrorResult();
 		}
-
 	}
 
 	/**
@@ -101,7 +287,7 @@ public class AuctionCommandServiceImpl implements AuctionCommandService {
 	private void validateCommand(final Operation command) throws InvalidCommandException {
 		try {
 			// Don't let invalid commands get through
-			Contract.requireValid(command);
+			operationValidator.validateCommand(command);
 		} catch (final IllegalStateException ex) {
 			throw new InvalidCommandException(ex);
 		}
@@ -118,7 +304,7 @@ public class AuctionCommandServiceImpl implements AuctionCommandService {
 	 */
 	private void validateResult(final OperationResult result) throws InvalidResultException {
 		try {
-			Contract.requireValid(result);
+			operationValidator.validateResult(result);
 		} catch (final IllegalStateException ex) {
 			// Violated post condition / Programming error!
 			throw new InvalidResultException(ex, result);
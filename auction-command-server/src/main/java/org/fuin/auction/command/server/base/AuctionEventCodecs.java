@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.command.server.base;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fuin.auction.command.server.events.CategoryCreatedEvent;
+import org.fuin.auction.command.server.events.CategoryDeletedEvent;
+import org.fuin.auction.command.server.events.CategoryMarkedForDeletionEvent;
+import org.fuin.auction.command.server.events.UserCreatedEvent;
+import org.fuin.auction.command.server.events.UserEmailVerifiedEvent;
+import org.fuin.auction.command.server.events.UserPasswordChangedEvent;
+import org.fuin.auction.common.CategoryName;
+import org.fuin.axon.support.base.BinaryEventSerializer;
+import org.fuin.axon.support.base.EventCodec;
+import org.fuin.objects4j.EmailAddress;
+import org.fuin.objects4j.PasswordSha512;
+import org.fuin.objects4j.SecurityToken;
+import org.fuin.objects4j.UserName;
+
+/**
+ * Binary codecs for all events of the command server. Every codec writes the
+ * attributes of the event in the order they are declared in the event model.
+ * If an event's attributes change, the codec's version has to be incremented
+ * and the read method must still be able to handle the old versions.
+ */
+public final class AuctionEventCodecs {
+
+	/**
+	 * Private constructor to avoid instantiation.
+	 */
+	private AuctionEventCodecs() {
+		throw new UnsupportedOperationException("You cannot create an instance of a utility class!");
+	}
+
+	/**
+	 * Creates codecs for all events.
+	 * 
+	 * @return New list of codecs.
+	 */
+	public static List<EventCodec<?>> createAll() {
+		final List<EventCodec<?>> codecs = new ArrayList<EventCodec<?>>();
+		codecs.add(new UserCreatedEventCodec());
+		codecs.add(new UserEmailVerifiedEventCodec());
+		codecs.add(new UserPasswordChangedEventCodec());
+		codecs.add(new CategoryCreatedEventCodec());
+		codecs.add(new CategoryMarkedForDeletionEventCodec());
+		codecs.add(new CategoryDeletedEventCodec());
+		return codecs;
+	}
+
+	private static String str(final Object obj) {
+		if (obj == null) {
+			return null;
+		}
+		return obj.toString();
+	}
+
+	/**
+	 * Codec for {@link UserCreatedEvent}.
+	 */
+	private static final class UserCreatedEventCodec implements EventCodec<UserCreatedEvent> {
+
+		@Override
+		public Class<UserCreatedEvent> getEventClass() {
+			return UserCreatedEvent.class;
+		}
+
+		@Override
+		public int getVersion() {
+			return 1;
+		}
+
+		@Override
+		public void write(final ByteBuffer buf, final UserCreatedEvent event) {
+			BinaryEventSerializer.putString(buf, str(event.getUserName()));
+			BinaryEventSerializer.putString(buf, str(event.getPassword()));
+			BinaryEventSerializer.putString(buf, str(event.getEmail()));
+			BinaryEventSerializer.putString(buf, str(event.getSecurityToken()));
+		}
+
+		@Override
+		public UserCreatedEvent read(final ByteBuffer buf, final int version) {
+			final UserName userName = new UserName(BinaryEventSerializer.getString(buf));
+			final PasswordSha512 password = new PasswordSha512(BinaryEventSerializer
+			        .getString(buf));
+			final EmailAddress email = new EmailAddress(BinaryEventSerializer.getString(buf));
+			final SecurityToken securityToken = new SecurityToken(BinaryEventSerializer
+			        .getString(buf));
+			return new UserCreatedEvent(userName, password, email, securityToken);
+		}
+
+	}
+
+	/**
+	 * Codec for {@link UserEmailVerifiedEvent}.
+	 */
+	private static final class UserEmailVerifiedEventCodec implements
+	        EventCodec<UserEmailVerifiedEvent> {
+
+		@Override
+		public Class<UserEmailVerifiedEvent> getEventClass() {
+			return UserEmailVerifiedEvent.class;
+		}
+
+		@Override
+		public int getVersion() {
+			return 1;
+		}
+
+		@Override
+		public void write(final ByteBuffer buf, final UserEmailVerifiedEvent event) {
+			// No attributes
+		}
+
+		@Override
+		public UserEmailVerifiedEvent read(final ByteBuffer buf, final int version) {
+			return new UserEmailVerifiedEvent();
+		}
+
+	}
+
+	/**
+	 * Codec for {@link UserPasswordChangedEvent}.
+	 */
+	private static final class UserPasswordChangedEventCodec implements
+	        EventCodec<UserPasswordChangedEvent> {
+
+		@Override
+		public Class<UserPasswordChangedEvent> getEventClass() {
+			return UserPasswordChangedEvent.class;
+		}
+
+		@Override
+		public int getVersion() {
+			return 1;
+		}
+
+		@Override
+		public void write(final ByteBuffer buf, final UserPasswordChangedEvent event) {
+			BinaryEventSerializer.putString(buf, str(event.getOldPassword()));
+			BinaryEventSerializer.putString(buf, str(event.getNewPassword()));
+		}
+
+		@Override
+		public UserPasswordChangedEvent read(final ByteBuffer buf, final int version) {
+			final PasswordSha512 oldPassword = new PasswordSha512(BinaryEventSerializer
+			        .getString(buf));
+			final PasswordSha512 newPassword = new PasswordSha512(BinaryEventSerializer
+			        .getString(buf));
+			return new UserPasswordChangedEvent(oldPassword, newPassword);
+		}
+
+	}
+
+	/**
+	 * Codec for {@link CategoryCreatedEvent}.
+	 */
+	private static final class CategoryCreatedEventCodec implements
+	        EventCodec<CategoryCreatedEvent> {
+
+		@Override
+		public Class<CategoryCreatedEvent> getEventClass() {
+			return CategoryCreatedEvent.class;
+		}
+
+		@Override
+		public int getVersion() {
+			return 1;
+		}
+
+		@Override
+		public void write(final ByteBuffer buf, final CategoryCreatedEvent event) {
+			BinaryEventSerializer.putString(buf, str(event.getName()));
+		}
+
+		@Override
+		public CategoryCreatedEvent read(final ByteBuffer buf, final int version) {
+			return new CategoryCreatedEvent(new CategoryName(BinaryEventSerializer.getString(buf)));
+		}
+
+	}
+
+	/**
+	 * Codec for {@link CategoryMarkedForDeletionEvent}.
+	 */
+	private static final class CategoryMarkedForDeletionEventCodec implements
+	        EventCodec<CategoryMarkedForDeletionEvent> {
+
+		@Override
+		public Class<CategoryMarkedForDeletionEvent> getEventClass() {
+			return CategoryMarkedForDeletionEvent.class;
+		}
+
+		@Override
+		public int getVersion() {
+			return 1;
+		}
+
+		@Override
+		public void write(final ByteBuffer buf, final CategoryMarkedForDeletionEvent event) {
+			// No attributes
+		}
+
+		@Override
+		public CategoryMarkedForDeletionEvent read(final ByteBuffer buf, final int version) {
+			return new CategoryMarkedForDeletionEvent();
+		}
+
+	}
+
+	/**
+	 * Codec for {@link CategoryDeletedEvent}.
+	 */
+	private static final class CategoryDeletedEventCodec implements
+	        EventCodec<CategoryDeletedEvent> {
+
+		@Override
+		public Class<CategoryDeletedEvent> getEventClass() {
+			return CategoryDeletedEvent.class;
+		}
+
+		@Override
+		public int getVersion() {
+			return 1;
+		}
+
+		@Override
+		public void write(final ByteBuffer buf, final CategoryDeletedEvent event) {
+			// No attributes
+		}
+
+		@Override
+		public CategoryDeletedEvent read(final ByteBuffer buf, final int version) {
+			return new CategoryDeletedEvent();
+		}
+
+	}
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.command.server.base;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.axonframework.domain.DomainEvent;
+import org.fuin.auction.command.server.events.CategoryCreatedEvent;
+import org.fuin.auction.command.server.events.CategoryDeletedEvent;
+import org.fuin.auction.command.server.events.CategoryMarkedForDeletionEvent;
+import org.fuin.auction.command.server.events.UserCreatedEvent;
+import org.fuin.auction.command.server.events.UserEmailVerifiedEvent;
+import org.fuin.auction.command.server.events.UserPasswordChangedEvent;
+import org.fuin.auction.message.api.AuctionMessage;
+import org.fuin.auction.message.api.CategoryCreatedMessage;
+import org.fuin.auction.message.api.CategoryDeletedMessage;
+import org.fuin.auction.message.api.CategoryMarkedForDeletionMessage;
+import org.fuin.auction.message.api.UserEmailVerifiedMessage;
+import org.fuin.auction.message.api.UserPasswordChangedMessage;
+import org.fuin.auction.message.api.UserRegisteredMessage;
+
+/**
+ * Converts events into the messages sent to the query server. Used for the
+ * live messages of the {@link AuctionMessageProducer} as well as for the
+ * {@link ProjectionReplay}, so both create exactly the same messages.
+ */
+public final class AuctionMessageMapper {
+
+	private static final Map<Class<?>, Converter<?>> CONVERTERS = createConverters();
+
+	/**
+	 * Private constructor to avoid instantiation.
+	 */
+	private AuctionMessageMapper() {
+		throw new UnsupportedOperationException("You cannot create an instance of a utility class!");
+	}
+
+	/**
+	 * Converts an event into a message.
+	 * 
+	 * @param event
+	 *            Event to convert.
+	 * 
+	 * @return Message or <code>null</code> if the event is not published to
+	 *         the query server.
+	 */
+	public static AuctionMessage toMessage(final DomainEvent event) {
+		if (event == null) {
+			throw new IllegalArgumentException("The argument 'event' cannot be null");
+		}
+		final Converter<DomainEvent> converter = cast(CONVERTERS.get(event.getClass()));
+		if (converter == null) {
+			return null;
+		}
+		return converter.convert(event);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Converter<DomainEvent> cast(final Converter<?> converter) {
+		return (Converter<DomainEvent>) converter;
+	}
+
+	private static Map<Class<?>, Converter<?>> createConverters() {
+		final Map<Class<?>, Converter<?>> map = new HashMap<Class<?>, Converter<?>>();
+		map.put(CategoryCreatedEvent.class, new Converter<CategoryCreatedEvent>() {
+			@Override
+			public AuctionMessage convert(final CategoryCreatedEvent event) {
+				return new CategoryCreatedMessage(event.getAggregateIdentifier().toString(), event
+				        .getName().toString());
+			}
+		});
+		map.put(CategoryMarkedForDeletionEvent.class,
+		        new Converter<CategoryMarkedForDeletionEvent>() {
+			        @Override
+			        public AuctionMessage convert(final CategoryMarkedForDeletionEvent event) {
+				        return new CategoryMarkedForDeletionMessage(event.getAggregateIdentifier()
+				                .toString());
+			        }
+		        });
+		map.put(CategoryDeletedEvent.class, new Converter<CategoryDeletedEvent>() {
+			@Override
+			public AuctionMessage convert(final CategoryDeletedEvent event) {
+				return new CategoryDeletedMessage(event.getAggregateIdentifier().toString());
+			}
+		});
+		map.put(UserCreatedEvent.class, new Converter<UserCreatedEvent>() {
+			@Override
+			public AuctionMessage convert(final UserCreatedEvent event) {
+				return new UserRegisteredMessage(event.getAggregateIdentifier().toString(), event
+				        .getUserName().toString(), event.getPassword().toString(), event
+				        .getEmail().toString(), event.getSecurityToken().toString());
+			}
+		});
+		map.put(UserEmailVerifiedEvent.class, new Converter<UserEmailVerifiedEvent>() {
+			@Override
+			public AuctionMessage convert(final UserEmailVerifiedEvent event) {
+				return new UserEmailVerifiedMessage(event.getAggregateIdentifier().toString());
+			}
+		});
+		map.put(UserPasswordChangedEvent.class, new Converter<UserPasswordChangedEvent>() {
+			@Override
+			public AuctionMessage convert(final UserPasswordChangedEvent event) {
+				return new UserPasswordChangedMessage(event.getAggregateIdentifier().toString(),
+				        event.getNewPassword().toString());
+			}
+		});
+		return map;
+	}
+
+	/**
+	 * Converts a single event type.
+	 * 
+	 * @param <T>
+	 *            Type of the event.
+	 */
+	private interface Converter<T extends DomainEvent> {
+
+		/**
+		 * Creates the message for an event.
+		 * 
+		 * @param event
+		 *            Event to convert.
+		 * 
+		 * @return New message.
+		 */
+		public AuctionMessage convert(T event);
+
+	}
+
+}
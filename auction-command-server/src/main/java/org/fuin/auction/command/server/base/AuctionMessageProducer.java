@@ -15,12 +15,11 @@
  */
 package org.fuin.auction.command.server.base;
 
+import javax.inject.Inject;
 import javax.inject.Named;
-import javax.jms.JMSException;
-import javax.jms.Message;
-import javax.jms.Session;
 
-import org.axonframework.eventhandling.FullConcurrencyPolicy;
+import org.axonframework.domain.DomainEvent;
+import org.axonframework.eventhandling.SequentialPerAggregatePolicy;
 import org.axonframework.eventhandling.annotation.AsynchronousEventListener;
 import org.axonframework.eventhandling.annotation.EventHandler;
 import org.fuin.auction.command.server.events.CategoryCreatedEvent;
@@ -36,37 +35,35 @@ import org.fuin.auction.message.api.CategoryMarkedForDeletionMessage;
 import org.fuin.auction.message.api.UserEmailVerifiedMessage;
 import org.fuin.auction.message.api.UserPasswordChangedMessage;
 import org.fuin.auction.message.api.UserRegisteredMessage;
-import org.fuin.axon.support.base.LongAggregateIdentifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.jms.core.JmsTemplate;
-import org.springframework.jms.core.MessageCreator;
 
 /**
- * Sends events as JMS messages.
+ * Sends events as JMS messages. The messages are handed over to a
+ * {@link BatchingMessagePublisher}. Events of the same aggregate are handled
+ * one after another, so their messages keep the order.
  * 
  * FIXME michael Transaction handling for messages! Problem: Unexpected runtime
  * exceptions that occur AFTER the message has been published. This should be
  * handled together with database transactions (storing the event).
  */
 @Named
-@AsynchronousEventListener(sequencingPolicyClass = FullConcurrencyPolicy.class)
+@AsynchronousEventListener(sequencingPolicyClass = SequentialPerAggregatePolicy.class)
 public class AuctionMessageProducer {
 
 	private static final Logger LOG = LoggerFactory.getLogger(AuctionMessageProducer.class);
 
-	@Autowired
-	private JmsTemplate jmsTemplate;
+	@Inject
+	private BatchingMessagePublisher publisher;
 
 	/**
-	 * Sets the JMS template to a new value.
+	 * Sets the publisher to a new value.
 	 * 
-	 * @param jmsTemplate
-	 *            Template to set.
+	 * @param publisher
+	 *            Publisher to set.
 	 */
-	protected final void setJmsTemplate(final JmsTemplate jmsTemplate) {
-		this.jmsTemplate = jmsTemplate;
+	protected final void setPublisher(final BatchingMessagePublisher publisher) {
+		this.publisher = publisher;
 	}
 
 	/**
@@ -78,8 +75,7 @@ public class AuctionMessageProducer {
 	 */
 	@EventHandler
 	public final void handleCategoryCreatedEvent(final CategoryCreatedEvent event) {
-		final LongAggregateIdentifier ai = (LongAggregateIdentifier) event.getAggregateIdentifier();
-		publish(new CategoryCreatedMessage(ai.toString(), event.getName().toString()));
+		publish(event);
 	}
 
 	/**
@@ -92,8 +88,7 @@ public class AuctionMessageProducer {
 	@EventHandler
 	public final void handleCategoryMarkedForDeletionEvent(
 	        final CategoryMarkedForDeletionEvent event) {
-		final LongAggregateIdentifier ai = (LongAggregateIdentifier) event.getAggregateIdentifier();
-		publish(new CategoryMarkedForDeletionMessage(ai.toString()));
+		publish(event);
 	}
 
 	/**
@@ -105,8 +100,7 @@ public class AuctionMessageProducer {
 	 */
 	@EventHandler
 	public final void handleCategoryDeletedEvent(final CategoryDeletedEvent event) {
-		final LongAggregateIdentifier ai = (LongAggregateIdentifier) event.getAggregateIdentifier();
-		publish(new CategoryDeletedMessage(ai.toString()));
+		publish(event);
 	}
 
 	/**
@@ -117,9 +111,7 @@ public class AuctionMessageProducer {
 	 */
 	@EventHandler
 	public final void handleUserCreatedEvent(final UserCreatedEvent event) {
-		publish(new UserRegisteredMessage(event.getAggregateIdentifier().toString(), event
-		        .getUserName().toString(), event.getPassword().toString(), event.getEmail()
-		        .toString(), event.getSecurityToken().toString()));
+		publish(event);
 	}
 
 	/**
@@ -131,7 +123,7 @@ public class AuctionMessageProducer {
 	 */
 	@EventHandler
 	public final void handleUserEmailVerifiedEvent(final UserEmailVerifiedEvent event) {
-		publish(new UserEmailVerifiedMessage(event.getAggregateIdentifier().toString()));
+		publish(event);
 	}
 
 	/**
@@ -143,26 +135,22 @@ public class AuctionMessageProducer {
 	 */
 	@EventHandler
 	public final void handleUserPasswordChangedEvent(final UserPasswordChangedEvent event) {
-		publish(new UserPasswordChangedMessage(event.getAggregateIdentifier().toString(), event
-		        .getNewPassword().toString()));
+		publish(event);
 	}
 
 	/**
-	 * Publish a message to JMS.
+	 * Converts an event with the {@link AuctionMessageMapper} and publishes
+	 * the message to JMS.
 	 * 
-	 * @param message
-	 *            Message to publish.
+	 * @param event
+	 *            Event to publish.
 	 */
-	private void publish(final AuctionMessage message) {
+	private void publish(final DomainEvent event) {
+		final AuctionMessage message = AuctionMessageMapper.toMessage(event);
 		if (LOG.isDebugEnabled()) {
 			LOG.debug("Publish to JMS: " + message.toTraceString());
 		}
-		jmsTemplate.send(new MessageCreator() {
-			@Override
-			public final Message createMessage(final Session session) throws JMSException {
-				return session.createObjectMessage(message);
-			}
-		});
+		publisher.publish(message);
 	}
 
 }
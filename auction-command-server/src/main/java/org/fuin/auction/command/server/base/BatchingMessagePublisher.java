@@ -0,0 +1,623 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.command.server.base;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.fuin.auction.message.api.AuctionMessage;
+import org.fuin.auction.message.api.AuctionMessageCodecs;
+import org.fuin.auction.message.api.MessageCodecRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.ProducerCallback;
+
+/**
+ * Sends messages in batches. A single sender thread takes the first waiting
+ * message and collects further ones until either the
+ * {@link #setLingerMillis(long) linger time} is over or the
+ * {@link #setMaxBatchSize(int) maximum batch size} is reached. All collected
+ * messages are sent with one session and committed together if the
+ * {@link JmsTemplate#setSessionTransacted(boolean) session is transacted}.
+ * Messages are sent in the order they were published.<br>
+ * <br>
+ * A batch that cannot be sent is {@link #setMaxRetries(int) retried} with an
+ * exponentially growing {@link #setRetryMillis(long) delay}. No other batch is
+ * sent in the meantime, so the order is kept and publishers wait as soon as
+ * the queue is full. Only if all retries failed the messages are logged and
+ * counted as {@link #getFailedMessages() failed}. The batch is sent again as
+ * a whole, so consumers may receive duplicates if the session is not
+ * transacted.<br>
+ * <br>
+ * Messages with a registered codec are sent as compact {@link BytesMessage};
+ * all others as {@link javax.jms.ObjectMessage}. The binary format can be
+ * {@link #setBinaryFormat(boolean) switched off} until all consumers are able
+ * to read it.<br>
+ * <br>
+ * The aggregate id is sent as {@link #GROUP_ID_PROPERTY message group}, so the
+ * broker delivers all messages of an aggregate to the same consumer and in
+ * order, even if many consumers are active.<br>
+ * <br>
+ * The publisher has to be {@link #start() started} before it can be used and
+ * should be {@link #stop() stopped} when it is no longer needed.
+ */
+public class BatchingMessagePublisher {
+
+	private static final Logger LOG = LoggerFactory.getLogger(BatchingMessagePublisher.class);
+
+	/** Default maximum time to wait for more messages. */
+	public static final long DEFAULT_LINGER_MILLIS = 5;
+
+	/** Default maximum number of messages sent with one commit. */
+	public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+	/** Default maximum number of messages waiting to be sent. */
+	public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
+	/** Default number of attempts to send a batch again after an error. */
+	public static final int DEFAULT_MAX_RETRIES = 10;
+
+	/** Default delay before the first retry. */
+	public static final long DEFAULT_RETRY_MILLIS = 100;
+
+	/** Upper limit for the delay between two retries. */
+	public static final long MAX_RETRY_DELAY_MILLIS = 10000;
+
+	/** JMS property that assigns a message to a message group. */
+	public static final String GROUP_ID_PROPERTY = "JMSXGroupID";
+
+	private final JmsTemplate jmsTemplate;
+
+	private final BlockingQueue<Object> queue;
+
+	private final Object stopMarker = new Object();
+
+	private final AtomicLong batches = new AtomicLong();
+
+	private final AtomicLong messages = new AtomicLong();
+
+	private final AtomicLong failedMessages = new AtomicLong();
+
+	private final AtomicLong maxBatch = new AtomicLong();
+
+	private final AtomicLong retries = new AtomicLong();
+
+	private final AtomicLong pending = new AtomicLong();
+
+	private long lingerMillis;
+
+	private int maxBatchSize;
+
+	private int maxRetries;
+
+	private long retryMillis;
+
+	private MessageCodecRegistry codecRegistry;
+
+	private boolean binaryFormat;
+
+	private boolean running;
+
+	private Thread sender;
+
+	/**
+	 * Constructor with template and queue capacity.
+	 * 
+	 * @param jmsTemplate
+	 *            Template used to send the messages to the default
+	 *            destination.
+	 * @param queueCapacity
+	 *            Maximum number of messages waiting to be sent. Callers of
+	 *            {@link #publish(AuctionMessage)} wait if the queue is full.
+	 */
+	public BatchingMessagePublisher(final JmsTemplate jmsTemplate, final int queueCapacity) {
+		super();
+		if (jmsTemplate == null) {
+			throw new IllegalArgumentException("The argument 'jmsTemplate' cannot be null");
+		}
+		this.jmsTemplate = jmsTemplate;
+		this.queue = new LinkedBlockingQueue<Object>(queueCapacity);
+		this.lingerMillis = DEFAULT_LINGER_MILLIS;
+		this.maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+		this.maxRetries = DEFAULT_MAX_RETRIES;
+		this.retryMillis = DEFAULT_RETRY_MILLIS;
+		this.codecRegistry = AuctionMessageCodecs.createRegistry();
+		this.binaryFormat = true;
+	}
+
+	/**
+	 * Constructor with template.
+	 * 
+	 * @param jmsTemplate
+	 *            Template used to send the messages to the default
+	 *            destination.
+	 */
+	public BatchingMessagePublisher(final JmsTemplate jmsTemplate) {
+		this(jmsTemplate, DEFAULT_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * Sets the maximum time the sender waits for more messages before the
+	 * collected ones are sent. A value of zero only combines the messages that
+	 * are already waiting.
+	 * 
+	 * @param lingerMillis
+	 *            Time in milliseconds.
+	 */
+	public final void setLingerMillis(final long lingerMillis) {
+		if (lingerMillis < 0) {
+			throw new IllegalArgumentException("The linger time cannot be negative: "
+			        + lingerMillis);
+		}
+		this.lingerMillis = lingerMillis;
+	}
+
+	/**
+	 * Returns the maximum time the sender waits for more messages.
+	 * 
+	 * @return Time in milliseconds.
+	 */
+	public final long getLingerMillis() {
+		return lingerMillis;
+	}
+
+	/**
+	 * Sets the codecs used to encode the messages. Defaults to the codecs for
+	 * all messages of the message API.
+	 * 
+	 * @param codecRegistry
+	 *            Registry to use.
+	 */
+	public final void setCodecRegistry(final MessageCodecRegistry codecRegistry) {
+		if (codecRegistry == null) {
+			throw new IllegalArgumentException("The argument 'codecRegistry' cannot be null");
+		}
+		this.codecRegistry = codecRegistry;
+	}
+
+	/**
+	 * Returns the codecs used to encode the messages.
+	 * 
+	 * @return Codec registry.
+	 */
+	public final MessageCodecRegistry getCodecRegistry() {
+		return codecRegistry;
+	}
+
+	/**
+	 * Sets if messages with a registered codec are sent in the binary format.
+	 * 
+	 * @param binaryFormat
+	 *            TRUE to send {@link BytesMessage}s, FALSE to send
+	 *            {@link javax.jms.ObjectMessage}s only.
+	 */
+	public final void setBinaryFormat(final boolean binaryFormat) {
+		this.binaryFormat = binaryFormat;
+	}
+
+	/**
+	 * Returns if messages with a registered codec are sent in the binary
+	 * format.
+	 * 
+	 * @return TRUE if {@link BytesMessage}s are sent.
+	 */
+	public final boolean isBinaryFormat() {
+		return binaryFormat;
+	}
+
+	/**
+	 * Sets the maximum number of messages sent with one commit.
+	 * 
+	 * @param maxBatchSize
+	 *            Number of messages.
+	 */
+	public final void setMaxBatchSize(final int maxBatchSize) {
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("The maximum batch size must be at least 1: "
+			        + maxBatchSize);
+		}
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * Returns the maximum number of messages sent with one commit.
+	 * 
+	 * @return Number of messages.
+	 */
+	public final int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	/**
+	 * Sets how often a batch is sent again after an error before the messages
+	 * are given up.
+	 * 
+	 * @param maxRetries
+	 *            Number of retries.
+	 */
+	public final void setMaxRetries(final int maxRetries) {
+		if (maxRetries < 0) {
+			throw new IllegalArgumentException("The number of retries cannot be negative: "
+			        + maxRetries);
+		}
+		this.maxRetries = maxRetries;
+	}
+
+	/**
+	 * Returns how often a batch is sent again after an error.
+	 * 
+	 * @return Number of retries.
+	 */
+	public final int getMaxRetries() {
+		return maxRetries;
+	}
+
+	/**
+	 * Sets the delay before the first retry. The delay is doubled for every
+	 * further retry up to {@link #MAX_RETRY_DELAY_MILLIS}.
+	 * 
+	 * @param retryMillis
+	 *            Time in milliseconds.
+	 */
+	public final void setRetryMillis(final long retryMillis) {
+		if (retryMillis < 0) {
+			throw new IllegalArgumentException("The retry delay cannot be negative: "
+			        + retryMillis);
+		}
+		this.retryMillis = retryMillis;
+	}
+
+	/**
+	 * Returns the delay before the first retry.
+	 * 
+	 * @return Time in milliseconds.
+	 */
+	public final long getRetryMillis() {
+		return retryMillis;
+	}
+
+	/**
+	 * Returns the number of batches sent so far.
+	 * 
+	 * @return Number of batches.
+	 */
+	public final long getBatches() {
+		return batches.get();
+	}
+
+	/**
+	 * Returns the number of messages sent so far.
+	 * 
+	 * @return Number of messages.
+	 */
+	public final long getMessages() {
+		return messages.get();
+	}
+
+	/**
+	 * Returns the number of messages that could not be sent.
+	 * 
+	 * @return Number of messages.
+	 */
+	public final long getFailedMessages() {
+		return failedMessages.get();
+	}
+
+	/**
+	 * Returns the number of retries after an error sending a batch.
+	 * 
+	 * @return Number of retries.
+	 */
+	public final long getRetries() {
+		return retries.get();
+	}
+
+	/**
+	 * Returns the average number of messages per batch.
+	 * 
+	 * @return Average batch size.
+	 */
+	public final double getAverageBatchSize() {
+		final long count = batches.get();
+		if (count == 0) {
+			return 0.0;
+		}
+		return (double) messages.get() / count;
+	}
+
+	/**
+	 * Returns the largest number of messages sent with one batch.
+	 * 
+	 * @return Maximum batch size.
+	 */
+	public final long getLargestBatchSize() {
+		return maxBatch.get();
+	}
+
+	/**
+	 * Returns the number of published messages that are not yet sent or given
+	 * up. In contrast to the {@link #getQueueSize() queue size} this includes
+	 * the batch the sender is currently working on, even while it waits for a
+	 * retry.
+	 * 
+	 * @return Number of messages.
+	 */
+	public final long getPendingMessages() {
+		return pending.get();
+	}
+
+	/**
+	 * Returns the number of messages waiting to be sent.
+	 * 
+	 * @return Queue size.
+	 */
+	public final int getQueueSize() {
+		return queue.size();
+	}
+
+	/**
+	 * Starts the sender thread. Calling this method on an already started
+	 * publisher has no effect.
+	 */
+	public final synchronized void start() {
+		if (running) {
+			return;
+		}
+		sender = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				sendLoop();
+			}
+		}, "BatchingMessagePublisher-Sender");
+		sender.setDaemon(true);
+		running = true;
+		sender.start();
+	}
+
+	/**
+	 * Sends all waiting messages and stops the sender thread.
+	 */
+	public final void stop() {
+		final Thread thread;
+		synchronized (this) {
+			if (!running) {
+				return;
+			}
+			running = false;
+			thread = sender;
+			sender = null;
+		}
+		boolean interrupted = false;
+		while (true) {
+			try {
+				queue.put(stopMarker);
+				break;
+			} catch (final InterruptedException ex) {
+				interrupted = true;
+			}
+		}
+		while (thread.isAlive()) {
+			try {
+				thread.join();
+			} catch (final InterruptedException ex) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Adds a message to the queue. The method returns before the message is
+	 * sent.
+	 * 
+	 * @param message
+	 *            Message to send.
+	 */
+	public final void publish(final AuctionMessage message) {
+		if (message == null) {
+			throw new IllegalArgumentException("The argument 'message' cannot be null");
+		}
+		synchronized (this) {
+			if (!running) {
+				throw new IllegalStateException("The publisher was not started");
+			}
+		}
+		pending.incrementAndGet();
+		try {
+			queue.put(message);
+		} catch (final InterruptedException ex) {
+			pending.decrementAndGet();
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while publishing: "
+			        + message.toTraceString(), ex);
+		}
+	}
+
+	/**
+	 * Main loop of the sender thread.
+	 */
+	private void sendLoop() {
+		final List<AuctionMessage> batch = new ArrayList<AuctionMessage>();
+		boolean stop = false;
+		while (!stop) {
+			try {
+				final Object first = queue.take();
+				if (first == stopMarker) {
+					stop = true;
+				} else {
+					batch.add((AuctionMessage) first);
+					stop = collect(batch);
+				}
+			} catch (final InterruptedException ex) {
+				stop = true;
+			}
+			if (batch.size() > 0) {
+				try {
+					send(batch);
+				} finally {
+					pending.addAndGet(-batch.size());
+				}
+				batch.clear();
+			}
+		}
+	}
+
+	/**
+	 * Adds more messages to the batch until the batch is full or the linger
+	 * time is over.
+	 * 
+	 * @param batch
+	 *            Batch with at least one message.
+	 * 
+	 * @return If the stop marker was found <code>true</code> else
+	 *         <code>false</code>.
+	 * 
+	 * @throws InterruptedException
+	 *             The thread was interrupted.
+	 */
+	private boolean collect(final List<AuctionMessage> batch) throws InterruptedException {
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+		while (batch.size() < maxBatchSize) {
+			final long remaining = deadline - System.nanoTime();
+			final Object next;
+			if (remaining > 0) {
+				next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+			} else {
+				next = queue.poll();
+			}
+			if (next == null) {
+				return false;
+			}
+			if (next == stopMarker) {
+				return true;
+			}
+			batch.add((AuctionMessage) next);
+		}
+		return false;
+	}
+
+	/**
+	 * Sends all messages with one session and retries on errors. If all
+	 * retries fail the messages are logged.
+	 * 
+	 * @param batch
+	 *            Messages to send.
+	 */
+	private void send(final List<AuctionMessage> batch) {
+		long delay = retryMillis;
+		int attempt = 0;
+		while (true) {
+			try {
+				sendOnce(batch);
+				return;
+			} catch (final RuntimeException ex) {
+				if (attempt >= maxRetries) {
+					failedMessages.addAndGet(batch.size());
+					LOG.error("Error publishing " + batch.size() + " messages to JMS - Giving up"
+					        + " after " + attempt + " retries", ex);
+					for (final AuctionMessage message : batch) {
+						LOG.error("Not published: " + message.toTraceString());
+					}
+					return;
+				}
+				attempt++;
+				retries.incrementAndGet();
+				LOG.warn("Error publishing " + batch.size() + " messages to JMS - Retry "
+				        + attempt + "/" + maxRetries + " in " + delay + " ms", ex);
+			}
+			try {
+				Thread.sleep(delay);
+			} catch (final InterruptedException ex) {
+				// Retry immediately - The sender stops after this batch
+				Thread.currentThread().interrupt();
+			}
+			delay = Math.min(delay * 2, MAX_RETRY_DELAY_MILLIS);
+		}
+	}
+
+	/**
+	 * Sends all messages with one session.
+	 * 
+	 * @param batch
+	 *            Messages to send.
+	 */
+	private void sendOnce(final List<AuctionMessage> batch) {
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Publish batch to JMS: " + batch.size() + " messages");
+		}
+		final ProducerCallback<Object> callback = new ProducerCallback<Object>() {
+			@Override
+			public Object doInJms(final Session session, final MessageProducer producer)
+			        throws JMSException {
+				for (final AuctionMessage message : batch) {
+					producer.send(createMessage(session, message));
+				}
+				if (session.getTransacted()) {
+					session.commit();
+				}
+				return null;
+			}
+		};
+		jmsTemplate.execute(jmsTemplate.getDefaultDestination(), callback);
+		batches.incrementAndGet();
+		messages.addAndGet(batch.size());
+		long max = maxBatch.get();
+		while ((batch.size() > max) && !maxBatch.compareAndSet(max, batch.size())) {
+			max = maxBatch.get();
+		}
+	}
+
+	/**
+	 * Creates the JMS message for a message.
+	 * 
+	 * @param session
+	 *            Session to use.
+	 * @param message
+	 *            Message to send.
+	 * 
+	 * @return New JMS message.
+	 * 
+	 * @throws JMSException
+	 *             Error creating the message.
+	 */
+	private Message createMessage(final Session session, final AuctionMessage message)
+	        throws JMSException {
+		final Message jmsMessage;
+		if (binaryFormat && codecRegistry.isRegistered(message.getClass())) {
+			final BytesMessage bytesMessage = session.createBytesMessage();
+			codecRegistry.encode(bytesMessage, message);
+			jmsMessage = bytesMessage;
+		} else {
+			jmsMessage = session.createObjectMessage(message);
+		}
+		jmsMessage.setStringProperty(GROUP_ID_PROPERTY, message.getAggregateId());
+		return jmsMessage;
+	}
+
+}
@@ -15,7 +15,9 @@
  */
 package org.fuin.auction.command.server.base;
 
+import javax.inject.Inject;
 import javax.inject.Named;
+import javax.sql.DataSource;
 
 import org.fuin.auction.command.server.domain.Category;
 import org.fuin.auction.command.server.utils.AbstractJdbcAggregateIdentifierLongFactory;
@@ -25,17 +27,25 @@ import org.fuin.axon.support.base.LongIdFactory;
  * Pure JDBC service (Apache Derby!) that creates new aggregate identifiers.
  * Could be done more nice (database independent for example...) but it's just
  * to show that there is no need that a "full-blown" Hibernate or JPA here...
+ * Identifiers are reserved in blocks of {@link #BLOCK_SIZE}, so the database
+ * is only queried once per block.
  */
 @Named
 @LongIdFactory(Category.class)
 public final class CategoryIdFactory extends AbstractJdbcAggregateIdentifierLongFactory {
 
+	/** Number of identifiers reserved with one sequence value. */
+	public static final int BLOCK_SIZE = 1000;
+
 	/**
-	 * Default constructor.
+	 * Constructor with data source.
+	 * 
+	 * @param dataSource
+	 *            Data source to use.
 	 */
-	public CategoryIdFactory() {
-		super(CategoryIdFactory.class, "/jdbc.properties",
-		        "VALUES (NEXT VALUE FOR COMMANDSERVER.CATEGORY_ID)");
+	@Inject
+	public CategoryIdFactory(final DataSource dataSource) {
+		super(dataSource, "VALUES (NEXT VALUE FOR COMMANDSERVER.CATEGORY_ID)", BLOCK_SIZE);
 	}
 
 }
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.command.server.base;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.fuin.auction.command.server.utils.LatencyHistogram;
+import org.fuin.auction.common.OperationResult;
+
+/**
+ * Collects durations and result counts of the command processing. The names
+ * of the histograms are built from the phase and the simple class name of
+ * the command, aggregate or event (for example "handler RegisterUserCommand").
+ * Exposed via JMX and the "/metrics" HTTP endpoint. Only primitive values and
+ * strings are returned, so any JMX client can read them.
+ */
+public final class CommandMetrics {
+
+	/** Whole command from receiving it until the result is available. */
+	public static final String DISPATCH = "dispatch";
+
+	/** Execution of the command handler including loading the aggregate. */
+	public static final String HANDLER = "handler";
+
+	/** Commit of the unit of work - Saving the aggregate and publishing. */
+	public static final String COMMIT = "commit";
+
+	/** Loading an aggregate from the repository. */
+	public static final String REPOSITORY_LOAD = "repository-load";
+
+	/** Saving an aggregate to the repository - Part of the commit. */
+	public static final String REPOSITORY_SAVE = "repository-save";
+
+	/** Publishing a single event to the event bus. */
+	public static final String PUBLISH = "publish";
+
+	/** Number of results with a given type. */
+	public static final String RESULT = "result";
+
+	private final ConcurrentMap<String, LatencyHistogram> histograms;
+
+	private final ConcurrentMap<String, AtomicLong> counters;
+
+	/**
+	 * Default constructor.
+	 */
+	public CommandMetrics() {
+		super();
+		this.histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+		this.counters = new ConcurrentHashMap<String, AtomicLong>();
+	}
+
+	/**
+	 * Records the time needed for a command and counts the result type.
+	 * 
+	 * @param command
+	 *            Executed command.
+	 * @param nanos
+	 *            Duration in nanoseconds.
+	 * @param result
+	 *            Result returned to the caller.
+	 */
+	public final void recordDispatch(final Object command, final long nanos,
+	        final OperationResult result) {
+		record(DISPATCH, command.getClass(), nanos);
+		increment(RESULT + " " + result.getClass().getSimpleName());
+	}
+
+	/**
+	 * Records the duration of a processing phase.
+	 * 
+	 * @param phase
+	 *            Phase like {@link #HANDLER} or {@link #PUBLISH}.
+	 * @param type
+	 *            Type of the command, aggregate or event.
+	 * @param nanos
+	 *            Duration in nanoseconds.
+	 */
+	public final void record(final String phase, final Class<?> type, final long nanos) {
+		getHistogram(phase + " " + type.getSimpleName()).record(nanos);
+	}
+
+	/**
+	 * Returns the names of all histograms sorted by name.
+	 * 
+	 * @return Histogram names.
+	 */
+	public final String[] getHistogramNames() {
+		final Set<String> names = new TreeMap<String, LatencyHistogram>(histograms).keySet();
+		return names.toArray(new String[names.size()]);
+	}
+
+	/**
+	 * Returns the number of durations recorded for a histogram.
+	 * 
+	 * @param name
+	 *            Name of the histogram.
+	 * 
+	 * @return Count or <code>0</code> if the histogram is unknown.
+	 */
+	public final long getCount(final String name) {
+		final LatencyHistogram histogram = histograms.get(name);
+		if (histogram == null) {
+			return 0;
+		}
+		return histogram.getCount();
+	}
+
+	/**
+	 * Returns a percentile of a histogram.
+	 * 
+	 * @param name
+	 *            Name of the histogram.
+	 * @param percentile
+	 *            Value between 0 and 100.
+	 * 
+	 * @return Duration in milliseconds or <code>0.0</code> if the histogram is
+	 *         unknown.
+	 */
+	public final double getPercentileMillis(final String name, final double percentile) {
+		final LatencyHistogram histogram = histograms.get(name);
+		if (histogram == null) {
+			return 0.0;
+		}
+		return histogram.getPercentileMillis(percentile);
+	}
+
+	/**
+	 * Returns the longest duration of a histogram.
+	 * 
+	 * @param name
+	 *            Name of the histogram.
+	 * 
+	 * @return Maximum in milliseconds or <code>0.0</code> if the histogram is
+	 *         unknown.
+	 */
+	public final double getMaxMillis(final String name) {
+		final LatencyHistogram histogram = histograms.get(name);
+		if (histogram == null) {
+			return 0.0;
+		}
+		return histogram.getMaxMillis();
+	}
+
+	/**
+	 * Returns the names of all counters sorted by name.
+	 * 
+	 * @return Counter names.
+	 */
+	public final String[] getCounterNames() {
+		final Set<String> names = new TreeMap<String, AtomicLong>(counters).keySet();
+		return names.toArray(new String[names.size()]);
+	}
+
+	/**
+	 * Returns the value of a counter.
+	 * 
+	 * @param name
+	 *            Name of the counter.
+	 * 
+	 * @return Value or <code>0</code> if the counter is unknown.
+	 */
+	public final long getCounter(final String name) {
+		final AtomicLong counter = counters.get(name);
+		if (counter == null) {
+			return 0;
+		}
+		return counter.get();
+	}
+
+	/**
+	 * Returns all metrics as human readable text with one line per histogram
+	 * or counter.
+	 * 
+	 * @return Report.
+	 */
+	public final String getReport() {
+		final StringBuilder sb = new StringBuilder();
+		final Map<String, LatencyHistogram> sorted = new TreeMap<String, LatencyHistogram>(
+		        histograms);
+		for (final Map.Entry<String, LatencyHistogram> entry : sorted.entrySet()) {
+			sb.append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
+		}
+		for (final String name : getCounterNames()) {
+			sb.append(name).append(": ").append(getCounter(name)).append("\n");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Removes all collected values.
+	 */
+	public final void reset() {
+		histograms.clear();
+		counters.clear();
+	}
+
+	private LatencyHistogram getHistogram(final String name) {
+		LatencyHistogram histogram = histograms.get(name);
+		if (histogram == null) {
+			histogram = new LatencyHistogram();
+			final LatencyHistogram existing = histograms.putIfAbsent(name, histogram);
+			if (existing != null) {
+				histogram = existing;
+			}
+		}
+		return histogram;
+	}
+
+	private void increment(final String name) {
+		AtomicLong counter = counters.get(name);
+		if (counter == null) {
+			counter = new AtomicLong();
+			final AtomicLong existing = counters.putIfAbsent(name, counter);
+			if (existing != null) {
+				counter = existing;
+			}
+		}
+		counter.incrementAndGet();
+	}
+
+}
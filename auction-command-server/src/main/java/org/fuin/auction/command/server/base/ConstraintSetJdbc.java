@@ -18,8 +18,10 @@ package org.fuin.auction.command.server.base;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-import javax.inject.Named;
+import javax.sql.DataSource;
 
 import org.fuin.auction.command.server.domain.CategoryNameAlreadyExistException;
 import org.fuin.auction.command.server.domain.UserEmailAlreadyExistsException;
@@ -35,18 +37,21 @@ import org.slf4j.LoggerFactory;
 /**
  * Pure JDBC constraint service (Apache Derby!). Could be done more nice
  * (database independent for example...) but it's just to show that there is no
- * need that a "full-blown" Hibernate or JPA here...
+ * need that a "full-blown" Hibernate or JPA here... Used as persistent store
+ * by the {@link IndexedConstraintSet}.
  */
-@Named
 public final class ConstraintSetJdbc extends AbstractJdbcHelper implements ConstraintSet {
 
 	private static final Logger LOG = LoggerFactory.getLogger(ConstraintSetJdbc.class);
 
 	/**
-	 * Default constructor.
+	 * Constructor with data source.
+	 * 
+	 * @param dataSource
+	 *            Data source to use.
 	 */
-	public ConstraintSetJdbc() {
-		super(ConstraintSetJdbc.class, "/jdbc.properties");
+	public ConstraintSetJdbc(final DataSource dataSource) {
+		super(dataSource);
 	}
 
 	@Override
@@ -115,6 +120,44 @@ public final class ConstraintSetJdbc extends AbstractJdbcHelper implements Const
 		        .toString());
 	}
 
+	/**
+	 * Adds all registered user name/email combinations to a map.
+	 * 
+	 * @param userNameToEmail
+	 *            Map to add the entries to - Key is the user name and value
+	 *            the email address.
+	 * 
+	 * @return Number of rows read.
+	 */
+	public final int selectAllUserNameEmails(final Map<String, String> userNameToEmail) {
+		final RowHandler handler = new RowHandler() {
+			@Override
+			public void handle(final ResultSet rs) throws SQLException {
+				userNameToEmail.put(rs.getString(1), rs.getString(2));
+			}
+		};
+		return selectEachSilent("select USER_NAME, EMAIL from COMMANDSERVER.USERNAME_EMAIL",
+		        handler);
+	}
+
+	/**
+	 * Adds all registered category names to a set.
+	 * 
+	 * @param categoryNames
+	 *            Set to add the names to.
+	 * 
+	 * @return Number of rows read.
+	 */
+	public final int selectAllCategoryNames(final Set<String> categoryNames) {
+		final RowHandler handler = new RowHandler() {
+			@Override
+			public void handle(final ResultSet rs) throws SQLException {
+				categoryNames.add(rs.getString(1));
+			}
+		};
+		return selectEachSilent("select NAME from COMMANDSERVER.CATEGORY_NAMES", handler);
+	}
+
 	/**
 	 * Tries to insert the userid/email combination and wraps a
 	 * "duplicate primary key" exception into a <code>false</code> return value.
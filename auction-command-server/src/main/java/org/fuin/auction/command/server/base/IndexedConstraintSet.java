@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.command.server.base;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.sql.DataSource;
+
+import org.fuin.auction.command.server.domain.CategoryNameAlreadyExistException;
+import org.fuin.auction.command.server.domain.UserEmailAlreadyExistsException;
+import org.fuin.auction.command.server.domain.UserNameAlreadyExistsException;
+import org.fuin.auction.command.server.domain.UserNameEmailCombinationAlreadyExistsException;
+import org.fuin.auction.common.CategoryName;
+import org.fuin.objects4j.EmailAddress;
+import org.fuin.objects4j.UserName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Constraint set that keeps all user names, email addresses and category
+ * names in memory. Duplicates are rejected without accessing the database.
+ * New entries are reserved in memory first and then written to the
+ * {@link ConstraintSetJdbc}. The indexes are loaded from the database with the
+ * first call.<br>
+ * <br>
+ * Adding and removing the same value is serialized with one of
+ * {@link #LOCK_COUNT} striped locks, so an add never sees a value that is
+ * half removed (row deleted but still in the index). Operations on different
+ * values only wait for each other if their values share a lock.
+ */
+@Named
+public final class IndexedConstraintSet implements ConstraintSet {
+
+	private static final Logger LOG = LoggerFactory.getLogger(IndexedConstraintSet.class);
+
+	/** Number of locks that serialize operations on the same value. */
+	private static final int LOCK_COUNT = 64;
+
+	private final ConstraintSetJdbc store;
+
+	/** Key=user name, Value=email. */
+	private final ConcurrentMap<String, String> userNames;
+
+	/** Key=email, Value=user name. */
+	private final ConcurrentMap<String, String> emails;
+
+	private final Set<String> categoryNames;
+
+	private final Object loadLock = new Object();
+
+	private final Object[] locks;
+
+	private volatile boolean loaded;
+
+	/**
+	 * Constructor with data source.
+	 * 
+	 * @param dataSource
+	 *            Data source to use.
+	 */
+	@Inject
+	public IndexedConstraintSet(final DataSource dataSource) {
+		this(new ConstraintSetJdbc(dataSource));
+	}
+
+	/**
+	 * Constructor with persistent store.
+	 * 
+	 * @param store
+	 *            Store to write all changes to.
+	 */
+	public IndexedConstraintSet(final ConstraintSetJdbc store) {
+		super();
+		this.store = store;
+		this.userNames = new ConcurrentHashMap<String, String>();
+		this.emails = new ConcurrentHashMap<String, String>();
+		this.categoryNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		this.locks = new Object[LOCK_COUNT];
+		for (int i = 0; i < locks.length; i++) {
+			locks[i] = new Object();
+		}
+	}
+
+	@Override
+	public final void add(final UserName userName, final EmailAddress email)
+	        throws UserNameEmailCombinationAlreadyExistsException, UserNameAlreadyExistsException,
+	        UserEmailAlreadyExistsException {
+
+		ensureLoaded();
+		final String userNameStr = userName.toString();
+		final String emailStr = email.toString();
+		// Always lock in the same order to avoid dead locks
+		final int idx1 = lockIndex(userNameStr);
+		final int idx2 = lockIndex(emailStr);
+		synchronized (locks[Math.min(idx1, idx2)]) {
+			synchronized (locks[Math.max(idx1, idx2)]) {
+				addUser(userName, email);
+			}
+		}
+
+	}
+
+	private void addUser(final UserName userName, final EmailAddress email)
+	        throws UserNameEmailCombinationAlreadyExistsException, UserNameAlreadyExistsException,
+	        UserEmailAlreadyExistsException {
+
+		final String userNameStr = userName.toString();
+		final String emailStr = email.toString();
+
+		final String existingEmail = userNames.putIfAbsent(userNameStr, emailStr);
+		if (existingEmail != null) {
+			if (existingEmail.equals(emailStr)) {
+				throw new UserNameEmailCombinationAlreadyExistsException();
+			}
+			throw new UserNameAlreadyExistsException();
+		}
+		if (emails.putIfAbsent(emailStr, userNameStr) != null) {
+			userNames.remove(userNameStr, emailStr);
+			throw new UserEmailAlreadyExistsException();
+		}
+
+		boolean ok = false;
+		try {
+			store.add(userName, email);
+			ok = true;
+		} finally {
+			if (!ok) {
+				// Database rejected it (for example because of a row
+				// added without using this instance)
+				userNames.remove(userNameStr, emailStr);
+				emails.remove(emailStr, userNameStr);
+			}
+		}
+
+	}
+
+	@Override
+	public final void remove(final UserName userName, final EmailAddress email) {
+		ensureLoaded();
+		final String userNameStr = userName.toString();
+		final String emailStr = email.toString();
+		final int idx1 = lockIndex(userNameStr);
+		final int idx2 = lockIndex(emailStr);
+		synchronized (locks[Math.min(idx1, idx2)]) {
+			synchronized (locks[Math.max(idx1, idx2)]) {
+				store.remove(userName, email);
+				userNames.remove(userNameStr, emailStr);
+				emails.remove(emailStr, userNameStr);
+			}
+		}
+	}
+
+	@Override
+	public final void add(final CategoryName categoryName) throws CategoryNameAlreadyExistException {
+		ensureLoaded();
+		final String name = categoryName.toString();
+		synchronized (locks[lockIndex(name)]) {
+			if (!categoryNames.add(name)) {
+				throw new CategoryNameAlreadyExistException();
+			}
+			boolean ok = false;
+			try {
+				store.add(categoryName);
+				ok = true;
+			} finally {
+				if (!ok) {
+					categoryNames.remove(name);
+				}
+			}
+		}
+	}
+
+	@Override
+	public final void remove(final CategoryName categoryName) {
+		ensureLoaded();
+		final String name = categoryName.toString();
+		synchronized (locks[lockIndex(name)]) {
+			store.remove(categoryName);
+			categoryNames.remove(name);
+		}
+	}
+
+	private static int lockIndex(final String value) {
+		return (value.hashCode() & 0x7FFFFFFF) % LOCK_COUNT;
+	}
+
+	/**
+	 * Loads the indexes from the database if this was not done before.
+	 */
+	private void ensureLoaded() {
+		if (loaded) {
+			return;
+		}
+		synchronized (loadLock) {
+			if (loaded) {
+				return;
+			}
+			final Map<String, String> userNameToEmail = new ConcurrentHashMap<String, String>();
+			store.selectAllUserNameEmails(userNameToEmail);
+			for (final Map.Entry<String, String> entry : userNameToEmail.entrySet()) {
+				userNames.put(entry.getKey(), entry.getValue());
+				emails.put(entry.getValue(), entry.getKey());
+			}
+			store.selectAllCategoryNames(categoryNames);
+			LOG.info("Loaded constraint indexes: " + userNames.size() + " users, "
+			        + categoryNames.size() + " categories");
+			loaded = true;
+		}
+	}
+
+}
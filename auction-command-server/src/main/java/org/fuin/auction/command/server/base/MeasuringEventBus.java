@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.command.server.base;
+
+import org.axonframework.domain.Event;
+import org.axonframework.eventhandling.EventBus;
+import org.axonframework.eventhandling.EventListener;
+
+/**
+ * Event bus that measures the time needed for publishing events.
+ */
+public final class MeasuringEventBus implements EventBus {
+
+	private final EventBus delegate;
+
+	private final CommandMetrics metrics;
+
+	/**
+	 * Constructor with all necessary values.
+	 * 
+	 * @param delegate
+	 *            Event bus to use.
+	 * @param metrics
+	 *            Metrics to update.
+	 */
+	public MeasuringEventBus(final EventBus delegate, final CommandMetrics metrics) {
+		super();
+		this.delegate = delegate;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public final void publish(final Event event) {
+		final long start = System.nanoTime();
+		try {
+			delegate.publish(event);
+		} finally {
+			metrics.record(CommandMetrics.PUBLISH, event.getClass(), System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	public final void subscribe(final EventListener eventListener) {
+		delegate.subscribe(eventListener);
+	}
+
+	@Override
+	public final void unsubscribe(final EventListener eventListener) {
+		delegate.unsubscribe(eventListener);
+	}
+
+}
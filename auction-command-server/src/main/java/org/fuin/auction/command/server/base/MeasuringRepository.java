@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.command.server.base;
+
+import org.axonframework.domain.AggregateIdentifier;
+import org.axonframework.domain.AggregateRoot;
+import org.axonframework.repository.Repository;
+
+/**
+ * Repository that measures the time needed for loading aggregates. Saving is
+ * measured by the {@link MeasuringUnitOfWorkFactory}.
+ * 
+ * @param <T>
+ *            Type of the aggregate.
+ */
+public final class MeasuringRepository<T extends AggregateRoot> implements Repository<T> {
+
+	private final Repository<T> delegate;
+
+	private final Class<T> aggregateType;
+
+	private final CommandMetrics metrics;
+
+	/**
+	 * Constructor with all necessary values.
+	 * 
+	 * @param delegate
+	 *            Repository to use.
+	 * @param aggregateType
+	 *            Type of the aggregate.
+	 * @param metrics
+	 *            Metrics to update.
+	 */
+	public MeasuringRepository(final Repository<T> delegate, final Class<T> aggregateType,
+	        final CommandMetrics metrics) {
+		super();
+		this.delegate = delegate;
+		this.aggregateType = aggregateType;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public final T load(final AggregateIdentifier aggregateIdentifier, final Long expectedVersion) {
+		final long start = System.nanoTime();
+		try {
+			return delegate.load(aggregateIdentifier, expectedVersion);
+		} finally {
+			metrics.record(CommandMetrics.REPOSITORY_LOAD, aggregateType, System.nanoTime()
+			        - start);
+		}
+	}
+
+	@Override
+	public final T load(final AggregateIdentifier aggregateIdentifier) {
+		final long start = System.nanoTime();
+		try {
+			return delegate.load(aggregateIdentifier);
+		} finally {
+			metrics.record(CommandMetrics.REPOSITORY_LOAD, aggregateType, System.nanoTime()
+			        - start);
+		}
+	}
+
+	@Override
+	public final void add(final T aggregate) {
+		// Saved with the commit of the unit of work - Measured by the
+		// MeasuringUnitOfWorkFactory
+		delegate.add(aggregate);
+	}
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.command.server.base;
+
+import org.axonframework.domain.AggregateRoot;
+import org.axonframework.unitofwork.DefaultUnitOfWork;
+import org.axonframework.unitofwork.SaveAggregateCallback;
+import org.axonframework.unitofwork.UnitOfWork;
+import org.axonframework.unitofwork.UnitOfWorkFactory;
+
+/**
+ * Creates units of work that measure the time needed for saving each aggregate
+ * during the commit. The repository registers the save callback with the unit
+ * of work, so this is the only place where the save can be measured
+ * separately from publishing the events.
+ */
+public final class MeasuringUnitOfWorkFactory implements UnitOfWorkFactory {
+
+	private final CommandMetrics metrics;
+
+	/**
+	 * Constructor with metrics.
+	 * 
+	 * @param metrics
+	 *            Metrics to update.
+	 */
+	public MeasuringUnitOfWorkFactory(final CommandMetrics metrics) {
+		super();
+		this.metrics = metrics;
+	}
+
+	@Override
+	public final UnitOfWork createUnitOfWork() {
+		final UnitOfWork unitOfWork = new MeasuringUnitOfWork(metrics);
+		unitOfWork.start();
+		return unitOfWork;
+	}
+
+	/**
+	 * Unit of work that wraps the save callbacks of the repositories.
+	 */
+	private static final class MeasuringUnitOfWork extends DefaultUnitOfWork {
+
+		private final CommandMetrics metrics;
+
+		/**
+		 * Constructor with metrics.
+		 * 
+		 * @param metrics
+		 *            Metrics to update.
+		 */
+		public MeasuringUnitOfWork(final CommandMetrics metrics) {
+			super();
+			this.metrics = metrics;
+		}
+
+		@Override
+		public final <T extends AggregateRoot> T registerAggregate(final T aggregate,
+		        final SaveAggregateCallback<T> callback) {
+			return super.registerAggregate(aggregate, new SaveAggregateCallback<T>() {
+				@Override
+				public void save(final T aggregateRoot) {
+					final long start = System.nanoTime();
+					try {
+						callback.save(aggregateRoot);
+					} finally {
+						metrics.record(CommandMetrics.REPOSITORY_SAVE, aggregateRoot.getClass(),
+						        System.nanoTime() - start);
+					}
+				}
+			});
+		}
+
+	}
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.command.server.base;
+
+import java.util.List;
+import java.util.Set;
+
+import org.axonframework.commandhandling.CommandHandlerInterceptor;
+import org.axonframework.commandhandling.InterceptorChain;
+import org.axonframework.domain.AggregateRoot;
+import org.axonframework.domain.Event;
+import org.axonframework.unitofwork.UnitOfWork;
+import org.axonframework.unitofwork.UnitOfWorkListener;
+
+/**
+ * Measures the execution time of the command handlers and the commit of the
+ * unit of work.
+ */
+public final class MetricsCommandHandlerInterceptor implements CommandHandlerInterceptor {
+
+	private final CommandMetrics metrics;
+
+	/**
+	 * Constructor with metrics.
+	 * 
+	 * @param metrics
+	 *            Metrics to update.
+	 */
+	public MetricsCommandHandlerInterceptor(final CommandMetrics metrics) {
+		super();
+		this.metrics = metrics;
+	}
+
+	@Override
+	public final Object handle(final Object command, final UnitOfWork unitOfWork,
+	        final InterceptorChain interceptorChain) throws Throwable {
+
+		final Class<?> commandType = command.getClass();
+		unitOfWork.registerListener(new UnitOfWorkListener() {
+
+			private long commitStart;
+
+			@Override
+			public void onPrepareCommit(final Set<AggregateRoot> aggregateRoots,
+			        final List<Event> events) {
+				commitStart = System.nanoTime();
+			}
+
+			@Override
+			public void afterCommit() {
+				metrics.record(CommandMetrics.COMMIT, commandType, System.nanoTime()
+				        - commitStart);
+			}
+
+			@Override
+			public void onRollback(final Throwable failureCause) {
+				// Not measured
+			}
+
+			@Override
+			public void onCleanup() {
+				// Nothing to do
+			}
+
+		});
+
+		final long start = System.nanoTime();
+		try {
+			return interceptorChain.proceed();
+		} finally {
+			metrics.record(CommandMetrics.HANDLER, commandType, System.nanoTime() - start);
+		}
+
+	}
+
+}
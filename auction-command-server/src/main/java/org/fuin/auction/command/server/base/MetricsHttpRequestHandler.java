@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.command.server.base;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.HttpRequestHandler;
+
+/**
+ * Returns the {@link CommandMetrics#getReport() metrics report}, the
+ * statistics of the aggregate caches and the validation times as plain text.
+ * Only requests from the local host are answered.
+ */
+public final class MetricsHttpRequestHandler implements HttpRequestHandler {
+
+	private final CommandMetrics metrics;
+
+	private List<AggregateCacheMetrics> caches;
+
+	private OperationValidator operationValidator;
+
+	/**
+	 * Constructor with metrics.
+	 * 
+	 * @param metrics
+	 *            Metrics to return.
+	 */
+	public MetricsHttpRequestHandler(final CommandMetrics metrics) {
+		super();
+		this.metrics = metrics;
+		this.caches = new ArrayList<AggregateCacheMetrics>();
+	}
+
+	/**
+	 * Sets the aggregate caches to report.
+	 * 
+	 * @param caches
+	 *            Cache statistics.
+	 */
+	public final void setCaches(final List<AggregateCacheMetrics> caches) {
+		if (caches == null) {
+			throw new IllegalArgumentException("The argument 'caches' cannot be null");
+		}
+		this.caches = new ArrayList<AggregateCacheMetrics>(caches);
+	}
+
+	/**
+	 * Sets the validator with the validation times to report.
+	 * 
+	 * @param operationValidator
+	 *            Validator or <code>null</code> if no validation times should
+	 *            be reported.
+	 */
+	public final void setOperationValidator(final OperationValidator operationValidator) {
+		this.operationValidator = operationValidator;
+	}
+
+	@Override
+	public final void handleRequest(final HttpServletRequest request,
+	        final HttpServletResponse response) throws ServletException, IOException {
+		if (!InetAddress.getByName(request.getRemoteAddr()).isLoopbackAddress()) {
+			response.sendError(HttpServletResponse.SC_FORBIDDEN);
+			return;
+		}
+		response.setContentType("text/plain");
+		response.setCharacterEncoding("UTF-8");
+		final PrintWriter writer = response.getWriter();
+		writer.print(metrics.getReport());
+		for (final AggregateCacheMetrics cache : caches) {
+			writer.print(cache.getReport());
+		}
+		if (operationValidator != null) {
+			writer.print(operationValidator.getReport());
+		}
+		writer.flush();
+	}
+
+}
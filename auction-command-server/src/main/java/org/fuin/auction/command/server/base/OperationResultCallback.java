@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.command.server.base;
+
+import org.fuin.auction.common.OperationResult;
+
+/**
+ * Receives the result of an asynchronously executed command.
+ */
+public interface OperationResultCallback {
+
+	/**
+	 * Called exactly once when the command was executed. Errors are also
+	 * reported as result (for example
+	 * {@link org.fuin.auction.common.InternalErrorResult}). Exceptions thrown
+	 * by this method are logged and do not change the result.
+	 * 
+	 * @param result
+	 *            Result of the command - Never <code>null</code>.
+	 */
+	public void onResult(OperationResult result);
+
+}
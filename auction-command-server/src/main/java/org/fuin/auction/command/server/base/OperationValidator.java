@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.command.server.base;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import javax.validation.ValidatorFactory;
+
+import org.fuin.auction.common.Operation;
+import org.fuin.auction.common.OperationResult;
+
+/**
+ * Validates commands and results with a single, shared {@link Validator}.
+ * Whether a class has any constraints at all is determined only once per
+ * class - Instances of classes without constraints are not passed to the
+ * validator. Results of classes in a
+ * {@link #setTrustedResultPackages(List) trusted package} are not validated.
+ * The time spent for validation is recorded per class and exposed via JMX and
+ * the "/metrics" HTTP endpoint as primitive values.
+ */
+public final class OperationValidator {
+
+	private final Validator validator;
+
+	private final ConcurrentMap<Class<?>, Boolean> constrained;
+
+	private final ConcurrentMap<Class<?>, Statistics> statistics;
+
+	private volatile List<String> trustedResultPackages;
+
+	/**
+	 * Default constructor that uses the default validator factory.
+	 */
+	public OperationValidator() {
+		this(Validation.buildDefaultValidatorFactory());
+	}
+
+	/**
+	 * Constructor with validator factory.
+	 * 
+	 * @param validatorFactory
+	 *            Factory used to create the validator.
+	 */
+	public OperationValidator(final ValidatorFactory validatorFactory) {
+		super();
+		this.validator = validatorFactory.getValidator();
+		this.constrained = new ConcurrentHashMap<Class<?>, Boolean>();
+		this.statistics = new ConcurrentHashMap<Class<?>, Statistics>();
+		this.trustedResultPackages = Collections.emptyList();
+	}
+
+	/**
+	 * Sets the packages with result classes that are known to be valid (for
+	 * example generated ones). Results from these packages and their sub
+	 * packages are not validated.
+	 * 
+	 * @param trustedResultPackages
+	 *            Package names.
+	 */
+	public final void setTrustedResultPackages(final List<String> trustedResultPackages) {
+		if (trustedResultPackages == null) {
+			this.trustedResultPackages = Collections.emptyList();
+		} else {
+			this.trustedResultPackages = Collections.unmodifiableList(new ArrayList<String>(
+			        trustedResultPackages));
+		}
+	}
+
+	/**
+	 * Returns the packages with result classes that are known to be valid.
+	 * 
+	 * @return Unmodifiable list of package names.
+	 */
+	public final List<String> getTrustedResultPackages() {
+		return trustedResultPackages;
+	}
+
+	/**
+	 * Validates a command.
+	 * 
+	 * @param command
+	 *            Command to validate.
+	 * 
+	 * @throws IllegalStateException
+	 *             The command is <code>null</code> or has constraint
+	 *             violations.
+	 */
+	public final void validateCommand(final Operation command) {
+		validate(command);
+	}
+
+	/**
+	 * Validates a result unless it's class is trusted.
+	 * 
+	 * @param result
+	 *            Result to validate.
+	 * 
+	 * @throws IllegalStateException
+	 *             The result is <code>null</code> or has constraint
+	 *             violations.
+	 */
+	public final void validateResult(final OperationResult result) {
+		if ((result != null) && isTrusted(result.getClass())) {
+			return;
+		}
+		validate(result);
+	}
+
+	/**
+	 * Returns the full qualified names of all validated classes sorted by
+	 * name.
+	 * 
+	 * @return Class names.
+	 */
+	public final String[] getClassNames() {
+		final Set<String> names = getStatistics().keySet();
+		return names.toArray(new String[names.size()]);
+	}
+
+	/**
+	 * Returns the number of validations of a class.
+	 * 
+	 * @param className
+	 *            Full qualified name of the class.
+	 * 
+	 * @return Count or <code>0</code> if the class was not validated.
+	 */
+	public final long getCount(final String className) {
+		final Statistics stats = getStatistics().get(className);
+		if (stats == null) {
+			return 0;
+		}
+		return stats.getCount();
+	}
+
+	/**
+	 * Returns the sum of all validation times of a class.
+	 * 
+	 * @param className
+	 *            Full qualified name of the class.
+	 * 
+	 * @return Time in nanoseconds or <code>0</code> if the class was not
+	 *         validated.
+	 */
+	public final long getTotalNanos(final String className) {
+		final Statistics stats = getStatistics().get(className);
+		if (stats == null) {
+			return 0;
+		}
+		return stats.getTotalNanos();
+	}
+
+	/**
+	 * Returns the longest validation time of a class.
+	 * 
+	 * @param className
+	 *            Full qualified name of the class.
+	 * 
+	 * @return Time in nanoseconds or <code>0</code> if the class was not
+	 *         validated.
+	 */
+	public final long getMaxNanos(final String className) {
+		final Statistics stats = getStatistics().get(className);
+		if (stats == null) {
+			return 0;
+		}
+		return stats.getMaxNanos();
+	}
+
+	/**
+	 * Returns the validation times as human readable text with one line per
+	 * class.
+	 * 
+	 * @return Report.
+	 */
+	public final String getReport() {
+		final StringBuilder sb = new StringBuilder();
+		for (final Map.Entry<String, Statistics> entry : getStatistics().entrySet()) {
+			sb.append("validation ").append(entry.getKey()).append(": ").append(
+			        entry.getValue()).append("\n");
+		}
+		return sb.toString();
+	}
+
+	private Map<String, Statistics> getStatistics() {
+		final Map<String, Statistics> map = new TreeMap<String, Statistics>();
+		for (final Map.Entry<Class<?>, Statistics> entry : statistics.entrySet()) {
+			map.put(entry.getKey().getName(), entry.getValue());
+		}
+		return map;
+	}
+
+	private boolean isTrusted(final Class<?> clasz) {
+		final String name = clasz.getName();
+		for (final String pkg : trustedResultPackages) {
+			if (name.startsWith(pkg + ".")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void validate(final Object obj) {
+		if (obj == null) {
+			throw new IllegalStateException("Object to validate is null");
+		}
+		final Class<?> clasz = obj.getClass();
+		if (!isConstrained(clasz)) {
+			return;
+		}
+		final long start = System.nanoTime();
+		final Set<ConstraintViolation<Object>> violations = validator.validate(obj);
+		getStatistics(clasz).record(System.nanoTime() - start);
+		if (violations.size() > 0) {
+			final StringBuilder sb = new StringBuilder();
+			for (final ConstraintViolation<Object> violation : violations) {
+				if (sb.length() > 0) {
+					sb.append(", ");
+				}
+				sb.append("[").append(violation.getPropertyPath()).append("] ").append(
+				        violation.getMessage()).append(" {").append(violation.getInvalidValue())
+				        .append("}");
+			}
+			throw new IllegalStateException("Constraint violations in " + clasz.getName() + ": "
+			        + sb);
+		}
+	}
+
+	private boolean isConstrained(final Class<?> clasz) {
+		Boolean result = constrained.get(clasz);
+		if (result == null) {
+			result = Boolean.valueOf(validator.getConstraintsForClass(clasz).isBeanConstrained());
+			constrained.put(clasz, result);
+		}
+		return result.booleanValue();
+	}
+
+	private Statistics getStatistics(final Class<?> clasz) {
+		Statistics stats = statistics.get(clasz);
+		if (stats == null) {
+			stats = new Statistics();
+			final Statistics existing = statistics.putIfAbsent(clasz, stats);
+			if (existing != null) {
+				stats = existing;
+			}
+		}
+		return stats;
+	}
+
+	/**
+	 * Validation times of a single class.
+	 */
+	private static final class Statistics {
+
+		private final AtomicLong count = new AtomicLong();
+
+		private final AtomicLong totalNanos = new AtomicLong();
+
+		private final AtomicLong maxNanos = new AtomicLong();
+
+		/**
+		 * Records a single validation.
+		 * 
+		 * @param nanos
+		 *            Duration in nanoseconds.
+		 */
+		final void record(final long nanos) {
+			count.incrementAndGet();
+			totalNanos.addAndGet(nanos);
+			long max = maxNanos.get();
+			while ((nanos > max) && !maxNanos.compareAndSet(max, nanos)) {
+				max = maxNanos.get();
+			}
+		}
+
+		/**
+		 * Returns the number of validations.
+		 * 
+		 * @return Count.
+		 */
+		public final long getCount() {
+			return count.get();
+		}
+
+		/**
+		 * Returns the sum of all validation times.
+		 * 
+		 * @return Time in nanoseconds.
+		 */
+		public final long getTotalNanos() {
+			return totalNanos.get();
+		}
+
+		/**
+		 * Returns the longest validation time.
+		 * 
+		 * @return Time in nanoseconds.
+		 */
+		public final long getMaxNanos() {
+			return maxNanos.get();
+		}
+
+		@Override
+		public final String toString() {
+			return "Statistics [count=" + getCount() + ", totalNanos=" + getTotalNanos()
+			        + ", maxNanos=" + getMaxNanos() + "]";
+		}
+
+	}
+
+}
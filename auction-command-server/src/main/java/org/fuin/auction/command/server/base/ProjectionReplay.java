@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.command.server.base;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.axonframework.domain.DomainEvent;
+import org.axonframework.eventstore.EventStoreManagement;
+import org.axonframework.eventstore.EventVisitor;
+import org.fuin.auction.message.api.AuctionMessage;
+import org.fuin.axon.support.base.LaneCommandBus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Rebuilds the projections of the query server from the event store. All
+ * events are read sequentially, converted with the same
+ * {@link AuctionMessageMapper} as the live messages and handed over to the
+ * {@link BatchingMessagePublisher}. The messages carry the aggregate id as
+ * message group, so the query server applies them in batches with parallel
+ * consumers while the order per aggregate is kept. The publisher's bounded
+ * queue slows the replay down to the speed of the broker.<br>
+ * <br>
+ * The replay publishes every event up to the current end of the store. The
+ * command side therefore has to be quiet: The {@link LaneCommandBus} must be
+ * stopped, the {@link #setEventExecutor(ThreadPoolTaskExecutor) executor} of
+ * the asynchronous event listeners must be idle and the publisher must have
+ * sent all live messages (including a batch waiting for a retry) before a
+ * replay is started. The bus must not be started again before the replay has
+ * finished. Otherwise messages created by commands would be published twice -
+ * Once live and once by the replay. Starting a replay is refused as long as
+ * one of the conditions is not met.<br>
+ * <br>
+ * The query tables have to be empty before a replay is started. Progress and
+ * throughput are logged every {@link #setProgressInterval(int) n} events and
+ * are available via JMX.
+ */
+public class ProjectionReplay {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ProjectionReplay.class);
+
+	/** Default number of events between two progress log entries. */
+	public static final int DEFAULT_PROGRESS_INTERVAL = 10000;
+
+	private final EventStoreManagement eventStore;
+
+	private final BatchingMessagePublisher publisher;
+
+	private final LaneCommandBus commandBus;
+
+	private ThreadPoolTaskExecutor eventExecutor;
+
+	private final AtomicLong events = new AtomicLong();
+
+	private final AtomicLong messages = new AtomicLong();
+
+	private int progressInterval;
+
+	private volatile boolean running;
+
+	private volatile long startMillis;
+
+	private volatile long endMillis;
+
+	/**
+	 * Constructor with event source, publisher and command bus.
+	 * 
+	 * @param eventStore
+	 *            Store to read the events from.
+	 * @param publisher
+	 *            Publisher for the messages.
+	 * @param commandBus
+	 *            Command bus that has to be stopped during the replay.
+	 */
+	public ProjectionReplay(final EventStoreManagement eventStore,
+	        final BatchingMessagePublisher publisher, final LaneCommandBus commandBus) {
+		super();
+		if (eventStore == null) {
+			throw new IllegalArgumentException("The argument 'eventStore' cannot be null");
+		}
+		if (publisher == null) {
+			throw new IllegalArgumentException("The argument 'publisher' cannot be null");
+		}
+		if (commandBus == null) {
+			throw new IllegalArgumentException("The argument 'commandBus' cannot be null");
+		}
+		this.eventStore = eventStore;
+		this.publisher = publisher;
+		this.commandBus = commandBus;
+		this.progressInterval = DEFAULT_PROGRESS_INTERVAL;
+	}
+
+	/**
+	 * Sets the number of events between two progress log entries.
+	 * 
+	 * @param progressInterval
+	 *            Number of events.
+	 */
+	public final void setProgressInterval(final int progressInterval) {
+		if (progressInterval < 1) {
+			throw new IllegalArgumentException("The progress interval must be at least 1: "
+			        + progressInterval);
+		}
+		this.progressInterval = progressInterval;
+	}
+
+	/**
+	 * Returns the number of events between two progress log entries.
+	 * 
+	 * @return Number of events.
+	 */
+	public final int getProgressInterval() {
+		return progressInterval;
+	}
+
+	/**
+	 * Sets the executor of the asynchronous event listeners that pass the live
+	 * events to the publisher. A replay is only started if the executor has
+	 * no active or queued tasks.
+	 * 
+	 * @param eventExecutor
+	 *            Executor to check or <code>null</code> if the events are
+	 *            published synchronously.
+	 */
+	public final void setEventExecutor(final ThreadPoolTaskExecutor eventExecutor) {
+		this.eventExecutor = eventExecutor;
+	}
+
+	/**
+	 * Starts the replay in a background thread.
+	 * 
+	 * @return If the replay was started TRUE, FALSE if a replay is already
+	 *         running.
+	 * 
+	 * @throws IllegalStateException
+	 *             The command bus is running or live events or messages are
+	 *             still waiting to be published.
+	 */
+	public final boolean start() {
+		if (!begin()) {
+			return false;
+		}
+		final Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				execute();
+			}
+		}, "ProjectionReplay");
+		thread.setDaemon(true);
+		thread.start();
+		return true;
+	}
+
+	/**
+	 * Executes the replay in the current thread.
+	 * 
+	 * @return Number of published messages.
+	 * 
+	 * @throws IllegalStateException
+	 *             A replay is already running, the command bus is running or
+	 *             live events or messages are still waiting to be published.
+	 */
+	public final long replay() {
+		if (!begin()) {
+			throw new IllegalStateException("A replay is already running");
+		}
+		execute();
+		return messages.get();
+	}
+
+	/**
+	 * Determines if a replay is running.
+	 * 
+	 * @return TRUE if running.
+	 */
+	public final boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Returns the number of events read by the current or last replay.
+	 * 
+	 * @return Count.
+	 */
+	public final long getEvents() {
+		return events.get();
+	}
+
+	/**
+	 * Returns the number of messages published by the current or last
+	 * replay.
+	 * 
+	 * @return Count.
+	 */
+	public final long getMessages() {
+		return messages.get();
+	}
+
+	/**
+	 * Returns the duration of the current or last replay.
+	 * 
+	 * @return Time in milliseconds.
+	 */
+	public final long getElapsedMillis() {
+		final long start = startMillis;
+		if (start == 0) {
+			return 0;
+		}
+		if (running) {
+			return System.currentTimeMillis() - start;
+		}
+		return endMillis - start;
+	}
+
+	/**
+	 * Returns the average throughput of the current or last replay.
+	 * 
+	 * @return Events per second.
+	 */
+	public final double getEventsPerSecond() {
+		final long millis = getElapsedMillis();
+		if (millis == 0) {
+			return 0;
+		}
+		return events.get() * 1000.0 / millis;
+	}
+
+	private synchronized boolean begin() {
+		if (running) {
+			return false;
+		}
+		if (commandBus.isRunning()) {
+			throw new IllegalStateException("The command bus has to be stopped before a replay");
+		}
+		// Events in the executor become messages - So check it before the publisher
+		if ((eventExecutor != null)
+		        && ((eventExecutor.getActiveCount() > 0) || (eventExecutor.getThreadPoolExecutor()
+		                .getQueue().size() > 0))) {
+			throw new IllegalStateException("Live events are still being processed: "
+			        + eventExecutor.getActiveCount() + " active tasks");
+		}
+		if (publisher.getPendingMessages() > 0) {
+			throw new IllegalStateException("Live messages are still waiting to be published: "
+			        + publisher.getPendingMessages());
+		}
+		running = true;
+		events.set(0);
+		messages.set(0);
+		startMillis = System.currentTimeMillis();
+		endMillis = 0;
+		return true;
+	}
+
+	private void execute() {
+		LOG.info("Projection replay started");
+		try {
+			eventStore.visitEvents(new EventVisitor() {
+				@Override
+				public void doWithEvent(final DomainEvent event) {
+					handle(event);
+				}
+			});
+			endMillis = System.currentTimeMillis();
+			if (commandBus.isRunning()) {
+				LOG.error("The command bus was started during the replay - "
+				        + "The projections may contain duplicates");
+			}
+			LOG.info("Projection replay finished: " + progress());
+		} catch (final RuntimeException ex) {
+			endMillis = System.currentTimeMillis();
+			LOG.error("Projection replay failed: " + progress(), ex);
+			throw ex;
+		} finally {
+			running = false;
+		}
+	}
+
+	private void handle(final DomainEvent event) {
+		final long count = events.incrementAndGet();
+		final AuctionMessage message = AuctionMessageMapper.toMessage(event);
+		if (message != null) {
+			publisher.publish(message);
+			messages.incrementAndGet();
+		}
+		if (count % progressInterval == 0) {
+			LOG.info("Projection replay: " + progress());
+		}
+	}
+
+	private String progress() {
+		return events.get() + " events, " + messages.get() + " messages, "
+		        + getElapsedMillis() + " ms, " + Math.round(getEventsPerSecond()) + " events/sec";
+	}
+
+}
@@ -17,35 +17,117 @@ package org.fuin.auction.command.server.utils;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
 
 import org.axonframework.domain.AggregateIdentifier;
 import org.fuin.axon.support.base.AggregateIdentifierFactory;
 import org.fuin.axon.support.base.IllegalAggregateIdentifierException;
 import org.fuin.axon.support.base.LongAggregateIdentifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * Creates a unique long id based on a JDBC query.
+ * Creates a unique long id based on a JDBC query. If a block size greater than
+ * one is used, every sequence value ("hi") reserves the range
+ * <code>hi * blockSize</code> to <code>(hi + 1) * blockSize - 1</code> and the
+ * identifiers are handed out from memory. The next block is fetched in the
+ * background before the current one is exhausted.
  */
 public abstract class AbstractJdbcAggregateIdentifierLongFactory extends AbstractJdbcHelper
         implements AggregateIdentifierFactory {
 
+	private static final Logger LOG = LoggerFactory
+	        .getLogger(AbstractJdbcAggregateIdentifierLongFactory.class);
+
 	private final String sequenceSql;
 
+	private final int blockSize;
+
+	private final int prefetchThreshold;
+
+	private final Object lock = new Object();
+
+	private volatile Block block;
+
+	private FutureTask<Long> prefetch;
+
+	private Executor executor;
+
 	/**
-	 * Constructor with all necessary values.
+	 * Constructor with all necessary values. Every call to {@link #create()}
+	 * will execute the sequence SQL.
 	 * 
-	 * @param clasz
-	 *            Class to use for loading the properties.
-	 * @param jdbcPropResName
-	 *            Name of the properties resource with JDBC values
-	 *            (Keys='driverclass', 'url', 'username', 'password').
+	 * @param dataSource
+	 *            Data source to use.
 	 * @param sequenceSql
 	 *            SQL that returns a new sequence value.
 	 */
-	public AbstractJdbcAggregateIdentifierLongFactory(final Class<?> clasz,
-	        final String jdbcPropResName, final String sequenceSql) {
-		super(clasz, jdbcPropResName);
+	public AbstractJdbcAggregateIdentifierLongFactory(final DataSource dataSource,
+	        final String sequenceSql) {
+		this(dataSource, sequenceSql, 1);
+	}
+
+	/**
+	 * Constructor with block size.
+	 * 
+	 * @param dataSource
+	 *            Data source to use.
+	 * @param sequenceSql
+	 *            SQL that returns a new sequence value.
+	 * @param blockSize
+	 *            Number of identifiers reserved with one sequence value. A
+	 *            value of <code>1</code> uses the sequence value directly.
+	 */
+	public AbstractJdbcAggregateIdentifierLongFactory(final DataSource dataSource,
+	        final String sequenceSql, final int blockSize) {
+		super(dataSource);
+		if (blockSize < 1) {
+			throw new IllegalArgumentException("The block size must be greater than zero: "
+			        + blockSize);
+		}
 		this.sequenceSql = sequenceSql;
+		this.blockSize = blockSize;
+		this.prefetchThreshold = Math.max(1, blockSize / 4);
+		this.block = new Block(0, 0);
+		this.executor = new Executor() {
+			@Override
+			public void execute(final Runnable command) {
+				final Thread thread = new Thread(command, "id-block-prefetch");
+				thread.setDaemon(true);
+				thread.start();
+			}
+		};
+	}
+
+	/**
+	 * Returns the number of identifiers reserved with one sequence value.
+	 * 
+	 * @return Block size.
+	 */
+	public final int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * Sets the executor used for fetching the next block in the background. By
+	 * default a new daemon thread is started for every prefetch.
+	 * 
+	 * @param executor
+	 *            Executor to set.
+	 */
+	public final void setExecutor(final Executor executor) {
+		if (executor == null) {
+			throw new IllegalArgumentException("The argument 'executor' cannot be null!");
+		}
+		synchronized (lock) {
+			this.executor = executor;
+		}
 	}
 
 	@Override
@@ -56,6 +138,71 @@ public abstract class AbstractJdbcAggregateIdentifierLongFactory extends Abstrac
 
 	@Override
 	public final AggregateIdentifier create() {
+		try {
+			if (blockSize == 1) {
+				return new LongAggregateIdentifier(nextSequenceValue());
+			}
+			return new LongAggregateIdentifier(nextFromBlock());
+		} catch (final IllegalAggregateIdentifierException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	private long nextFromBlock() {
+		while (true) {
+			final Block current = block;
+			final long id = current.next.getAndIncrement();
+			if (id < current.end) {
+				if (id == current.end - prefetchThreshold) {
+					startPrefetch();
+				}
+				return id;
+			}
+			synchronized (lock) {
+				if (block == current) {
+					block = new Block(nextHi(), blockSize);
+				}
+			}
+		}
+	}
+
+	private void startPrefetch() {
+		synchronized (lock) {
+			if (prefetch == null) {
+				prefetch = new FutureTask<Long>(new Callable<Long>() {
+					@Override
+					public Long call() {
+						return nextSequenceValue();
+					}
+				});
+				executor.execute(prefetch);
+			}
+		}
+	}
+
+	/**
+	 * Returns the next "hi" value - Either from the prefetch or directly from
+	 * the database. Must be called while holding the lock.
+	 * 
+	 * @return Sequence value.
+	 */
+	private long nextHi() {
+		final FutureTask<Long> task = prefetch;
+		prefetch = null;
+		if (task != null) {
+			try {
+				return task.get();
+			} catch (final InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(ex);
+			} catch (final ExecutionException ex) {
+				LOG.warn("Prefetching the next identifier block failed - Retrying", ex.getCause());
+			}
+		}
+		return nextSequenceValue();
+	}
+
+	private long nextSequenceValue() {
 		final Creator<Long> creator = new Creator<Long>() {
 			@Override
 			public Long create(final ResultSet rs) throws SQLException {
@@ -63,13 +210,35 @@ public abstract class AbstractJdbcAggregateIdentifierLongFactory extends Abstrac
 			}
 		};
 		try {
-			final Long id = selectUniqueSilent(sequenceSql, creator);
-			return new LongAggregateIdentifier(id);
+			return selectUniqueSilent(sequenceSql, creator);
 		} catch (final NonUniqueResultException ex) {
 			throw new RuntimeException(ex);
-		} catch (final IllegalAggregateIdentifierException ex) {
-			throw new RuntimeException(ex);
 		}
 	}
 
+	/**
+	 * Range of reserved identifiers.
+	 */
+	private static final class Block {
+
+		private final AtomicLong next;
+
+		private final long end;
+
+		/**
+		 * Constructor with "hi" value and size.
+		 * 
+		 * @param hi
+		 *            Sequence value.
+		 * @param size
+		 *            Number of identifiers in the block.
+		 */
+		public Block(final long hi, final int size) {
+			super();
+			this.next = new AtomicLong(hi * size);
+			this.end = hi * size + size;
+		}
+
+	}
+
 }
@@ -15,8 +15,6 @@
  */
 package org.fuin.auction.command.server.utils;
 
-import java.beans.PropertyVetoException;
-import java.io.IOException;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.Date;
@@ -25,47 +23,33 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Properties;
 
 import javax.sql.DataSource;
 
-import org.fuin.auction.common.Utils;
-
-import com.mchange.v2.c3p0.ComboPooledDataSource;
-
 /**
  * Pure JDBC constraint service (Apache Derby!). Could be done more nice
  * (database independent for example...) but it's just to show that there is no
- * need that a "full-blown" Hibernate or JPA here...
- * 
- * TODO michael Use Spring configuration instead hard coded properties in
- * constructor.
+ * need that a "full-blown" Hibernate or JPA here... All subclasses share the
+ * data source configured in the Spring context. Prepared statements are cached
+ * per connection by the pool ("maxStatementsPerConnection"), so preparing the
+ * same SQL again is cheap.
  */
 public abstract class AbstractJdbcHelper {
 
 	private final DataSource dataSource;
 
 	/**
-	 * Constructor with JDBC properties.
+	 * Constructor with data source.
 	 * 
-	 * @param clasz
-	 *            Class to use for loading the properties.
-	 * @param jdbcPropResName
-	 *            Name of the properties resource with JDBC values
-	 *            (Keys='driverclass', 'url', 'username', 'password').
+	 * @param dataSource
+	 *            Data source to use for all database operations.
 	 */
-	public AbstractJdbcHelper(final Class<?> clasz, final String jdbcPropResName) {
-		try {
-			final Properties jdbcProperties = loadJdbcProperties(clasz, jdbcPropResName);
-			final ComboPooledDataSource cpds = new ComboPooledDataSource();
-			cpds.setDriverClass(jdbcProperties.getProperty("driverclass"));
-			cpds.setJdbcUrl(jdbcProperties.getProperty("url"));
-			cpds.setUser(jdbcProperties.getProperty("username"));
-			cpds.setPassword(jdbcProperties.getProperty("password"));
-			this.dataSource = cpds;
-		} catch (final PropertyVetoException ex) {
-			throw new RuntimeException(ex);
+	public AbstractJdbcHelper(final DataSource dataSource) {
+		super();
+		if (dataSource == null) {
+			throw new IllegalArgumentException("The argument 'dataSource' cannot be null!");
 		}
+		this.dataSource = dataSource;
 	}
 
 	/**
@@ -190,21 +174,72 @@ public abstract class AbstractJdbcHelper {
 	 *             Error executing the SQL update.
 	 */
 	protected final <T> List<T> select(final String sql, final Creator<T> creator,
+	        final Object... args) throws SQLException {
+		final List<T> list = new ArrayList<T>();
+		selectEach(sql, new RowHandler() {
+			@Override
+			public void handle(final ResultSet rs) throws SQLException {
+				list.add(creator.create(rs));
+			}
+		}, args);
+		return list;
+	}
+
+	/**
+	 * Executes an SQL select and passes every row to a handler with
+	 * {@link SQLException} wrapped into a {@link RuntimeException}.
+	 * 
+	 * @param sql
+	 *            SQL statement that may contain arguments (?) used for a
+	 *            prepared statement.
+	 * @param handler
+	 *            Handler called once for every row.
+	 * @param args
+	 *            Arguments to set in the correct order.
+	 * 
+	 * @return Number of rows handled.
+	 */
+	protected final int selectEachSilent(final String sql, final RowHandler handler,
+	        final Object... args) {
+		try {
+			return selectEach(sql, handler, args);
+		} catch (final SQLException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	/**
+	 * Executes an SQL select and passes every row to a handler without
+	 * collecting the rows in a list.
+	 * 
+	 * @param sql
+	 *            SQL statement that may contain arguments (?) used for a
+	 *            prepared statement.
+	 * @param handler
+	 *            Handler called once for every row.
+	 * @param args
+	 *            Arguments to set in the correct order.
+	 * 
+	 * @return Number of rows handled.
+	 * 
+	 * @throws SQLException
+	 *             Error executing the SQL select.
+	 */
+	protected final int selectEach(final String sql, final RowHandler handler,
 	        final Object... args) throws SQLException {
 		final Connection con = dataSource.getConnection();
 		try {
 			final PreparedStatement stmt = con.prepareStatement(sql);
 			try {
-				for (int i = 0; i < args.length; i++) {
-					set(stmt, i + 1, args[i]);
-				}
+				setAll(stmt, args);
 				final ResultSet rs = stmt.executeQuery();
 				try {
-					final List<T> list = new ArrayList<T>();
+					int count = 0;
 					while (rs.next()) {
-						list.add(creator.create(rs));
+						handler.handle(rs);
+						count++;
 					}
-					return list;
+					return count;
 				} finally {
 					rs.close();
 				}
@@ -255,9 +290,7 @@ public abstract class AbstractJdbcHelper {
 		try {
 			final PreparedStatement stmt = con.prepareStatement(sql);
 			try {
-				for (int i = 0; i < args.length; i++) {
-					set(stmt, i + 1, args[i]);
-				}
+				setAll(stmt, args);
 				return stmt.executeUpdate();
 			} finally {
 				stmt.close();
@@ -267,6 +300,85 @@ public abstract class AbstractJdbcHelper {
 		}
 	}
 
+	/**
+	 * Executes the same SQL update for a list of argument tuples with
+	 * {@link SQLException} wrapped into a {@link RuntimeException}.
+	 * 
+	 * @param sql
+	 *            SQL statement that may contain arguments (?) used for a
+	 *            prepared statement.
+	 * @param argsList
+	 *            One array of arguments for every execution.
+	 * 
+	 * @return Number of rows updated for every execution.
+	 */
+	protected final int[] executeBatchSilent(final String sql, final List<Object[]> argsList) {
+		try {
+			return executeBatch(sql, argsList);
+		} catch (final SQLException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	/**
+	 * Executes the same SQL update for a list of argument tuples with a single
+	 * prepared statement and one round trip to the database. All updates are
+	 * committed together.
+	 * 
+	 * @param sql
+	 *            SQL statement that may contain arguments (?) used for a
+	 *            prepared statement.
+	 * @param argsList
+	 *            One array of arguments for every execution.
+	 * 
+	 * @return Number of rows updated for every execution.
+	 * 
+	 * @throws SQLException
+	 *             Error executing the SQL update. None of the updates is
+	 *             committed in this case.
+	 */
+	protected final int[] executeBatch(final String sql, final List<Object[]> argsList)
+	        throws SQLException {
+		if (argsList.size() == 0) {
+			return new int[0];
+		}
+		final Connection con = dataSource.getConnection();
+		try {
+			final boolean autoCommit = con.getAutoCommit();
+			con.setAutoCommit(false);
+			try {
+				final PreparedStatement stmt = con.prepareStatement(sql);
+				try {
+					for (final Object[] args : argsList) {
+						setAll(stmt, args);
+						stmt.addBatch();
+					}
+					final int[] result = stmt.executeBatch();
+					con.commit();
+					return result;
+				} finally {
+					stmt.close();
+				}
+			} catch (final SQLException ex) {
+				con.rollback();
+				throw ex;
+			} catch (final RuntimeException ex) {
+				con.rollback();
+				throw ex;
+			} finally {
+				con.setAutoCommit(autoCommit);
+			}
+		} finally {
+			con.close();
+		}
+	}
+
+	private void setAll(final PreparedStatement stmt, final Object... args) throws SQLException {
+		for (int i = 0; i < args.length; i++) {
+			set(stmt, i + 1, args[i]);
+		}
+	}
+
 	/**
 	 * Sets the arguments in the prepared statement based on their type.
 	 * 
@@ -331,22 +443,22 @@ public abstract class AbstractJdbcHelper {
 	}
 
 	/**
-	 * Returns the JDBC properties.
-	 * 
-	 * @param clasz
-	 *            Class to use for getting the project information resource
-	 *            from.
-	 * @param name
-	 *            Name and path of the properties file.
-	 * 
-	 * @return JDBC properties.
+	 * Handles a single row of a result set.
 	 */
-	protected final Properties loadJdbcProperties(final Class<?> clasz, final String name) {
-		try {
-			return Utils.loadProperties(clasz, name);
-		} catch (final IOException ex) {
-			throw new RuntimeException(ex);
-		}
+	public static interface RowHandler {
+
+		/**
+		 * Handles the current row of the result set. The result set must not
+		 * be moved by the handler.
+		 * 
+		 * @param rs
+		 *            Result set.
+		 * 
+		 * @throws SQLException
+		 *             Error reading from the result set.
+		 */
+		public void handle(ResultSet rs) throws SQLException;
+
 	}
 
 }
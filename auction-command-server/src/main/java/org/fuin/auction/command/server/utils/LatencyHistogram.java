@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.command.server.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram for durations. The values are counted in buckets with
+ * exponentially growing size (1, 2, 4, 8... microseconds), so percentiles are
+ * approximations that are never lower than the real value.
+ */
+public final class LatencyHistogram {
+
+	private static final int BUCKETS = 40;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong totalNanos = new AtomicLong();
+
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * Adds a duration.
+	 * 
+	 * @param nanos
+	 *            Duration in nanoseconds.
+	 */
+	public final void record(final long nanos) {
+		final long micros = Math.max(0, nanos / 1000L);
+		final int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+		buckets.incrementAndGet(bucket);
+		count.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+		long max = maxNanos.get();
+		while ((nanos > max) && !maxNanos.compareAndSet(max, nanos)) {
+			max = maxNanos.get();
+		}
+	}
+
+	/**
+	 * Returns the number of recorded durations.
+	 * 
+	 * @return Count.
+	 */
+	public final long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Returns the average duration.
+	 * 
+	 * @return Mean in milliseconds.
+	 */
+	public final double getMeanMillis() {
+		final long c = count.get();
+		if (c == 0) {
+			return 0.0;
+		}
+		return totalNanos.get() / 1000000.0 / c;
+	}
+
+	/**
+	 * Returns the longest duration.
+	 * 
+	 * @return Maximum in milliseconds.
+	 */
+	public final double getMaxMillis() {
+		return maxNanos.get() / 1000000.0;
+	}
+
+	/**
+	 * Returns the upper bound of the bucket that contains the given
+	 * percentile.
+	 * 
+	 * @param percentile
+	 *            Value between 0 and 100.
+	 * 
+	 * @return Duration in milliseconds.
+	 */
+	public final double getPercentileMillis(final double percentile) {
+		if ((percentile < 0) || (percentile > 100)) {
+			throw new IllegalArgumentException("The percentile must be between 0 and 100: "
+			        + percentile);
+		}
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			total = total + buckets.get(i);
+		}
+		if (total == 0) {
+			return 0.0;
+		}
+		final long threshold = (long) Math.ceil(total * percentile / 100.0);
+		long sum = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			sum = sum + buckets.get(i);
+			if ((sum >= threshold) && (sum > 0)) {
+				return (1L << i) / 1000.0;
+			}
+		}
+		return getMaxMillis();
+	}
+
+	@Override
+	public final String toString() {
+		return String.format("count=%d mean=%.3fms p50=%.3fms p99=%.3fms max=%.3fms",
+		        getCount(), getMeanMillis(), getPercentileMillis(50), getPercentileMillis(99),
+		        getMaxMillis());
+	}
+
+}
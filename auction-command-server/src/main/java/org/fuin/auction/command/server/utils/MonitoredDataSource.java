@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.command.server.utils;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import com.mchange.v2.c3p0.PooledDataSource;
+
+/**
+ * Data source that delegates to a connection pool and measures how long
+ * callers have to wait for a connection. If the delegate is a c3p0
+ * {@link PooledDataSource} the current pool state is also available.
+ */
+public final class MonitoredDataSource implements DataSource {
+
+	private final DataSource delegate;
+
+	private final AtomicLong checkouts = new AtomicLong();
+
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+
+	/**
+	 * Constructor with the data source to monitor.
+	 * 
+	 * @param delegate
+	 *            Data source to use for all calls.
+	 */
+	public MonitoredDataSource(final DataSource delegate) {
+		super();
+		if (delegate == null) {
+			throw new IllegalArgumentException("The argument 'delegate' cannot be null!");
+		}
+		this.delegate = delegate;
+	}
+
+	/**
+	 * Returns the monitored data source.
+	 * 
+	 * @return Delegate.
+	 */
+	public final DataSource getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public final Connection getConnection() throws SQLException {
+		final long start = System.nanoTime();
+		final Connection con = delegate.getConnection();
+		recordWait(System.nanoTime() - start);
+		return con;
+	}
+
+	@Override
+	public final Connection getConnection(final String username, final String password)
+	        throws SQLException {
+		final long start = System.nanoTime();
+		final Connection con = delegate.getConnection(username, password);
+		recordWait(System.nanoTime() - start);
+		return con;
+	}
+
+	private void recordWait(final long nanos) {
+		checkouts.incrementAndGet();
+		totalWaitNanos.addAndGet(nanos);
+		long max = maxWaitNanos.get();
+		while ((nanos > max) && !maxWaitNanos.compareAndSet(max, nanos)) {
+			max = maxWaitNanos.get();
+		}
+	}
+
+	/**
+	 * Returns the number of connections handed out so far.
+	 * 
+	 * @return Number of checkouts.
+	 */
+	public final long getCheckouts() {
+		return checkouts.get();
+	}
+
+	/**
+	 * Returns the sum of all times callers waited for a connection.
+	 * 
+	 * @return Total wait time in milliseconds.
+	 */
+	public final long getTotalWaitMillis() {
+		return totalWaitNanos.get() / 1000000L;
+	}
+
+	/**
+	 * Returns the longest time a caller waited for a connection.
+	 * 
+	 * @return Maximum wait time in milliseconds.
+	 */
+	public final long getMaxWaitMillis() {
+		return maxWaitNanos.get() / 1000000L;
+	}
+
+	/**
+	 * Returns the average time a caller waited for a connection.
+	 * 
+	 * @return Average wait time in milliseconds.
+	 */
+	public final double getAverageWaitMillis() {
+		final long count = checkouts.get();
+		if (count == 0) {
+			return 0.0;
+		}
+		return (totalWaitNanos.get() / 1000000.0) / count;
+	}
+
+	/**
+	 * Returns the number of connections currently in use.
+	 * 
+	 * @return Busy connections or <code>-1</code> if the delegate is not a
+	 *         c3p0 pool.
+	 */
+	public final int getActiveConnections() {
+		if (!(delegate instanceof PooledDataSource)) {
+			return -1;
+		}
+		try {
+			return ((PooledDataSource) delegate).getNumBusyConnectionsDefaultUser();
+		} catch (final SQLException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	/**
+	 * Returns the number of pooled connections that are currently not used.
+	 * 
+	 * @return Idle connections or <code>-1</code> if the delegate is not a
+	 *         c3p0 pool.
+	 */
+	public final int getIdleConnections() {
+		if (!(delegate instanceof PooledDataSource)) {
+			return -1;
+		}
+		try {
+			return ((PooledDataSource) delegate).getNumIdleConnectionsDefaultUser();
+		} catch (final SQLException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	/**
+	 * Returns the number of threads currently waiting for a connection.
+	 * 
+	 * @return Waiting threads or <code>-1</code> if the delegate is not a
+	 *         c3p0 pool.
+	 */
+	public final int getThreadsAwaitingCheckout() {
+		if (!(delegate instanceof PooledDataSource)) {
+			return -1;
+		}
+		try {
+			return ((PooledDataSource) delegate).getNumThreadsAwaitingCheckoutDefaultUser();
+		} catch (final SQLException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	@Override
+	public final PrintWriter getLogWriter() throws SQLException {
+		return delegate.getLogWriter();
+	}
+
+	@Override
+	public final void setLogWriter(final PrintWriter out) throws SQLException {
+		delegate.setLogWriter(out);
+	}
+
+	@Override
+	public final void setLoginTimeout(final int seconds) throws SQLException {
+		delegate.setLoginTimeout(seconds);
+	}
+
+	@Override
+	public final int getLoginTimeout() throws SQLException {
+		return delegate.getLoginTimeout();
+	}
+
+	/**
+	 * Not supported - Only exists to be compatible with JDBC 4.1.
+	 * 
+	 * @return Never returns anything.
+	 * 
+	 * @throws SQLFeatureNotSupportedException
+	 *             Always.
+	 */
+	public final Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException("getParentLogger");
+	}
+
+	@Override
+	public final <T> T unwrap(final Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return iface.cast(this);
+		}
+		return delegate.unwrap(iface);
+	}
+
+	@Override
+	public final boolean isWrapperFor(final Class<?> iface) throws SQLException {
+		return iface.isInstance(this) || delegate.isWrapperFor(iface);
+	}
+
+	@Override
+	public final String toString() {
+		return "MonitoredDataSource [checkouts=" + getCheckouts() + ", averageWaitMillis="
+		        + getAverageWaitMillis() + ", maxWaitMillis=" + getMaxWaitMillis() + "]";
+	}
+
+}
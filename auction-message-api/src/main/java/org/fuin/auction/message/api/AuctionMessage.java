@@ -24,4 +24,11 @@ import org.fuin.objects4j.TraceStringCapable;
  */
 public interface AuctionMessage extends Serializable, TraceStringCapable {
 
+	/**
+	 * Returns the id of the aggregate the message is about.
+	 * 
+	 * @return Unique aggregate id.
+	 */
+	public String getAggregateId();
+
 }
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.message.api;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+
+/**
+ * Binary codecs for all messages of the message API. Every codec writes the
+ * attributes of the message in the order of the message's constructor. If a
+ * message's attributes change, the codec's version has to be incremented and
+ * the read method must still be able to handle the old versions. Type tags
+ * must never be reused.
+ */
+public final class AuctionMessageCodecs {
+
+	/**
+	 * Private constructor to avoid instantiation.
+	 */
+	private AuctionMessageCodecs() {
+		throw new UnsupportedOperationException("You cannot create an instance of a utility class!");
+	}
+
+	/**
+	 * Creates a registry with codecs for all messages.
+	 * 
+	 * @return New registry.
+	 */
+	public static MessageCodecRegistry createRegistry() {
+		final MessageCodecRegistry registry = new MessageCodecRegistry();
+		registry.register(new CategoryCreatedMessageCodec());
+		registry.register(new CategoryMarkedForDeletionMessageCodec());
+		registry.register(new CategoryDeletedMessageCodec());
+		registry.register(new UserRegisteredMessageCodec());
+		registry.register(new UserEmailVerifiedMessageCodec());
+		registry.register(new UserPasswordChangedMessageCodec());
+		return registry;
+	}
+
+	/**
+	 * Codec for {@link CategoryCreatedMessage}.
+	 */
+	private static final class CategoryCreatedMessageCodec implements
+	        MessageCodec<CategoryCreatedMessage> {
+
+		@Override
+		public Class<CategoryCreatedMessage> getMessageClass() {
+			return CategoryCreatedMessage.class;
+		}
+
+		@Override
+		public short getTypeTag() {
+			return 1;
+		}
+
+		@Override
+		public byte getVersion() {
+			return 1;
+		}
+
+		@Override
+		public void write(final BytesMessage target, final CategoryCreatedMessage message)
+		        throws JMSException {
+			MessageCodecRegistry.writeString(target, message.getAggregateId());
+			MessageCodecRegistry.writeString(target, message.getName());
+		}
+
+		@Override
+		public CategoryCreatedMessage read(final BytesMessage source, final int version)
+		        throws JMSException {
+			final String aggregateId = MessageCodecRegistry.readString(source);
+			final String name = MessageCodecRegistry.readString(source);
+			return new CategoryCreatedMessage(aggregateId, name);
+		}
+
+	}
+
+	/**
+	 * Codec for {@link CategoryMarkedForDeletionMessage}.
+	 */
+	private static final class CategoryMarkedForDeletionMessageCodec implements
+	        MessageCodec<CategoryMarkedForDeletionMessage> {
+
+		@Override
+		public Class<CategoryMarkedForDeletionMessage> getMessageClass() {
+			return CategoryMarkedForDeletionMessage.class;
+		}
+
+		@Override
+		public short getTypeTag() {
+			return 2;
+		}
+
+		@Override
+		public byte getVersion() {
+			return 1;
+		}
+
+		@Override
+		public void write(final BytesMessage target, final CategoryMarkedForDeletionMessage message)
+		        throws JMSException {
+			MessageCodecRegistry.writeString(target, message.getAggregateId());
+		}
+
+		@Override
+		public CategoryMarkedForDeletionMessage read(final BytesMessage source, final int version)
+		        throws JMSException {
+			final String aggregateId = MessageCodecRegistry.readString(source);
+			return new CategoryMarkedForDeletionMessage(aggregateId);
+		}
+
+	}
+
+	/**
+	 * Codec for {@link CategoryDeletedMessage}.
+	 */
+	private static final class CategoryDeletedMessageCodec implements
+	        MessageCodec<CategoryDeletedMessage> {
+
+		@Override
+		public Class<CategoryDeletedMessage> getMessageClass() {
+			return CategoryDeletedMessage.class;
+		}
+
+		@Override
+		public short getTypeTag() {
+			return 3;
+		}
+
+		@Override
+		public byte getVersion() {
+			return 1;
+		}
+
+		@Override
+		public void write(final BytesMessage target, final CategoryDeletedMessage message)
+		        throws JMSException {
+			MessageCodecRegistry.writeString(target, message.getAggregateId());
+		}
+
+		@Override
+		public CategoryDeletedMessage read(final BytesMessage source, final int version)
+		        throws JMSException {
+			final String aggregateId = MessageCodecRegistry.readString(source);
+			return new CategoryDeletedMessage(aggregateId);
+		}
+
+	}
+
+	/**
+	 * Codec for {@link UserRegisteredMessage}.
+	 */
+	private static final class UserRegisteredMessageCodec implements
+	        MessageCodec<UserRegisteredMessage> {
+
+		@Override
+		public Class<UserRegisteredMessage> getMessageClass() {
+			return UserRegisteredMessage.class;
+		}
+
+		@Override
+		public short getTypeTag() {
+			return 4;
+		}
+
+		@Override
+		public byte getVersion() {
+			return 1;
+		}
+
+		@Override
+		public void write(final BytesMessage target, final UserRegisteredMessage message)
+		        throws JMSException {
+			MessageCodecRegistry.writeString(target, message.getAggregateId());
+			MessageCodecRegistry.writeString(target, message.getUserName());
+			MessageCodecRegistry.writeString(target, message.getPassword());
+			MessageCodecRegistry.writeString(target, message.getEmail());
+			MessageCodecRegistry.writeString(target, message.getSecurityToken());
+		}
+
+		@Override
+		public UserRegisteredMessage read(final BytesMessage source, final int version)
+		        throws JMSException {
+			final String aggregateId = MessageCodecRegistry.readString(source);
+			final String userName = MessageCodecRegistry.readString(source);
+			final String password = MessageCodecRegistry.readString(source);
+			final String email = MessageCodecRegistry.readString(source);
+			final String securityToken = MessageCodecRegistry.readString(source);
+			return new UserRegisteredMessage(aggregateId, userName, password, email, securityToken);
+		}
+
+	}
+
+	/**
+	 * Codec for {@link UserEmailVerifiedMessage}.
+	 */
+	private static final class UserEmailVerifiedMessageCodec implements
+	        MessageCodec<UserEmailVerifiedMessage> {
+
+		@Override
+		public Class<UserEmailVerifiedMessage> getMessageClass() {
+			return UserEmailVerifiedMessage.class;
+		}
+
+		@Override
+		public short getTypeTag() {
+			return 5;
+		}
+
+		@Override
+		public byte getVersion() {
+			return 1;
+		}
+
+		@Override
+		public void write(final BytesMessage target, final UserEmailVerifiedMessage message)
+		        throws JMSException {
+			MessageCodecRegistry.writeString(target, message.getAggregateId());
+		}
+
+		@Override
+		public UserEmailVerifiedMessage read(final BytesMessage source, final int version)
+		        throws JMSException {
+			final String aggregateId = MessageCodecRegistry.readString(source);
+			return new UserEmailVerifiedMessage(aggregateId);
+		}
+
+	}
+
+	/**
+	 * Codec for {@link UserPasswordChangedMessage}.
+	 */
+	private static final class UserPasswordChangedMessageCodec implements
+	        MessageCodec<UserPasswordChangedMessage> {
+
+		@Override
+		public Class<UserPasswordChangedMessage> getMessageClass() {
+			return UserPasswordChangedMessage.class;
+		}
+
+		@Override
+		public short getTypeTag() {
+			return 6;
+		}
+
+		@Override
+		public byte getVersion() {
+			return 1;
+		}
+
+		@Override
+		public void write(final BytesMessage target, final UserPasswordChangedMessage message)
+		        throws JMSException {
+			MessageCodecRegistry.writeString(target, message.getAggregateId());
+			MessageCodecRegistry.writeString(target, message.getPassword());
+		}
+
+		@Override
+		public UserPasswordChangedMessage read(final BytesMessage source, final int version)
+		        throws JMSException {
+			final String aggregateId = MessageCodecRegistry.readString(source);
+			final String password = MessageCodecRegistry.readString(source);
+			return new UserPasswordChangedMessage(aggregateId, password);
+		}
+
+	}
+
+}
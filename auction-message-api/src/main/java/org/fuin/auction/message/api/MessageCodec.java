@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.message.api;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+
+/**
+ * Writes and reads the attributes of a single message class to and from the
+ * body of a JMS {@link BytesMessage}. The type tag and the layout version are
+ * handled by the {@link MessageCodecRegistry} and must not be written by the
+ * codec.
+ * 
+ * @param <T>
+ *            Type of the message.
+ */
+public interface MessageCodec<T extends AuctionMessage> {
+
+	/**
+	 * Returns the message class this codec is responsible for.
+	 * 
+	 * @return Message class.
+	 */
+	public Class<T> getMessageClass();
+
+	/**
+	 * Returns the tag that identifies the message type on the wire. The tag
+	 * must be unique within a registry and must never change once messages
+	 * have been sent with it.
+	 * 
+	 * @return Type tag.
+	 */
+	public short getTypeTag();
+
+	/**
+	 * Returns the current version of the binary layout. The version is sent
+	 * with every message and passed to {@link #read(BytesMessage, int)} again.
+	 * 
+	 * @return Layout version.
+	 */
+	public byte getVersion();
+
+	/**
+	 * Writes the message specific data with the current layout version.
+	 * 
+	 * @param target
+	 *            JMS message to write to.
+	 * @param message
+	 *            Message to write.
+	 * 
+	 * @throws JMSException
+	 *             Error writing the message body.
+	 */
+	public void write(BytesMessage target, T message) throws JMSException;
+
+	/**
+	 * Reads the message specific data and creates a new message.
+	 * 
+	 * @param source
+	 *            JMS message to read from.
+	 * @param version
+	 *            Layout version used to write the message. Never greater than
+	 *            {@link #getVersion()} - Newer versions are rejected by the
+	 *            {@link MessageCodecRegistry}.
+	 * 
+	 * @return New message instance.
+	 * 
+	 * @throws JMSException
+	 *             Error reading the message body.
+	 */
+	public T read(BytesMessage source, int version) throws JMSException;
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.message.api;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+
+/**
+ * Registry of message codecs. Encodes messages into a compact binary format:
+ * A type tag (short), the layout version (byte) and the message attributes
+ * written by the codec registered for the message class. New message types
+ * can be added by registering another codec.<br>
+ * <br>
+ * Codecs are usually registered once at startup; the registry itself is
+ * thread safe.
+ */
+public final class MessageCodecRegistry {
+
+	private final ConcurrentMap<Class<?>, MessageCodec<?>> byClass;
+
+	private final ConcurrentMap<Short, MessageCodec<?>> byTypeTag;
+
+	/**
+	 * Default constructor.
+	 */
+	public MessageCodecRegistry() {
+		super();
+		byClass = new ConcurrentHashMap<Class<?>, MessageCodec<?>>();
+		byTypeTag = new ConcurrentHashMap<Short, MessageCodec<?>>();
+	}
+
+	/**
+	 * Registers a codec. Neither the message class nor the type tag may
+	 * already be registered.
+	 * 
+	 * @param codec
+	 *            Codec to add.
+	 */
+	public final void register(final MessageCodec<?> codec) {
+		if (codec == null) {
+			throw new IllegalArgumentException("The argument 'codec' cannot be null");
+		}
+		final Short typeTag = Short.valueOf(codec.getTypeTag());
+		final MessageCodec<?> existingTag = byTypeTag.putIfAbsent(typeTag, codec);
+		if (existingTag != null) {
+			throw new IllegalArgumentException("Type tag " + typeTag + " is already used by: "
+			        + existingTag.getMessageClass().getName());
+		}
+		final MessageCodec<?> existingClass = byClass.putIfAbsent(codec.getMessageClass(), codec);
+		if (existingClass != null) {
+			byTypeTag.remove(typeTag);
+			throw new IllegalArgumentException("A codec is already registered for: "
+			        + codec.getMessageClass().getName());
+		}
+	}
+
+	/**
+	 * Determines if a codec for the given message class is registered.
+	 * 
+	 * @param messageClass
+	 *            Message class to check.
+	 * 
+	 * @return If the message class can be encoded TRUE, else FALSE.
+	 */
+	public final boolean isRegistered(final Class<?> messageClass) {
+		return byClass.containsKey(messageClass);
+	}
+
+	/**
+	 * Writes a message into the body of a JMS message.
+	 * 
+	 * @param target
+	 *            New JMS message to write to.
+	 * @param message
+	 *            Message to encode.
+	 * 
+	 * @throws JMSException
+	 *             Error writing the message body.
+	 */
+	public final void encode(final BytesMessage target, final AuctionMessage message)
+	        throws JMSException {
+		if (message == null) {
+			throw new IllegalArgumentException("The argument 'message' cannot be null");
+		}
+		final MessageCodec<AuctionMessage> codec = cast(byClass.get(message.getClass()));
+		if (codec == null) {
+			throw new IllegalArgumentException("No codec registered for: "
+			        + message.getClass().getName());
+		}
+		target.writeShort(codec.getTypeTag());
+		target.writeByte(codec.getVersion());
+		codec.write(target, message);
+	}
+
+	/**
+	 * Reads a message from the body of a JMS message. The body is always read
+	 * from the beginning, so a message can be decoded more than once. Messages
+	 * written with a newer layout version than the one of the registered
+	 * codec are rejected, as the codec cannot know their layout.
+	 * 
+	 * @param source
+	 *            Received JMS message.
+	 * 
+	 * @return Decoded message.
+	 * 
+	 * @throws JMSException
+	 *             Error reading the message body.
+	 * @throws IllegalStateException
+	 *             No codec is registered for the type tag or the layout
+	 *             version is not supported.
+	 */
+	public final AuctionMessage decode(final BytesMessage source) throws JMSException {
+		source.reset();
+		final short typeTag = source.readShort();
+		final MessageCodec<?> codec = byTypeTag.get(Short.valueOf(typeTag));
+		if (codec == null) {
+			throw new IllegalStateException("No codec registered for type tag: " + typeTag);
+		}
+		final int version = source.readByte();
+		if ((version < 1) || (version > codec.getVersion())) {
+			throw new IllegalStateException("Unsupported layout version " + version + " for "
+			        + codec.getMessageClass().getName() + " - Highest known version is "
+			        + codec.getVersion());
+		}
+		return codec.read(source, version);
+	}
+
+	/**
+	 * Writes a string that may be <code>null</code>.
+	 * 
+	 * @param target
+	 *            JMS message to write to.
+	 * @param str
+	 *            String to write.
+	 * 
+	 * @throws JMSException
+	 *             Error writing the message body.
+	 */
+	public static void writeString(final BytesMessage target, final String str)
+	        throws JMSException {
+		if (str == null) {
+			target.writeBoolean(false);
+		} else {
+			target.writeBoolean(true);
+			target.writeUTF(str);
+		}
+	}
+
+	/**
+	 * Reads a string written with {@link #writeString(BytesMessage, String)}.
+	 * 
+	 * @param source
+	 *            JMS message to read from.
+	 * 
+	 * @return String or <code>null</code>.
+	 * 
+	 * @throws JMSException
+	 *             Error reading the message body.
+	 */
+	public static String readString(final BytesMessage source) throws JMSException {
+		if (source.readBoolean()) {
+			return source.readUTF();
+		}
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static MessageCodec<AuctionMessage> cast(final MessageCodec<?> codec) {
+		return (MessageCodec<AuctionMessage>) codec;
+	}
+
+}
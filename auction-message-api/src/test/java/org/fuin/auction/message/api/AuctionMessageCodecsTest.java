@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.message.api;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+//TESTCODE:BEGIN
+public final class AuctionMessageCodecsTest {
+
+	private MessageCodecRegistry testee;
+
+	@Before
+	public final void setUp() {
+		testee = AuctionMessageCodecs.createRegistry();
+	}
+
+	@Test
+	public final void testCategoryCreatedMessage() throws JMSException {
+
+		// PREPARE
+		final CategoryCreatedMessage message = new CategoryCreatedMessage("1", "Books");
+
+		// TEST
+		final CategoryCreatedMessage result = (CategoryCreatedMessage) roundTrip(message);
+
+		// ASSERT
+		assertThat(result.getAggregateId()).isEqualTo("1");
+		assertThat(result.getName()).isEqualTo("Books");
+
+	}
+
+	@Test
+	public final void testCategoryMarkedForDeletionMessage() throws JMSException {
+
+		// PREPARE
+		final CategoryMarkedForDeletionMessage message = new CategoryMarkedForDeletionMessage(
+		        "2");
+
+		// TEST
+		final AuctionMessage result = roundTrip(message);
+
+		// ASSERT
+		assertThat(result.getAggregateId()).isEqualTo("2");
+
+	}
+
+	@Test
+	public final void testCategoryDeletedMessage() throws JMSException {
+
+		// PREPARE
+		final CategoryDeletedMessage message = new CategoryDeletedMessage("3");
+
+		// TEST
+		final CategoryDeletedMessage result = (CategoryDeletedMessage) roundTrip(message);
+
+		// ASSERT
+		assertThat(result.getAggregateId()).isEqualTo("3");
+
+	}
+
+	@Test
+	public final void testUserRegisteredMessage() throws JMSException {
+
+		// PREPARE
+		final UserRegisteredMessage message = new UserRegisteredMessage("4", "peter",
+		        "secret\u00E4", "peter@nowhere.com", "abc123");
+
+		// TEST
+		final UserRegisteredMessage result = (UserRegisteredMessage) roundTrip(message);
+
+		// ASSERT
+		assertThat(result.getAggregateId()).isEqualTo("4");
+		assertThat(result.getUserName()).isEqualTo("peter");
+		assertThat(result.getPassword()).isEqualTo("secret\u00E4");
+		assertThat(result.getEmail()).isEqualTo("peter@nowhere.com");
+		assertThat(result.getSecurityToken()).isEqualTo("abc123");
+
+	}
+
+	@Test
+	public final void testUserRegisteredMessageWithNullValues() throws JMSException {
+
+		// PREPARE
+		final UserRegisteredMessage message = new UserRegisteredMessage("5", "peter", null,
+		        null, null);
+
+		// TEST
+		final UserRegisteredMessage result = (UserRegisteredMessage) roundTrip(message);
+
+		// ASSERT
+		assertThat(result.getAggregateId()).isEqualTo("5");
+		assertThat(result.getUserName()).isEqualTo("peter");
+		assertThat(result.getPassword()).isNull();
+		assertThat(result.getEmail()).isNull();
+		assertThat(result.getSecurityToken()).isNull();
+
+	}
+
+	@Test
+	public final void testUserEmailVerifiedMessage() throws JMSException {
+
+		// PREPARE
+		final UserEmailVerifiedMessage message = new UserEmailVerifiedMessage("6");
+
+		// TEST
+		final UserEmailVerifiedMessage result = (UserEmailVerifiedMessage) roundTrip(
+		        message);
+
+		// ASSERT
+		assertThat(result.getAggregateId()).isEqualTo("6");
+
+	}
+
+	@Test
+	public final void testUserPasswordChangedMessage() throws JMSException {
+
+		// PREPARE
+		final UserPasswordChangedMessage message = new UserPasswordChangedMessage("7", "new");
+
+		// TEST
+		final UserPasswordChangedMessage result = (UserPasswordChangedMessage) roundTrip(
+		        message);
+
+		// ASSERT
+		assertThat(result.getAggregateId()).isEqualTo("7");
+		assertThat(result.getPassword()).isEqualTo("new");
+
+	}
+
+	@Test
+	public final void testDecodeTwice() throws JMSException {
+
+		// PREPARE
+		final BytesMessage bytesMessage = createBytesMessage();
+		testee.encode(bytesMessage, new CategoryDeletedMessage("8"));
+
+		// TEST
+		final AuctionMessage first = testee.decode(bytesMessage);
+		final AuctionMessage second = testee.decode(bytesMessage);
+
+		// ASSERT
+		assertThat(first.getAggregateId()).isEqualTo("8");
+		assertThat(second.getAggregateId()).isEqualTo("8");
+
+	}
+
+	@Test
+	public final void testDecodeNewerVersion() throws JMSException {
+
+		// PREPARE
+		final BytesMessage bytesMessage = createBytesMessage();
+		testee.encode(bytesMessage, new CategoryCreatedMessage("9", "Books"));
+		final BytesMessage newerMessage = createBytesMessage();
+		bytesMessage.reset();
+		newerMessage.writeShort(bytesMessage.readShort());
+		newerMessage.writeByte((byte) (bytesMessage.readByte() + 1));
+		MessageCodecRegistry.writeString(newerMessage, "9");
+		MessageCodecRegistry.writeString(newerMessage, "Books");
+
+		// TEST
+		try {
+			testee.decode(newerMessage);
+			fail();
+		} catch (final IllegalStateException ex) {
+			// ASSERT
+			assertThat(ex.getMessage()).contains("Unsupported layout version 2");
+		}
+
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public final void testRegisterDuplicateClass() {
+		testee.register(new MessageCodec<CategoryDeletedMessage>() {
+			@Override
+			public Class<CategoryDeletedMessage> getMessageClass() {
+				return CategoryDeletedMessage.class;
+			}
+
+			@Override
+			public short getTypeTag() {
+				return 1000;
+			}
+
+			@Override
+			public byte getVersion() {
+				return 1;
+			}
+
+			@Override
+			public void write(final BytesMessage target, final CategoryDeletedMessage message) {
+				// Not used
+			}
+
+			@Override
+			public CategoryDeletedMessage read(final BytesMessage source, final int version) {
+				return null;
+			}
+		});
+	}
+
+	private AuctionMessage roundTrip(final AuctionMessage message) throws JMSException {
+		assertThat(testee.isRegistered(message.getClass())).isTrue();
+		final BytesMessage bytesMessage = createBytesMessage();
+		testee.encode(bytesMessage, message);
+		final AuctionMessage result = testee.decode(bytesMessage);
+		assertThat(result).isInstanceOf(message.getClass());
+		return result;
+	}
+
+	/**
+	 * Creates an in memory bytes message that supports the methods used by
+	 * the codecs.
+	 * 
+	 * @return New message.
+	 */
+	private static BytesMessage createBytesMessage() {
+		return (BytesMessage) Proxy.newProxyInstance(BytesMessage.class.getClassLoader(),
+		        new Class<?>[] { BytesMessage.class }, new InvocationHandler() {
+
+			        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+			        private final DataOutputStream out = new DataOutputStream(body);
+
+			        private DataInputStream in;
+
+			        @Override
+			        public Object invoke(final Object proxy, final Method method,
+			                final Object[] args) throws Throwable {
+				        final String name = method.getName();
+				        if (name.equals("reset")) {
+					        in = new DataInputStream(new ByteArrayInputStream(body.toByteArray()));
+					        return null;
+				        }
+				        if (name.startsWith("write")) {
+					        final Class<?> type = method.getParameterTypes()[0];
+					        DataOutputStream.class.getMethod(name, toStreamType(type)).invoke(
+					                out, args[0]);
+					        return null;
+				        }
+				        if (name.startsWith("read")) {
+					        return DataInputStream.class.getMethod(name).invoke(in);
+				        }
+				        throw new UnsupportedOperationException(name);
+			        }
+
+		        });
+	}
+
+	private static Class<?> toStreamType(final Class<?> type) {
+		// DataOutputStream uses 'int' for byte, short and char values
+		if ((type == byte.class) || (type == short.class) || (type == char.class)) {
+			return int.class;
+		}
+		return type;
+	}
+
+}
+// TESTCODE:END
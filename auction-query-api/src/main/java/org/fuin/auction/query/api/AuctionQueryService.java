@@ -22,6 +22,9 @@ import java.util.List;
  */
 public interface AuctionQueryService {
 
+	/** Maximum number of rows returned with one page. */
+	public static final int MAX_PAGE_SIZE = 1000;
+
 	/**
 	 * Returns the version of the server.
 	 * 
@@ -43,6 +46,34 @@ public interface AuctionQueryService {
 	 */
 	public List<CategoryDto> findAllActiveCategories();
 
+	/**
+	 * Returns a page of all categories sorted by id.
+	 * 
+	 * @param afterKey
+	 *            {@link ResultPage#getNextKey() Next key} of the previous page
+	 *            or <code>null</code> for the first page.
+	 * @param maxResults
+	 *            Maximum number of categories to return (1 -
+	 *            {@value #MAX_PAGE_SIZE}).
+	 * 
+	 * @return Page of categories.
+	 */
+	public ResultPage<CategoryDto> findCategories(Long afterKey, int maxResults);
+
+	/**
+	 * Returns a page of all users in the order they were registered.
+	 * 
+	 * @param afterKey
+	 *            {@link ResultPage#getNextKey() Next key} of the previous page
+	 *            or <code>null</code> for the first page.
+	 * @param maxResults
+	 *            Maximum number of users to return (1 -
+	 *            {@value #MAX_PAGE_SIZE}).
+	 * 
+	 * @return Page of users.
+	 */
+	public ResultPage<UserDto> findUsers(Long afterKey, int maxResults);
+
 	/**
 	 * Returns a category by it's id.
 	 * 
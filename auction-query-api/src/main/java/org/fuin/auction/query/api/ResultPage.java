@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.query.api;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.fuin.objects4j.TraceStringCapable;
+
+/**
+ * One page of a result that is read with keyset paging. The next page is
+ * requested with the {@link #getNextKey() next key} of the current page; the
+ * server continues directly after the last returned row instead of skipping
+ * an offset.
+ * 
+ * @param <T>
+ *            Type of the rows.
+ */
+public final class ResultPage<T extends Serializable> implements Serializable, TraceStringCapable {
+
+	private static final long serialVersionUID = 1L;
+
+	private List<T> items;
+
+	private Long nextKey;
+
+	/**
+	 * Default constructor for serialization.
+	 */
+	public ResultPage() {
+		super();
+	}
+
+	/**
+	 * Constructor with all attributes.
+	 * 
+	 * @param items
+	 *            Rows of this page.
+	 * @param nextKey
+	 *            Key to request the next page with or <code>null</code> if
+	 *            this is the last page.
+	 */
+	public ResultPage(final List<T> items, final Long nextKey) {
+		super();
+		if (items == null) {
+			throw new IllegalArgumentException("The argument 'items' cannot be null");
+		}
+		this.items = new ArrayList<T>(items);
+		this.nextKey = nextKey;
+	}
+
+	/**
+	 * Returns the rows of this page.
+	 * 
+	 * @return Rows - Never <code>null</code>.
+	 */
+	public final List<T> getItems() {
+		if (items == null) {
+			return new ArrayList<T>();
+		}
+		return items;
+	}
+
+	/**
+	 * Returns the key to request the next page with.
+	 * 
+	 * @return Key or <code>null</code> if this is the last page.
+	 */
+	public final Long getNextKey() {
+		return nextKey;
+	}
+
+	/**
+	 * Determines if there are more rows after this page.
+	 * 
+	 * @return If another page can be requested TRUE, else FALSE.
+	 */
+	public final boolean hasNext() {
+		return nextKey != null;
+	}
+
+	@Override
+	public final String toTraceString() {
+		return new ToStringBuilder(this).append("items", getItems().size()).append("nextKey",
+		        nextKey).toString();
+	}
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.query.api;
+
+import java.io.Serializable;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.fuin.auction.common.UserState;
+import org.fuin.objects4j.TraceStringCapable;
+
+/**
+ * Auction user data transfer object. Contains no password or security token.
+ */
+public final class UserDto implements Serializable, TraceStringCapable {
+
+	private static final long serialVersionUID = 1L;
+
+	private String aggregateId;
+
+	private String userName;
+
+	private String email;
+
+	private UserState state;
+
+	/**
+	 * Default constructor for serialization.
+	 */
+	public UserDto() {
+		super();
+	}
+
+	/**
+	 * Constructor with all attributes.
+	 * 
+	 * @param aggregateId
+	 *            Unique aggregate id of the user.
+	 * @param userName
+	 *            Unique name of the user.
+	 * @param email
+	 *            Email address.
+	 * @param state
+	 *            Current state of the user.
+	 */
+	public UserDto(final String aggregateId, final String userName, final String email,
+	        final UserState state) {
+		super();
+		this.aggregateId = aggregateId;
+		this.userName = userName;
+		this.email = email;
+		this.state = state;
+	}
+
+	/**
+	 * Returns the aggregate id.
+	 * 
+	 * @return Unique aggregate id.
+	 */
+	public final String getAggregateId() {
+		return aggregateId;
+	}
+
+	/**
+	 * Returns the user name.
+	 * 
+	 * @return Unique name of the user.
+	 */
+	public final String getUserName() {
+		return userName;
+	}
+
+	/**
+	 * Returns the email address.
+	 * 
+	 * @return Email address.
+	 */
+	public final String getEmail() {
+		return email;
+	}
+
+	/**
+	 * Returns the state.
+	 * 
+	 * @return Current state of the user.
+	 */
+	public final UserState getState() {
+		return state;
+	}
+
+	@Override
+	public final String toTraceString() {
+		return new ToStringBuilder(this).append("aggregateId", aggregateId).append("userName",
+		        userName).append("email", email).append("state", state).toString();
+	}
+
+	@Override
+	public final String toString() {
+		return userName;
+	}
+
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.query.server.benchmarks;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the latency of the user lookups by aggregate id and by security
+ * token in an embedded Derby database with and without the unique indexes
+ * declared on the "AUCTION_USER" table. The table and the statements
+ * correspond to the ones Hibernate creates for the AuctionUser entity and
+ * its named queries.<br>
+ * <br>
+ * <code>mvn package &amp;&amp; java -jar target/benchmarks.jar UserLookupBenchmark</code>
+ * <br>
+ * <br>
+ * or simply execute the {@link #main(String[])} method. Filling the table
+ * with one million users takes a while for each parameter combination.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class UserLookupBenchmark {
+
+	private static final int BATCH_SIZE = 1000;
+
+	/** Number of users in the table. */
+	@Param("1000000")
+	public int users;
+
+	/** Create the unique indexes on "AGGREGATE_ID" and "SECURITY_TOKEN". */
+	@Param( { "true", "false" })
+	public boolean indexed;
+
+	private String url;
+
+	private Connection connection;
+
+	private PreparedStatement findByAggregateId;
+
+	private PreparedStatement findUserIdBySecurityToken;
+
+	private Random random;
+
+	/**
+	 * Creates the database and fills the table.
+	 * 
+	 * @throws SQLException
+	 *             Error accessing the database.
+	 */
+	@Setup(Level.Trial)
+	public final void setUp() throws SQLException {
+		url = "jdbc:derby:memory:users-" + users + "-" + indexed;
+		connection = DriverManager.getConnection(url + ";create=true");
+		createTable();
+		insertUsers();
+		findByAggregateId = connection.prepareStatement("SELECT ID, AGGREGATE_ID, USER_NAME, "
+		        + "EMAIL, STATE, PASSWORD, SECURITY_TOKEN FROM AUCTION_USER "
+		        + "WHERE AGGREGATE_ID = ?");
+		findUserIdBySecurityToken = connection.prepareStatement("SELECT AGGREGATE_ID "
+		        + "FROM AUCTION_USER WHERE SECURITY_TOKEN = ?");
+		random = new Random(4711);
+	}
+
+	/**
+	 * Closes and drops the database.
+	 * 
+	 * @throws SQLException
+	 *             Error closing the connection.
+	 */
+	@TearDown(Level.Trial)
+	public final void tearDown() throws SQLException {
+		connection.close();
+		try {
+			DriverManager.getConnection(url + ";drop=true");
+		} catch (final SQLException ex) {
+			// Expected: Derby always signals the drop with an exception
+		}
+	}
+
+	/**
+	 * Loads a complete user by its aggregate id.
+	 * 
+	 * @return User name.
+	 * 
+	 * @throws SQLException
+	 *             Error accessing the database.
+	 */
+	@Benchmark
+	public final String findByAggregateId() throws SQLException {
+		findByAggregateId.setString(1, aggregateId(random.nextInt(users)));
+		try (final ResultSet rs = findByAggregateId.executeQuery()) {
+			if (rs.next()) {
+				return rs.getString(3);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Loads the aggregate id of a user by the security token.
+	 * 
+	 * @return Aggregate id.
+	 * 
+	 * @throws SQLException
+	 *             Error accessing the database.
+	 */
+	@Benchmark
+	public final String findUserIdBySecurityToken() throws SQLException {
+		findUserIdBySecurityToken.setString(1, securityToken(random.nextInt(users)));
+		try (final ResultSet rs = findUserIdBySecurityToken.executeQuery()) {
+			if (rs.next()) {
+				return rs.getString(1);
+			}
+			return null;
+		}
+	}
+
+	private void createTable() throws SQLException {
+		try (final Statement stmt = connection.createStatement()) {
+			stmt.execute("CREATE TABLE AUCTION_USER (ID BIGINT NOT NULL, "
+			        + "AGGREGATE_ID VARCHAR(37) NOT NULL, USER_NAME VARCHAR(20) NOT NULL, "
+			        + "EMAIL VARCHAR(320) NOT NULL, STATE INTEGER NOT NULL, "
+			        + "PASSWORD VARCHAR(130) NOT NULL, SECURITY_TOKEN VARCHAR(40), "
+			        + "PRIMARY KEY (ID))");
+			if (indexed) {
+				stmt.execute("ALTER TABLE AUCTION_USER ADD UNIQUE (AGGREGATE_ID)");
+				stmt.execute("ALTER TABLE AUCTION_USER ADD UNIQUE (SECURITY_TOKEN)");
+			}
+		}
+	}
+
+	private void insertUsers() throws SQLException {
+		connection.setAutoCommit(false);
+		try (final PreparedStatement insert = connection.prepareStatement("INSERT INTO "
+		        + "AUCTION_USER (ID, AGGREGATE_ID, USER_NAME, EMAIL, STATE, PASSWORD, "
+		        + "SECURITY_TOKEN) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+			for (int i = 0; i < users; i++) {
+				insert.setLong(1, i);
+				insert.setString(2, aggregateId(i));
+				insert.setString(3, "user" + i);
+				insert.setString(4, "user" + i + "@example.com");
+				insert.setInt(5, 0);
+				insert.setString(6, "secret");
+				insert.setString(7, securityToken(i));
+				insert.addBatch();
+				if ((i + 1) % BATCH_SIZE == 0) {
+					insert.executeBatch();
+					connection.commit();
+				}
+			}
+			insert.executeBatch();
+			connection.commit();
+		}
+		connection.setAutoCommit(true);
+	}
+
+	private static String aggregateId(final int user) {
+		return new UUID(0, user).toString();
+	}
+
+	private static String securityToken(final int user) {
+		return "token-" + user;
+	}
+
+	/**
+	 * Runs the benchmark.
+	 * 
+	 * @param args
+	 *            Not used.
+	 * 
+	 * @throws RunnerException
+	 *             Error running the benchmark.
+	 */
+	public static void main(final String[] args) throws RunnerException {
+		final Options options = new OptionsBuilder().include(
+		        UserLookupBenchmark.class.getSimpleName()).build();
+		new Runner(options).run();
+	}
+
+}
@@ -15,29 +15,36 @@
  */
 package org.fuin.auction.query.server;
 
-import java.io.Serializable;
-
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.jms.BytesMessage;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageListener;
 import javax.jms.ObjectMessage;
 
 import org.fuin.auction.common.UserState;
+import org.fuin.auction.message.api.AuctionMessageCodecs;
 import org.fuin.auction.message.api.CategoryCreatedMessage;
 import org.fuin.auction.message.api.CategoryDeletedMessage;
 import org.fuin.auction.message.api.CategoryMarkedForDeletionMessage;
+import org.fuin.auction.message.api.MessageCodecRegistry;
 import org.fuin.auction.message.api.UserEmailVerifiedMessage;
 import org.fuin.auction.message.api.UserPasswordChangedMessage;
 import org.fuin.auction.message.api.UserRegisteredMessage;
+import org.fuin.auction.query.api.CategoryDto;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
- * Handles incoming JMS messages.
+ * Handles incoming JMS messages. Messages are expected in the binary format
+ * ({@link BytesMessage}); {@link ObjectMessage}s are still accepted for
+ * producers that have not been migrated yet. The decoded messages are passed
+ * to the {@link MessageHandler} methods via the {@link MessageHandlerRegistry}.
+ * An existing transaction is joined, so the {@link BatchingMessageConsumer}
+ * can apply many messages in one transaction.
  */
 @Named
 public class AuctionMessageListener implements MessageListener {
@@ -50,8 +57,30 @@ public class AuctionMessageListener implements MessageListener {
 	@Inject
 	private CategoryDao categoryDao;
 
+	@Inject
+	private CategoryCache categoryCache;
+
+	@Inject
+	private MessageHandlerRegistry handlers;
+
+	private MessageCodecRegistry codecRegistry = AuctionMessageCodecs.createRegistry();
+
+	/**
+	 * Sets the codecs used to decode binary messages. Defaults to the codecs
+	 * for all messages of the message API.
+	 * 
+	 * @param codecRegistry
+	 *            Registry to use.
+	 */
+	public final void setCodecRegistry(final MessageCodecRegistry codecRegistry) {
+		if (codecRegistry == null) {
+			throw new IllegalArgumentException("The argument 'codecRegistry' cannot be null");
+		}
+		this.codecRegistry = codecRegistry;
+	}
+
 	@Override
-	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	@Transactional(propagation = Propagation.REQUIRED)
 	public final void onMessage(final Message message) {
 
 		if (LOG.isDebugEnabled()) {
@@ -60,30 +89,20 @@ public class AuctionMessageListener implements MessageListener {
 
 		try {
 
-			if (message instanceof ObjectMessage) {
-				final ObjectMessage objectMessage = (ObjectMessage) message;
+			if (message instanceof BytesMessage) {
+				try {
+					handlers.dispatch(codecRegistry.decode((BytesMessage) message));
+				} catch (final JMSException ex) {
+					LOG.error("Error reading bytes from message", ex);
+				}
+			} else if (message instanceof ObjectMessage) {
 				try {
-					final Serializable obj = objectMessage.getObject();
-					if (obj instanceof CategoryCreatedMessage) {
-						handleMessage((CategoryCreatedMessage) obj);
-					} else if (obj instanceof CategoryMarkedForDeletionMessage) {
-						handleMessage((CategoryMarkedForDeletionMessage) obj);
-					} else if (obj instanceof CategoryDeletedMessage) {
-						handleMessage((CategoryDeletedMessage) obj);
-					} else if (obj instanceof UserRegisteredMessage) {
-						handleMessage((UserRegisteredMessage) obj);
-					} else if (obj instanceof UserEmailVerifiedMessage) {
-						handleMessage((UserEmailVerifiedMessage) obj);
-					} else if (obj instanceof UserPasswordChangedMessage) {
-						handleMessage((UserPasswordChangedMessage) obj);
-					} else {
-						LOG.warn("Received non-Auction message: " + obj);
-					}
+					handlers.dispatch(((ObjectMessage) message).getObject());
 				} catch (final JMSException ex) {
 					LOG.error("Error reading object from message", ex);
 				}
 			} else {
-				LOG.warn("Received non-Object message: " + message);
+				LOG.warn("Received neither Bytes nor Object message: " + message);
 			}
 
 		} catch (final RuntimeException ex) {
@@ -92,6 +111,7 @@ public class AuctionMessageListener implements MessageListener {
 
 	}
 
+	@MessageHandler
 	private void handleMessage(final CategoryCreatedMessage message) {
 
 		if (LOG.isDebugEnabled()) {
@@ -99,9 +119,11 @@ public class AuctionMessageListener implements MessageListener {
 		}
 		final Long id = Long.parseLong(message.getAggregateId());
 		categoryDao.persist(new Category(id, message.getName().toString(), true));
+		categoryCache.put(new CategoryDto(id, message.getName().toString(), true));
 
 	}
 
+	@MessageHandler
 	private void handleMessage(final CategoryMarkedForDeletionMessage message) {
 
 		if (LOG.isDebugEnabled()) {
@@ -111,9 +133,11 @@ public class AuctionMessageListener implements MessageListener {
 		final Long id = Long.parseLong(message.getAggregateId());
 		final Category category = categoryDao.find(id);
 		category.setActive(false);
+		categoryCache.put(new CategoryDto(id, category.getName(), false));
 
 	}
 
+	@MessageHandler
 	private void handleMessage(final CategoryDeletedMessage message) {
 
 		if (LOG.isDebugEnabled()) {
@@ -123,9 +147,11 @@ public class AuctionMessageListener implements MessageListener {
 		final Long id = Long.parseLong(message.getAggregateId());
 		final Category category = categoryDao.find(id);
 		categoryDao.remove(category);
+		categoryCache.remove(id);
 
 	}
 
+	@MessageHandler
 	private void handleMessage(final UserRegisteredMessage message) {
 
 		if (LOG.isDebugEnabled()) {
@@ -138,6 +164,7 @@ public class AuctionMessageListener implements MessageListener {
 
 	}
 
+	@MessageHandler
 	private void handleMessage(final UserEmailVerifiedMessage message) {
 
 		if (LOG.isDebugEnabled()) {
@@ -150,6 +177,7 @@ public class AuctionMessageListener implements MessageListener {
 
 	}
 
+	@MessageHandler
 	private void handleMessage(final UserPasswordChangedMessage message) {
 
 		if (LOG.isDebugEnabled()) {
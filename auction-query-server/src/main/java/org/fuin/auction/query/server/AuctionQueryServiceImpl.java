@@ -25,6 +25,8 @@ import org.fuin.auction.common.FailedToLoadProjectInfoException;
 import org.fuin.auction.common.Utils;
 import org.fuin.auction.query.api.AuctionQueryService;
 import org.fuin.auction.query.api.CategoryDto;
+import org.fuin.auction.query.api.ResultPage;
+import org.fuin.auction.query.api.UserDto;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.transaction.annotation.Propagation;
@@ -39,7 +41,7 @@ public class AuctionQueryServiceImpl implements AuctionQueryService {
 	private static final Logger LOG = LoggerFactory.getLogger(AuctionQueryServiceImpl.class);
 
 	@Inject
-	private CategoryDao categoryDao;
+	private CategoryCache categoryCache;
 
 	@Inject
 	private AuctionUserDao userDao;
@@ -57,27 +59,46 @@ public class AuctionQueryServiceImpl implements AuctionQueryService {
 	}
 
 	@Override
-	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	@Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
 	public final List<CategoryDto> findAllCategories() {
-		final List<Category> categories = categoryDao.findAll();
-		final List<CategoryDto> result = new ArrayList<CategoryDto>();
-		for (final Category category : categories) {
-			// TODO michael Create domain object to dto converter structure
-			result.add(new CategoryDto(category.getId(), category.getName(), category.isActive()));
-		}
-		return result;
+		return categoryCache.findAll();
 	}
 
 	@Override
-	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	@Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
 	public final List<CategoryDto> findAllActiveCategories() {
-		final List<Category> categories = categoryDao.findAllActive();
-		final List<CategoryDto> result = new ArrayList<CategoryDto>();
-		for (final Category category : categories) {
-			// TODO michael Create domain object to dto converter structure
-			result.add(new CategoryDto(category.getId(), category.getName(), category.isActive()));
+		return categoryCache.findAllActive();
+	}
+
+	@Override
+	@Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+	public final ResultPage<CategoryDto> findCategories(final Long afterKey,
+	        final int maxResults) {
+		checkMaxResults(maxResults);
+		// Read one more to find out if there is a next page
+		final List<CategoryDto> categories = categoryCache.findAfter(afterKey, maxResults + 1);
+		if (categories.size() > maxResults) {
+			final List<CategoryDto> items = categories.subList(0, maxResults);
+			return new ResultPage<CategoryDto>(items, items.get(maxResults - 1).getId());
 		}
-		return result;
+		return new ResultPage<CategoryDto>(categories, null);
+	}
+
+	@Override
+	@Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+	public final ResultPage<UserDto> findUsers(final Long afterKey, final int maxResults) {
+		checkMaxResults(maxResults);
+		// Read one more to find out if there is a next page
+		final List<AuctionUser> users = userDao.findAfter(afterKey, maxResults + 1);
+		final int count = Math.min(users.size(), maxResults);
+		final List<UserDto> items = new ArrayList<UserDto>(count);
+		for (int i = 0; i < count; i++) {
+			items.add(toDto(users.get(i)));
+		}
+		if (users.size() > maxResults) {
+			return new ResultPage<UserDto>(items, users.get(maxResults - 1).getId());
+		}
+		return new ResultPage<UserDto>(items, null);
 	}
 
 	@Override
@@ -87,11 +108,29 @@ public class AuctionQueryServiceImpl implements AuctionQueryService {
 	}
 
 	@Override
-	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	@Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
 	public final CategoryDto findById(final Long id) {
-		final Category category = categoryDao.find(id);
-		// TODO michael Create domain object to dto converter structure
-		return new CategoryDto(category.getId(), category.getName(), category.isActive());
+		return categoryCache.findById(id);
+	}
+
+	/**
+	 * Converts a user into a data transfer object.
+	 * 
+	 * @param user
+	 *            User to convert.
+	 * 
+	 * @return New DTO.
+	 */
+	static UserDto toDto(final AuctionUser user) {
+		return new UserDto(user.getAggregateId(), user.getUserName(), user.getEmail(), user
+		        .getState());
+	}
+
+	private static void checkMaxResults(final int maxResults) {
+		if ((maxResults < 1) || (maxResults > MAX_PAGE_SIZE)) {
+			throw new IllegalArgumentException("The argument 'maxResults' must be between 1 and "
+			        + MAX_PAGE_SIZE + ": " + maxResults);
+		}
 	}
 
 }
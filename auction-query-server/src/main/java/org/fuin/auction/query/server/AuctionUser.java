@@ -22,7 +22,11 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
 import javax.persistence.Table;
+import javax.persistence.TableGenerator;
+import javax.persistence.UniqueConstraint;
 import javax.validation.constraints.NotNull;
 
 import org.apache.commons.lang.builder.ToStringBuilder;
@@ -37,13 +41,35 @@ import org.fuin.objects4j.validation.UserNameStr;
  * User object.
  */
 @Entity
-@Table(name = "AUCTION_USER")
+@Table(name = "AUCTION_USER", uniqueConstraints = {
+        @UniqueConstraint(columnNames = "AGGREGATE_ID"),
+        @UniqueConstraint(columnNames = "SECURITY_TOKEN") })
+@NamedQueries( {
+        @NamedQuery(name = AuctionUser.FIND_BY_AGGREGATE_ID, query = "SELECT u FROM AuctionUser u "
+                + "WHERE u.aggregateId = :aggregateId"),
+        @NamedQuery(name = AuctionUser.FIND_AGGREGATE_ID_BY_SECURITY_TOKEN, query = "SELECT "
+                + "u.aggregateId FROM AuctionUser u WHERE u.securityToken = :securityToken"),
+        @NamedQuery(name = AuctionUser.FIND_AFTER_ID, query = "SELECT u FROM AuctionUser u "
+                + "WHERE u.id > :afterId ORDER BY u.id") })
 public class AuctionUser implements Serializable, TraceStringCapable {
 
 	private static final long serialVersionUID = 8435312185589868237L;
 
+	/** Name of the query that finds a user by the aggregate id. */
+	public static final String FIND_BY_AGGREGATE_ID = "AuctionUser.findByAggregateId";
+
+	/** Name of the query that finds the aggregate id of a user by the security token. */
+	public static final String FIND_AGGREGATE_ID_BY_SECURITY_TOKEN =
+	        "AuctionUser.findAggregateIdBySecurityToken";
+
+	/** Name of the query that finds the users after a given id. */
+	public static final String FIND_AFTER_ID = "AuctionUser.findAfterId";
+
+	// Identity columns prevent JDBC batch inserts - Ids are taken in blocks instead
 	@Id
-	@GeneratedValue(strategy = GenerationType.AUTO)
+	@GeneratedValue(strategy = GenerationType.TABLE, generator = "AuctionUserIdGenerator")
+	@TableGenerator(name = "AuctionUserIdGenerator", table = "ID_GENERATOR",
+	        pkColumnValue = "AUCTION_USER", allocationSize = 100)
 	@Column(name = "ID", nullable = false)
 	private Long id;
 
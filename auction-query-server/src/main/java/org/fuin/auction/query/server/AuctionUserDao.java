@@ -15,6 +15,8 @@
  */
 package org.fuin.auction.query.server;
 
+import java.util.List;
+
 import com.trg.dao.jpa.GenericDAO;
 
 /**
@@ -43,4 +45,19 @@ public interface AuctionUserDao extends GenericDAO<AuctionUser, Long> {
 	 */
 	public String findUserIdBySecurityToken(String securityToken);
 
+	/**
+	 * Loads users sorted by their id that have an id greater than the given
+	 * one. Uses the primary key index, so the position of the page does not
+	 * influence the time to read it.
+	 * 
+	 * @param afterId
+	 *            Id to start after or <code>null</code> to start with the
+	 *            first user.
+	 * @param maxResults
+	 *            Maximum number of users to return.
+	 * 
+	 * @return Users.
+	 */
+	public List<AuctionUser> findAfter(Long afterId, int maxResults);
+
 }
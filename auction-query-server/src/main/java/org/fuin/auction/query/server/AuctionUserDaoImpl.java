@@ -15,17 +15,20 @@
  */
 package org.fuin.auction.query.server;
 
+import java.util.List;
+
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 
 import com.trg.dao.jpa.GenericDAOImpl;
-import com.trg.search.Search;
 import com.trg.search.jpa.JPASearchProcessor;
 
 /**
- * User Data Access Object (DAO) implementation.
+ * User Data Access Object (DAO) implementation. The lookups by aggregate id
+ * and security token use the named queries of {@link AuctionUser} on the
+ * uniquely indexed columns.
  */
 @Named
 public final class AuctionUserDaoImpl extends GenericDAOImpl<AuctionUser, Long> implements
@@ -45,16 +48,42 @@ public final class AuctionUserDaoImpl extends GenericDAOImpl<AuctionUser, Long>
 
 	@Override
 	public final AuctionUser findByAggregateId(final String aggregateId) {
-		return searchUnique(new Search().addFilterEqual("aggregateId", aggregateId));
+		final List<AuctionUser> users = cast(em().createNamedQuery(
+		        AuctionUser.FIND_BY_AGGREGATE_ID).setParameter("aggregateId", aggregateId)
+		        .getResultList());
+		return first(users);
 	}
 
 	@Override
 	public final String findUserIdBySecurityToken(final String token) {
-		final AuctionUser user = searchUnique(new Search().addFilterEqual("securityToken", token));
-		if (user == null) {
+		final List<String> ids = cast(em().createNamedQuery(
+		        AuctionUser.FIND_AGGREGATE_ID_BY_SECURITY_TOKEN).setParameter("securityToken",
+		        token).getResultList());
+		return first(ids);
+	}
+
+	@Override
+	public final List<AuctionUser> findAfter(final Long afterId, final int maxResults) {
+		final long start;
+		if (afterId == null) {
+			start = Long.MIN_VALUE;
+		} else {
+			start = afterId;
+		}
+		return cast(em().createNamedQuery(AuctionUser.FIND_AFTER_ID).setParameter("afterId",
+		        start).setMaxResults(maxResults).getResultList());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> List<T> cast(final List<?> list) {
+		return (List<T>) list;
+	}
+
+	private static <T> T first(final List<T> list) {
+		if (list.isEmpty()) {
 			return null;
 		}
-		return user.getAggregateId();
+		return list.get(0);
 	}
 
 }
@@ -0,0 +1,470 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.query.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Receives messages from a queue and applies them in batches. Each consumer
+ * thread waits for the first message and then drains up to
+ * {@link #setMaxBatchSize(int) maximum batch size} messages that are already
+ * available. All messages of a batch are passed to the listener within one
+ * transaction and acknowledged together by committing the transacted JMS
+ * session afterwards.<br>
+ * <br>
+ * If the transaction of a batch fails, the messages are applied again one by
+ * one with a transaction each, so a single bad message does not block the
+ * others. The listener is expected to join an existing transaction.<br>
+ * <br>
+ * With more than one {@link #setConcurrentConsumers(int) concurrent consumer}
+ * every thread uses its own connection and session. The producer has to set
+ * the aggregate id as JMSXGroupID; the broker then delivers all messages of
+ * an aggregate to the same consumer, so they are still applied in order.<br>
+ * <br>
+ * The consumer has to be {@link #start() started} and should be
+ * {@link #stop() stopped} when it is no longer needed.
+ */
+public class BatchingMessageConsumer {
+
+	private static final Logger LOG = LoggerFactory.getLogger(BatchingMessageConsumer.class);
+
+	/** Default maximum number of messages applied in one transaction. */
+	public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+	/** Default time to wait for the first message of a batch. */
+	public static final long DEFAULT_RECEIVE_TIMEOUT_MILLIS = 1000;
+
+	/** Default number of consumer threads. */
+	public static final int DEFAULT_CONCURRENT_CONSUMERS = 1;
+
+	/** Default time to wait before reconnecting after an error. */
+	public static final long DEFAULT_RECOVERY_INTERVAL_MILLIS = 5000;
+
+	private final ConnectionFactory connectionFactory;
+
+	private final String queueName;
+
+	private final MessageListener listener;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final AtomicLong batches = new AtomicLong();
+
+	private final AtomicLong messages = new AtomicLong();
+
+	private final AtomicLong fallbacks = new AtomicLong();
+
+	private final AtomicLong maxBatch = new AtomicLong();
+
+	private final List<Thread> consumers = new ArrayList<Thread>();
+
+	private int maxBatchSize;
+
+	private int concurrentConsumers;
+
+	private long receiveTimeoutMillis;
+
+	private long recoveryIntervalMillis;
+
+	private volatile boolean running;
+
+	/**
+	 * Constructor with all mandatory attributes.
+	 * 
+	 * @param connectionFactory
+	 *            Factory used to create the connection.
+	 * @param queueName
+	 *            Name of the queue to consume.
+	 * @param listener
+	 *            Listener that applies a single message.
+	 * @param transactionManager
+	 *            Manager for the batch transactions.
+	 */
+	public BatchingMessageConsumer(final ConnectionFactory connectionFactory,
+	        final String queueName, final MessageListener listener,
+	        final PlatformTransactionManager transactionManager) {
+		super();
+		if (connectionFactory == null) {
+			throw new IllegalArgumentException("The argument 'connectionFactory' cannot be null");
+		}
+		if (queueName == null) {
+			throw new IllegalArgumentException("The argument 'queueName' cannot be null");
+		}
+		if (listener == null) {
+			throw new IllegalArgumentException("The argument 'listener' cannot be null");
+		}
+		if (transactionManager == null) {
+			throw new IllegalArgumentException("The argument 'transactionManager' cannot be null");
+		}
+		this.connectionFactory = connectionFactory;
+		this.queueName = queueName;
+		this.listener = listener;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+		this.concurrentConsumers = DEFAULT_CONCURRENT_CONSUMERS;
+		this.receiveTimeoutMillis = DEFAULT_RECEIVE_TIMEOUT_MILLIS;
+		this.recoveryIntervalMillis = DEFAULT_RECOVERY_INTERVAL_MILLIS;
+	}
+
+	/**
+	 * Sets the maximum number of messages applied in one transaction.
+	 * 
+	 * @param maxBatchSize
+	 *            Number of messages.
+	 */
+	public final void setMaxBatchSize(final int maxBatchSize) {
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("The maximum batch size must be at least 1: "
+			        + maxBatchSize);
+		}
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * Returns the maximum number of messages applied in one transaction.
+	 * 
+	 * @return Number of messages.
+	 */
+	public final int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	/**
+	 * Sets the number of consumer threads. Changes take effect with the next
+	 * {@link #start()}.
+	 * 
+	 * @param concurrentConsumers
+	 *            Number of threads.
+	 */
+	public final void setConcurrentConsumers(final int concurrentConsumers) {
+		if (concurrentConsumers < 1) {
+			throw new IllegalArgumentException("The number of consumers must be at least 1: "
+			        + concurrentConsumers);
+		}
+		this.concurrentConsumers = concurrentConsumers;
+	}
+
+	/**
+	 * Returns the number of consumer threads.
+	 * 
+	 * @return Number of threads.
+	 */
+	public final int getConcurrentConsumers() {
+		return concurrentConsumers;
+	}
+
+	/**
+	 * Sets the time to wait for the first message of a batch. This is also
+	 * the maximum time {@link #stop()} has to wait for the consumer threads.
+	 * 
+	 * @param receiveTimeoutMillis
+	 *            Time in milliseconds.
+	 */
+	public final void setReceiveTimeoutMillis(final long receiveTimeoutMillis) {
+		if (receiveTimeoutMillis < 1) {
+			throw new IllegalArgumentException("The receive timeout must be at least 1: "
+			        + receiveTimeoutMillis);
+		}
+		this.receiveTimeoutMillis = receiveTimeoutMillis;
+	}
+
+	/**
+	 * Returns the time to wait for the first message of a batch.
+	 * 
+	 * @return Time in milliseconds.
+	 */
+	public final long getReceiveTimeoutMillis() {
+		return receiveTimeoutMillis;
+	}
+
+	/**
+	 * Sets the time to wait before reconnecting after a JMS error.
+	 * 
+	 * @param recoveryIntervalMillis
+	 *            Time in milliseconds.
+	 */
+	public final void setRecoveryIntervalMillis(final long recoveryIntervalMillis) {
+		if (recoveryIntervalMillis < 0) {
+			throw new IllegalArgumentException("The recovery interval cannot be negative: "
+			        + recoveryIntervalMillis);
+		}
+		this.recoveryIntervalMillis = recoveryIntervalMillis;
+	}
+
+	/**
+	 * Returns the time to wait before reconnecting after a JMS error.
+	 * 
+	 * @return Time in milliseconds.
+	 */
+	public final long getRecoveryIntervalMillis() {
+		return recoveryIntervalMillis;
+	}
+
+	/**
+	 * Returns the number of committed batches.
+	 * 
+	 * @return Count.
+	 */
+	public final long getBatches() {
+		return batches.get();
+	}
+
+	/**
+	 * Returns the number of messages in committed batches.
+	 * 
+	 * @return Count.
+	 */
+	public final long getMessages() {
+		return messages.get();
+	}
+
+	/**
+	 * Returns the number of batches that had to be applied message by message
+	 * because the batch transaction failed.
+	 * 
+	 * @return Count.
+	 */
+	public final long getFallbacks() {
+		return fallbacks.get();
+	}
+
+	/**
+	 * Returns the average number of messages per batch.
+	 * 
+	 * @return Messages per batch.
+	 */
+	public final double getAverageBatchSize() {
+		final long count = batches.get();
+		if (count == 0) {
+			return 0;
+		}
+		return (double) messages.get() / count;
+	}
+
+	/**
+	 * Returns the largest number of messages committed in one batch.
+	 * 
+	 * @return Number of messages.
+	 */
+	public final long getLargestBatchSize() {
+		return maxBatch.get();
+	}
+
+	/**
+	 * Starts the consumer threads. Calling this method on an already started
+	 * consumer does nothing.
+	 */
+	public final synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		final Runnable loop = new Runnable() {
+			@Override
+			public void run() {
+				consumeLoop();
+			}
+		};
+		for (int i = 0; i < concurrentConsumers; i++) {
+			final Thread thread = new Thread(loop, "BatchingMessageConsumer-" + queueName + "-"
+			        + i);
+			thread.setDaemon(true);
+			thread.start();
+			consumers.add(thread);
+		}
+	}
+
+	/**
+	 * Stops the consumer threads after their current batch is finished.
+	 */
+	public final void stop() {
+		final List<Thread> threads;
+		synchronized (this) {
+			if (!running) {
+				return;
+			}
+			running = false;
+			threads = new ArrayList<Thread>(consumers);
+			consumers.clear();
+		}
+		try {
+			for (final Thread thread : threads) {
+				thread.join();
+			}
+		} catch (final InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Main loop of a consumer thread. Opens a connection and consumes until
+	 * the consumer is stopped. Reconnects after JMS errors.
+	 */
+	private void consumeLoop() {
+		while (running) {
+			Connection connection = null;
+			try {
+				connection = connectionFactory.createConnection();
+				final Session session = connection.createSession(true, Session.SESSION_TRANSACTED);
+				final MessageConsumer messageConsumer = session.createConsumer(session
+				        .createQueue(queueName));
+				connection.start();
+				final List<Message> batch = new ArrayList<Message>();
+				while (running) {
+					if (receive(messageConsumer, batch)) {
+						apply(batch);
+						session.commit();
+						record(batch.size());
+						batch.clear();
+					}
+				}
+			} catch (final JMSException ex) {
+				recover(connection, ex);
+				connection = null;
+			} catch (final RuntimeException ex) {
+				recover(connection, ex);
+				connection = null;
+			} finally {
+				close(connection);
+			}
+		}
+	}
+
+	private void recover(final Connection connection, final Exception ex) {
+		LOG.error("Error consuming from queue '" + queueName + "' - Reconnecting in "
+		        + recoveryIntervalMillis + " ms", ex);
+		close(connection);
+		sleep(recoveryIntervalMillis);
+	}
+
+	/**
+	 * Waits for the first message and drains the ones already available.
+	 * 
+	 * @param messageConsumer
+	 *            Consumer to receive from.
+	 * @param batch
+	 *            List to add the messages to.
+	 * 
+	 * @return If at least one message was received TRUE, else FALSE.
+	 * 
+	 * @throws JMSException
+	 *             Error receiving.
+	 */
+	private boolean receive(final MessageConsumer messageConsumer, final List<Message> batch)
+	        throws JMSException {
+		final Message first = messageConsumer.receive(receiveTimeoutMillis);
+		if (first == null) {
+			return false;
+		}
+		batch.add(first);
+		while (batch.size() < maxBatchSize) {
+			final Message next = messageConsumer.receiveNoWait();
+			if (next == null) {
+				break;
+			}
+			batch.add(next);
+		}
+		return true;
+	}
+
+	/**
+	 * Applies all messages in one transaction. If this fails, every message
+	 * is applied in a transaction of its own.
+	 * 
+	 * @param batch
+	 *            Messages to apply.
+	 */
+	private void apply(final List<Message> batch) {
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Apply batch: " + batch.size() + " messages");
+		}
+		try {
+			transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+				@Override
+				protected void doInTransactionWithoutResult(final TransactionStatus status) {
+					for (final Message message : batch) {
+						listener.onMessage(message);
+					}
+				}
+			});
+		} catch (final RuntimeException ex) {
+			fallbacks.incrementAndGet();
+			LOG.warn("Batch of " + batch.size() + " messages failed - Applying them one by one",
+			        ex);
+			for (final Message message : batch) {
+				applySingle(message);
+			}
+		}
+	}
+
+	private void applySingle(final Message message) {
+		try {
+			transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+				@Override
+				protected void doInTransactionWithoutResult(final TransactionStatus status) {
+					listener.onMessage(message);
+				}
+			});
+		} catch (final RuntimeException ex) {
+			LOG.error("Error applying message: " + message, ex);
+		}
+	}
+
+	private void record(final int size) {
+		batches.incrementAndGet();
+		messages.addAndGet(size);
+		long max = maxBatch.get();
+		while ((size > max) && !maxBatch.compareAndSet(max, size)) {
+			max = maxBatch.get();
+		}
+	}
+
+	private static void close(final Connection connection) {
+		if (connection != null) {
+			try {
+				connection.close();
+			} catch (final JMSException ex) {
+				LOG.warn("Error closing connection", ex);
+			}
+		}
+	}
+
+	private static void sleep(final long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (final InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
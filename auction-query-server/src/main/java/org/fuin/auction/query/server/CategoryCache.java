@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.query.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+
+import org.fuin.auction.query.api.CategoryDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * In-memory projection of the categories. The current state is held in an
+ * immutable {@link CategorySnapshot} that is replaced with a new one on each
+ * update from the {@link AuctionMessageListener}. Readers never block and
+ * don't need any SQL. Changes are applied after the transaction that changed
+ * the database was committed; the database table remains the durable
+ * backing and is used to {@link #preload() build} the first snapshot.<br>
+ * <br>
+ * If the {@link #setInMemory(boolean) in-memory mode} is switched off, every
+ * read queries the database. If the snapshot could not be built at startup,
+ * it is built with the first read.
+ */
+public class CategoryCache {
+
+	private static final Logger LOG = LoggerFactory.getLogger(CategoryCache.class);
+
+	private final Object lock = new Object();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	@Inject
+	private CategoryDao categoryDao;
+
+	private boolean inMemory = true;
+
+	/** Current state or <code>null</code> if not loaded. */
+	private volatile CategorySnapshot snapshot;
+
+	/** Number of updates - Guarded by 'lock'. */
+	private long modifications;
+
+	/**
+	 * Sets if the categories are kept in memory.
+	 * 
+	 * @param inMemory
+	 *            TRUE to serve reads from memory, FALSE to query the database
+	 *            for every read.
+	 */
+	public final void setInMemory(final boolean inMemory) {
+		synchronized (lock) {
+			this.inMemory = inMemory;
+			if (!inMemory) {
+				modifications++;
+				snapshot = null;
+			}
+		}
+	}
+
+	/**
+	 * Returns if the categories are kept in memory.
+	 * 
+	 * @return TRUE if reads are served from memory.
+	 */
+	public final boolean isInMemory() {
+		synchronized (lock) {
+			return inMemory;
+		}
+	}
+
+	/**
+	 * Builds the snapshot from the database. Does nothing if the in-memory
+	 * mode is switched off. A failure is only logged; the snapshot is built
+	 * with the first read in this case.
+	 */
+	public final void preload() {
+		if (!isInMemory()) {
+			return;
+		}
+		try {
+			final CategorySnapshot loaded = load();
+			LOG.info("Loaded " + loaded.getSize() + " categories into memory");
+		} catch (final RuntimeException ex) {
+			LOG.warn("Loading categories failed - Trying again with the first read", ex);
+		}
+	}
+
+	/**
+	 * Returns all categories sorted by id.
+	 * 
+	 * @return New list of categories.
+	 */
+	public final List<CategoryDto> findAll() {
+		return new ArrayList<CategoryDto>(current().getAll());
+	}
+
+	/**
+	 * Returns all active categories sorted by id.
+	 * 
+	 * @return New list of categories.
+	 */
+	public final List<CategoryDto> findAllActive() {
+		return new ArrayList<CategoryDto>(current().getActive());
+	}
+
+	/**
+	 * Returns all categories sorted by name.
+	 * 
+	 * @return New list of categories.
+	 */
+	public final List<CategoryDto> findAllByName() {
+		return new ArrayList<CategoryDto>(current().getAllByName());
+	}
+
+	/**
+	 * Returns categories sorted by id that have an id greater than the given
+	 * one.
+	 * 
+	 * @param afterId
+	 *            Id to start after or <code>null</code> to start with the
+	 *            first category.
+	 * @param maxResults
+	 *            Maximum number of categories to return.
+	 * 
+	 * @return New list of categories.
+	 */
+	public final List<CategoryDto> findAfter(final Long afterId, final int maxResults) {
+		return new ArrayList<CategoryDto>(current().getAfter(afterId, maxResults));
+	}
+
+	/**
+	 * Returns a single category.
+	 * 
+	 * @param id
+	 *            Unique category id.
+	 * 
+	 * @return Category or <code>null</code> if it does not exist.
+	 */
+	public final CategoryDto findById(final Long id) {
+		return current().findById(id);
+	}
+
+	/**
+	 * Returns a single category.
+	 * 
+	 * @param name
+	 *            Unique category name.
+	 * 
+	 * @return Category or <code>null</code> if it does not exist.
+	 */
+	public final CategoryDto findByName(final String name) {
+		return current().findByName(name);
+	}
+
+	/**
+	 * Adds or replaces a category after the current transaction is
+	 * committed.
+	 * 
+	 * @param category
+	 *            Category to store.
+	 */
+	public final void put(final CategoryDto category) {
+		if (category == null) {
+			throw new IllegalArgumentException("The argument 'category' cannot be null");
+		}
+		afterCommit(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (lock) {
+					modifications++;
+					if (snapshot != null) {
+						snapshot = snapshot.with(category);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Removes a category after the current transaction is committed.
+	 * 
+	 * @param id
+	 *            Unique category id.
+	 */
+	public final void remove(final Long id) {
+		if (id == null) {
+			throw new IllegalArgumentException("The argument 'id' cannot be null");
+		}
+		afterCommit(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (lock) {
+					modifications++;
+					if (snapshot != null) {
+						snapshot = snapshot.without(id);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns the number of reads served from memory.
+	 * 
+	 * @return Count.
+	 */
+	public final long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of reads that had to query the database.
+	 * 
+	 * @return Count.
+	 */
+	public final long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the number of categories in memory.
+	 * 
+	 * @return Number of categories or zero if not loaded.
+	 */
+	public final int getSize() {
+		final CategorySnapshot current = snapshot;
+		if (current == null) {
+			return 0;
+		}
+		return current.getSize();
+	}
+
+	/**
+	 * Drops the snapshot. It is built again with the next read.
+	 */
+	public final void clear() {
+		synchronized (lock) {
+			modifications++;
+			snapshot = null;
+		}
+	}
+
+	private CategorySnapshot current() {
+		final CategorySnapshot current = snapshot;
+		if (current != null) {
+			hits.incrementAndGet();
+			return current;
+		}
+		misses.incrementAndGet();
+		return load();
+	}
+
+	/**
+	 * Reads all categories from the database. The result becomes the current
+	 * snapshot if the in-memory mode is active and no update happened in the
+	 * meantime.
+	 * 
+	 * @return Snapshot with the categories read from the database.
+	 */
+	private CategorySnapshot load() {
+		final long before;
+		synchronized (lock) {
+			before = modifications;
+		}
+		final List<CategoryDto> list = new ArrayList<CategoryDto>();
+		for (final Category category : categoryDao.findAll()) {
+			list.add(new CategoryDto(category.getId(), category.getName(), category.isActive()));
+		}
+		final CategorySnapshot loaded = new CategorySnapshot(list);
+		synchronized (lock) {
+			if (inMemory && (snapshot == null) && (modifications == before)) {
+				snapshot = loaded;
+			}
+		}
+		return loaded;
+	}
+
+	private static void afterCommit(final Runnable runnable) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			final TransactionSynchronization sync = new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					runnable.run();
+				}
+			};
+			TransactionSynchronizationManager.registerSynchronization(sync);
+		} else {
+			runnable.run();
+		}
+	}
+
+}
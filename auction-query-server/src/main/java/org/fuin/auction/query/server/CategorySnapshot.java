@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.query.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.fuin.auction.query.api.CategoryDto;
+
+/**
+ * Immutable state of all categories with lists sorted by id and by name.
+ * Changes create a new snapshot; existing snapshots are never modified and
+ * can be read by any number of threads without locking. The contained DTOs
+ * are shared between snapshots and must not be modified.
+ */
+public final class CategorySnapshot {
+
+	/** Snapshot without any category. */
+	public static final CategorySnapshot EMPTY = new CategorySnapshot(
+	        new ArrayList<CategoryDto>());
+
+	private static final Comparator<CategoryDto> BY_NAME = new Comparator<CategoryDto>() {
+		@Override
+		public int compare(final CategoryDto o1, final CategoryDto o2) {
+			final int result = o1.getName().compareTo(o2.getName());
+			if (result == 0) {
+				return o1.compareTo(o2);
+			}
+			return result;
+		}
+	};
+
+	private final Map<Long, CategoryDto> byId;
+
+	private final Map<String, CategoryDto> byName;
+
+	private final List<CategoryDto> all;
+
+	private final List<CategoryDto> active;
+
+	private final List<CategoryDto> allByName;
+
+	/**
+	 * Constructor with categories.
+	 * 
+	 * @param categories
+	 *            Categories in any order.
+	 */
+	public CategorySnapshot(final Collection<CategoryDto> categories) {
+		super();
+		if (categories == null) {
+			throw new IllegalArgumentException("The argument 'categories' cannot be null");
+		}
+		final Map<Long, CategoryDto> idMap = new HashMap<Long, CategoryDto>();
+		final Map<String, CategoryDto> nameMap = new HashMap<String, CategoryDto>();
+		for (final CategoryDto category : categories) {
+			idMap.put(category.getId(), category);
+			nameMap.put(category.getName(), category);
+		}
+		final List<CategoryDto> sortedById = new ArrayList<CategoryDto>(idMap.values());
+		Collections.sort(sortedById);
+		final List<CategoryDto> activeOnly = new ArrayList<CategoryDto>();
+		for (final CategoryDto category : sortedById) {
+			if (category.isActive()) {
+				activeOnly.add(category);
+			}
+		}
+		final List<CategoryDto> sortedByName = new ArrayList<CategoryDto>(sortedById);
+		Collections.sort(sortedByName, BY_NAME);
+		this.byId = Collections.unmodifiableMap(idMap);
+		this.byName = Collections.unmodifiableMap(nameMap);
+		this.all = Collections.unmodifiableList(sortedById);
+		this.active = Collections.unmodifiableList(activeOnly);
+		this.allByName = Collections.unmodifiableList(sortedByName);
+	}
+
+	/**
+	 * Returns a new snapshot that contains the given category in addition
+	 * to or instead of an existing one with the same id.
+	 * 
+	 * @param category
+	 *            Category to add or replace.
+	 * 
+	 * @return New snapshot.
+	 */
+	public final CategorySnapshot with(final CategoryDto category) {
+		if (category == null) {
+			throw new IllegalArgumentException("The argument 'category' cannot be null");
+		}
+		final Map<Long, CategoryDto> map = new HashMap<Long, CategoryDto>(byId);
+		map.put(category.getId(), category);
+		return new CategorySnapshot(map.values());
+	}
+
+	/**
+	 * Returns a new snapshot without the category with the given id.
+	 * 
+	 * @param id
+	 *            Unique category id.
+	 * 
+	 * @return New snapshot or this one if the category does not exist.
+	 */
+	public final CategorySnapshot without(final Long id) {
+		if (!byId.containsKey(id)) {
+			return this;
+		}
+		final Map<Long, CategoryDto> map = new HashMap<Long, CategoryDto>(byId);
+		map.remove(id);
+		return new CategorySnapshot(map.values());
+	}
+
+	/**
+	 * Returns a category by its id.
+	 * 
+	 * @param id
+	 *            Unique category id.
+	 * 
+	 * @return Category or <code>null</code> if it does not exist.
+	 */
+	public final CategoryDto findById(final Long id) {
+		return byId.get(id);
+	}
+
+	/**
+	 * Returns a category by its name.
+	 * 
+	 * @param name
+	 *            Unique category name.
+	 * 
+	 * @return Category or <code>null</code> if it does not exist.
+	 */
+	public final CategoryDto findByName(final String name) {
+		return byName.get(name);
+	}
+
+	/**
+	 * Returns all categories sorted by id.
+	 * 
+	 * @return Unmodifiable list.
+	 */
+	public final List<CategoryDto> getAll() {
+		return all;
+	}
+
+	/**
+	 * Returns all active categories sorted by id.
+	 * 
+	 * @return Unmodifiable list.
+	 */
+	public final List<CategoryDto> getActive() {
+		return active;
+	}
+
+	/**
+	 * Returns all categories sorted by name.
+	 * 
+	 * @return Unmodifiable list.
+	 */
+	public final List<CategoryDto> getAllByName() {
+		return allByName;
+	}
+
+	/**
+	 * Returns the categories with an id greater than the given one.
+	 * 
+	 * @param afterId
+	 *            Id to start after or <code>null</code> to start with the
+	 *            first category.
+	 * @param maxResults
+	 *            Maximum number of categories to return.
+	 * 
+	 * @return Categories sorted by id.
+	 */
+	public final List<CategoryDto> getAfter(final Long afterId, final int maxResults) {
+		int low = 0;
+		if (afterId != null) {
+			// Binary search for the first id greater than 'afterId'
+			int high = all.size();
+			while (low < high) {
+				final int mid = (low + high) >>> 1;
+				if (all.get(mid).getId().longValue() <= afterId.longValue()) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+		}
+		return all.subList(low, Math.min(all.size(), low + maxResults));
+	}
+
+	/**
+	 * Returns the number of categories.
+	 * 
+	 * @return Number of categories.
+	 */
+	public final int getSize() {
+		return all.size();
+	}
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.query.server;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.util.List;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.fuin.auction.query.api.CategoryDto;
+import org.springframework.web.HttpRequestHandler;
+
+/**
+ * Streams all categories or users as CSV ("text/csv", UTF-8). The rows are
+ * read page by page with keyset paging and written as soon as a page is
+ * available, so neither the server nor the client has to hold the complete
+ * result in memory. The type is selected with the request parameter "type"
+ * ("categories" or "users"). Only requests from the local host are answered.
+ */
+public final class ExportHttpRequestHandler implements HttpRequestHandler {
+
+	/** Number of rows read from the database at once. */
+	public static final int PAGE_SIZE = 500;
+
+	private final AuctionUserDao userDao;
+
+	private final CategoryCache categoryCache;
+
+	/**
+	 * Constructor with data sources.
+	 * 
+	 * @param userDao
+	 *            Source for the users.
+	 * @param categoryCache
+	 *            Source for the categories.
+	 */
+	public ExportHttpRequestHandler(final AuctionUserDao userDao,
+	        final CategoryCache categoryCache) {
+		super();
+		this.userDao = userDao;
+		this.categoryCache = categoryCache;
+	}
+
+	@Override
+	public final void handleRequest(final HttpServletRequest request,
+	        final HttpServletResponse response) throws ServletException, IOException {
+		if (!InetAddress.getByName(request.getRemoteAddr()).isLoopbackAddress()) {
+			response.sendError(HttpServletResponse.SC_FORBIDDEN);
+			return;
+		}
+		final String type = request.getParameter("type");
+		if ("categories".equals(type)) {
+			prepare(response, type);
+			exportCategories(response.getWriter());
+		} else if ("users".equals(type)) {
+			prepare(response, type);
+			exportUsers(response.getWriter());
+		} else {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+			        "Parameter 'type' must be 'categories' or 'users'");
+		}
+	}
+
+	private void exportCategories(final PrintWriter writer) {
+		writer.print("id,name,active\r\n");
+		Long afterId = null;
+		List<CategoryDto> page = categoryCache.findAfter(afterId, PAGE_SIZE);
+		while (!page.isEmpty()) {
+			for (final CategoryDto category : page) {
+				writeRow(writer, String.valueOf(category.getId()), category.getName(), String
+				        .valueOf(category.isActive()));
+			}
+			writer.flush();
+			afterId = page.get(page.size() - 1).getId();
+			page = categoryCache.findAfter(afterId, PAGE_SIZE);
+		}
+	}
+
+	private void exportUsers(final PrintWriter writer) {
+		writer.print("aggregateId,userName,email,state\r\n");
+		Long afterId = null;
+		List<AuctionUser> page = userDao.findAfter(afterId, PAGE_SIZE);
+		while (!page.isEmpty()) {
+			for (final AuctionUser user : page) {
+				writeRow(writer, user.getAggregateId(), user.getUserName(), user.getEmail(),
+				        String.valueOf(user.getState()));
+			}
+			writer.flush();
+			afterId = page.get(page.size() - 1).getId();
+			page = userDao.findAfter(afterId, PAGE_SIZE);
+		}
+	}
+
+	private static void prepare(final HttpServletResponse response, final String type) {
+		response.setContentType("text/csv");
+		response.setCharacterEncoding("UTF-8");
+		response.setHeader("Content-Disposition", "attachment; filename=\"" + type + ".csv\"");
+	}
+
+	private static void writeRow(final PrintWriter writer, final String... values) {
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				writer.print(',');
+			}
+			writer.print(quote(values[i]));
+		}
+		writer.print("\r\n");
+	}
+
+	/**
+	 * Quotes a value as defined by RFC 4180 if necessary.
+	 * 
+	 * @param value
+	 *            Value to quote.
+	 * 
+	 * @return Value that can be used as CSV field.
+	 */
+	static String quote(final String value) {
+		if (value == null) {
+			return "";
+		}
+		if ((value.indexOf(',') < 0) && (value.indexOf('"') < 0) && (value.indexOf('\n') < 0)
+		        && (value.indexOf('\r') < 0)) {
+			return value;
+		}
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+
+}
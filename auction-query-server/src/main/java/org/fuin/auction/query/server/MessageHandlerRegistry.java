@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.auction.query.server;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.fuin.auction.message.api.AuctionMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+/**
+ * Dispatches messages to the methods annotated with {@link MessageHandler}.
+ * The handlers of all beans are collected when the beans are created and
+ * looked up by the exact message class, so the number of message types does
+ * not influence the dispatch time. Messages without a handler are rejected.
+ * Counts and durations are recorded per message type and exposed via JMX as
+ * primitive values, so any JMX client can read them.
+ */
+public final class MessageHandlerRegistry implements BeanPostProcessor {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MessageHandlerRegistry.class);
+
+	private final ConcurrentMap<Class<?>, Handler> handlers;
+
+	private final AtomicLong unknownMessages;
+
+	/**
+	 * Default constructor.
+	 */
+	public MessageHandlerRegistry() {
+		super();
+		this.handlers = new ConcurrentHashMap<Class<?>, Handler>();
+		this.unknownMessages = new AtomicLong();
+	}
+
+	@Override
+	public final Object postProcessBeforeInitialization(final Object bean, final String beanName)
+	        throws BeansException {
+		register(bean);
+		return bean;
+	}
+
+	@Override
+	public final Object postProcessAfterInitialization(final Object bean, final String beanName)
+	        throws BeansException {
+		return bean;
+	}
+
+	/**
+	 * Registers all methods of the object (including the ones of its super
+	 * classes) that are annotated with {@link MessageHandler}.
+	 * 
+	 * @param target
+	 *            Object with handler methods.
+	 */
+	public final void register(final Object target) {
+		if (target == null) {
+			throw new IllegalArgumentException("The argument 'target' cannot be null");
+		}
+		Class<?> clasz = target.getClass();
+		while (clasz != null) {
+			for (final Method method : clasz.getDeclaredMethods()) {
+				if (method.isAnnotationPresent(MessageHandler.class)) {
+					register(target, method);
+				}
+			}
+			clasz = clasz.getSuperclass();
+		}
+	}
+
+	private void register(final Object target, final Method method) {
+		final Class<?>[] params = method.getParameterTypes();
+		if ((params.length != 1) || !AuctionMessage.class.isAssignableFrom(params[0])) {
+			throw new IllegalStateException("A message handler must have exactly one "
+			        + AuctionMessage.class.getSimpleName() + " parameter: " + method);
+		}
+		method.setAccessible(true);
+		final Handler existing = handlers.putIfAbsent(params[0], new Handler(target, method));
+		if (existing != null) {
+			throw new IllegalStateException("Duplicate handler for " + params[0].getName()
+			        + ": " + method + " and " + existing.method);
+		}
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Registered handler for " + params[0].getSimpleName() + ": " + method);
+		}
+	}
+
+	/**
+	 * Passes the message to its handler.
+	 * 
+	 * @param message
+	 *            Message to handle.
+	 */
+	public final void dispatch(final Object message) {
+		if (message == null) {
+			throw new IllegalArgumentException("The argument 'message' cannot be null");
+		}
+		final Handler handler = handlers.get(message.getClass());
+		if (handler == null) {
+			unknownMessages.incrementAndGet();
+			throw new IllegalArgumentException("No handler registered for: "
+			        + message.getClass().getName());
+		}
+		handler.handle(message);
+	}
+
+	/**
+	 * Determines if a handler for the given message class is registered.
+	 * 
+	 * @param messageClass
+	 *            Message class to check.
+	 * 
+	 * @return If a handler exists TRUE, else FALSE.
+	 */
+	public final boolean hasHandler(final Class<?> messageClass) {
+		return handlers.containsKey(messageClass);
+	}
+
+	/**
+	 * Returns the number of messages that had no handler.
+	 * 
+	 * @return Count.
+	 */
+	public final long getUnknownMessages() {
+		return unknownMessages.get();
+	}
+
+	/**
+	 * Returns the simple names of all message classes with a handler sorted by
+	 * name.
+	 * 
+	 * @return Message types.
+	 */
+	public final String[] getMessageTypes() {
+		final Set<String> names = getStatistics().keySet();
+		return names.toArray(new String[names.size()]);
+	}
+
+	/**
+	 * Returns the number of handled messages of a type.
+	 * 
+	 * @param messageType
+	 *            Simple name of the message class.
+	 * 
+	 * @return Count or <code>0</code> if the type is unknown.
+	 */
+	public final long getCount(final String messageType) {
+		final Statistics statistics = getStatistics().get(messageType);
+		if (statistics == null) {
+			return 0;
+		}
+		return statistics.getCount();
+	}
+
+	/**
+	 * Returns the number of messages of a type where the handler failed.
+	 * 
+	 * @param messageType
+	 *            Simple name of the message class.
+	 * 
+	 * @return Count or <code>0</code> if the type is unknown.
+	 */
+	public final long getFailures(final String messageType) {
+		final Statistics statistics = getStatistics().get(messageType);
+		if (statistics == null) {
+			return 0;
+		}
+		return statistics.getFailures();
+	}
+
+	/**
+	 * Returns the sum of all handler times of a message type.
+	 * 
+	 * @param messageType
+	 *            Simple name of the message class.
+	 * 
+	 * @return Time in nanoseconds or <code>0</code> if the type is unknown.
+	 */
+	public final long getTotalNanos(final String messageType) {
+		final Statistics statistics = getStatistics().get(messageType);
+		if (statistics == null) {
+			return 0;
+		}
+		return statistics.getTotalNanos();
+	}
+
+	/**
+	 * Returns the longest handler time of a message type.
+	 * 
+	 * @param messageType
+	 *            Simple name of the message class.
+	 * 
+	 * @return Time in nanoseconds or <code>0</code> if the type is unknown.
+	 */
+	public final long getMaxNanos(final String messageType) {
+		final Statistics statistics = getStatistics().get(messageType);
+		if (statistics == null) {
+			return 0;
+		}
+		return statistics.getMaxNanos();
+	}
+
+	/**
+	 * Returns all statistics as human readable text with one line per message
+	 * type.
+	 * 
+	 * @return Report.
+	 */
+	public final String getReport() {
+		final StringBuilder sb = new StringBuilder();
+		for (final Map.Entry<String, Statistics> entry : getStatistics().entrySet()) {
+			sb.append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
+		}
+		sb.append("unknown: ").append(getUnknownMessages()).append("\n");
+		return sb.toString();
+	}
+
+	private Map<String, Statistics> getStatistics() {
+		final Map<String, Statistics> map = new TreeMap<String, Statistics>();
+		for (final Map.Entry<Class<?>, Handler> entry : handlers.entrySet()) {
+			map.put(entry.getKey().getSimpleName(), entry.getValue().statistics);
+		}
+		return map;
+	}
+
+	/**
+	 * Handler method with its target object.
+	 */
+	private static final class Handler {
+
+		private final Object target;
+
+		private final Method method;
+
+		private final Statistics statistics;
+
+		/**
+		 * Constructor with all attributes.
+		 * 
+		 * @param target
+		 *            Object to call the method on.
+		 * @param method
+		 *            Handler method.
+		 */
+		public Handler(final Object target, final Method method) {
+			super();
+			this.target = target;
+			this.method = method;
+			this.statistics = new Statistics();
+		}
+
+		/**
+		 * Calls the handler method and records the duration.
+		 * 
+		 * @param message
+		 *            Message to handle.
+		 */
+		public void handle(final Object message) {
+			final long start = System.nanoTime();
+			boolean ok = false;
+			try {
+				method.invoke(target, message);
+				ok = true;
+			} catch (final IllegalAccessException ex) {
+				throw new IllegalStateException("Cannot call handler: " + method, ex);
+			} catch (final InvocationTargetException ex) {
+				final Throwable cause = ex.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new IllegalStateException("Error in handler: " + method, cause);
+			} finally {
+				statistics.record(System.nanoTime() - start, ok);
+			}
+		}
+
+	}
+
+	/**
+	 * Processing statistics for a single message type.
+	 */
+	private static final class Statistics {
+
+		private final AtomicLong count = new AtomicLong();
+
+		private final AtomicLong failures = new AtomicLong();
+
+		private final AtomicLong totalNanos = new AtomicLong();
+
+		private final AtomicLong maxNanos = new AtomicLong();
+
+		/**
+		 * Records a single message.
+		 * 
+		 * @param nanos
+		 *            Duration in nanoseconds.
+		 * @param ok
+		 *            If the handler succeeded TRUE, else FALSE.
+		 */
+		final void record(final long nanos, final boolean ok) {
+			count.incrementAndGet();
+			if (!ok) {
+				failures.incrementAndGet();
+			}
+			totalNanos.addAndGet(nanos);
+			long max = maxNanos.get();
+			while ((nanos > max) && !maxNanos.compareAndSet(max, nanos)) {
+				max = maxNanos.get();
+			}
+		}
+
+		/**
+		 * Returns the number of handled messages.
+		 * 
+		 * @return Count.
+		 */
+		public final long getCount() {
+			return count.get();
+		}
+
+		/**
+		 * Returns the number of messages where the handler failed.
+		 * 
+		 * @return Count.
+		 */
+		public final long getFailures() {
+			return failures.get();
+		}
+
+		/**
+		 * Returns the sum of all handler times.
+		 * 
+		 * @return Time in nanoseconds.
+		 */
+		public final long getTotalNanos() {
+			return totalNanos.get();
+		}
+
+		/**
+		 * Returns the longest handler time.
+		 * 
+		 * @return Time in nanoseconds.
+		 */
+		public final long getMaxNanos() {
+			return maxNanos.get();
+		}
+
+		@Override
+		public final String toString() {
+			return "Statistics [count=" + getCount() + ", failures=" + getFailures()
+			        + ", totalNanos=" + getTotalNanos() + ", maxNanos=" + getMaxNanos() + "]";
+		}
+
+	}
+
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.axon.support.benchmarks;
+
+import java.util.UUID;
+
+import org.axonframework.domain.AggregateIdentifier;
+import org.axonframework.domain.DomainEvent;
+import org.joda.time.DateTime;
+
+/**
+ * An auction was started. Larger event with several strings and dates.
+ */
+public final class AuctionStartedEvent extends DomainEvent {
+
+	private static final long serialVersionUID = 100L;
+
+	private final long versionUID = serialVersionUID;
+
+	private UUID sellerId;
+
+	private long categoryId;
+
+	private String title;
+
+	private String description;
+
+	private long startPrice;
+
+	private String currency;
+
+	private DateTime startTime;
+
+	private DateTime endTime;
+
+	/**
+	 * Default constructor for serialization.
+	 */
+	protected AuctionStartedEvent() {
+		super();
+	}
+
+	/**
+	 * Constructor with event attributes.
+	 * 
+	 * @param sellerId
+	 *            Unique identifier of the user that sells the item.
+	 * @param categoryId
+	 *            Identifier of the category.
+	 * @param title
+	 *            Short title.
+	 * @param description
+	 *            Detailed description of the item.
+	 * @param startPrice
+	 *            Minimal price in cents.
+	 * @param currency
+	 *            ISO currency code.
+	 * @param startTime
+	 *            Start of the auction.
+	 * @param endTime
+	 *            End of the auction.
+	 */
+	public AuctionStartedEvent(final UUID sellerId, final long categoryId, final String title,
+	        final String description, final long startPrice, final String currency,
+	        final DateTime startTime, final DateTime endTime) {
+		super();
+		this.sellerId = sellerId;
+		this.categoryId = categoryId;
+		this.title = title;
+		this.description = description;
+		this.startPrice = startPrice;
+		this.currency = currency;
+		this.startTime = startTime;
+		this.endTime = endTime;
+	}
+
+	/**
+	 * Constructor with aggregate data and event attributes.
+	 * 
+	 * @param sequenceNumber
+	 *            Sequence number of the event.
+	 * @param aggregateIdentifier
+	 *            Identifier of the auction.
+	 * @param sellerId
+	 *            Unique identifier of the user that sells the item.
+	 * @param categoryId
+	 *            Identifier of the category.
+	 * @param title
+	 *            Short title.
+	 * @param description
+	 *            Detailed description of the item.
+	 * @param startPrice
+	 *            Minimal price in cents.
+	 * @param currency
+	 *            ISO currency code.
+	 * @param startTime
+	 *            Start of the auction.
+	 * @param endTime
+	 *            End of the auction.
+	 */
+	public AuctionStartedEvent(final long sequenceNumber,
+	        final AggregateIdentifier aggregateIdentifier, final UUID sellerId,
+	        final long categoryId, final String title, final String description,
+	        final long startPrice, final String currency, final DateTime startTime,
+	        final DateTime endTime) {
+		super(sequenceNumber, aggregateIdentifier);
+		this.sellerId = sellerId;
+		this.categoryId = categoryId;
+		this.title = title;
+		this.description = description;
+		this.startPrice = startPrice;
+		this.currency = currency;
+		this.startTime = startTime;
+		this.endTime = endTime;
+	}
+
+	/**
+	 * Returns the instance version UID.
+	 * 
+	 * @return Version of the instance.
+	 */
+	public final long getVersionUID() {
+		return versionUID;
+	}
+
+	/**
+	 * Returns the unique identifier of the user that sells the item.
+	 * 
+	 * @return Seller ID.
+	 */
+	public final UUID getSellerId() {
+		return sellerId;
+	}
+
+	/**
+	 * Returns the identifier of the category.
+	 * 
+	 * @return Category ID.
+	 */
+	public final long getCategoryId() {
+		return categoryId;
+	}
+
+	/**
+	 * Returns the short title.
+	 * 
+	 * @return Title.
+	 */
+	public final String getTitle() {
+		return title;
+	}
+
+	/**
+	 * Returns the detailed description of the item.
+	 * 
+	 * @return Description.
+	 */
+	public final String getDescription() {
+		return description;
+	}
+
+	/**
+	 * Returns the minimal price.
+	 * 
+	 * @return Price in cents.
+	 */
+	public final long getStartPrice() {
+		return startPrice;
+	}
+
+	/**
+	 * Returns the currency.
+	 * 
+	 * @return ISO currency code.
+	 */
+	public final String getCurrency() {
+		return currency;
+	}
+
+	/**
+	 * Returns the start of the auction.
+	 * 
+	 * @return Start date/time.
+	 */
+	public final DateTime getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * Returns the end of the auction.
+	 * 
+	 * @return End date/time.
+	 */
+	public final DateTime getEndTime() {
+		return endTime;
+	}
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.axon.support.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.axonframework.domain.DomainEvent;
+import org.fuin.axon.support.base.BinaryEventSerializer;
+import org.fuin.axon.support.base.EventCodec;
+import org.fuin.axon.support.base.LongAggregateIdentifier;
+import org.fuin.axon.support.base.UUIDAggregateIdentifier;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+/**
+ * Events used for the benchmarks.
+ */
+public enum BenchmarkEvent {
+
+	/** Larger event with several strings and dates. */
+	AUCTION_STARTED {
+		@Override
+		public DomainEvent create() {
+			final DateTime start = new DateTime(2010, 11, 1, 10, 0, 0, 0, DateTimeZone
+			        .forID("Europe/Berlin"));
+			return new AuctionStartedEvent(0L, new UUIDAggregateIdentifier(), UUID.randomUUID(),
+			        4711L, "Axon Framework in Action - First Edition (Paperback)",
+			        "Brand new and still shrink wrapped. Covers CQRS, event sourcing, "
+			                + "sagas and the Axon command bus in detail. Shipping within "
+			                + "two working days. Pick up is also possible.", 1995L, "EUR",
+			        start, start.plusDays(7));
+		}
+	},
+
+	/** Small event with typical attribute types. */
+	BID_PLACED {
+		@Override
+		public DomainEvent create() {
+			try {
+				return new BidPlacedEvent(12L, new LongAggregateIdentifier(4711L), UUID
+				        .randomUUID(), 2550L, "EUR", new DateTime(2010, 11, 3, 18, 30, 15, 0,
+				        DateTimeZone.forID("Europe/Berlin")));
+			} catch (final Exception ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+	};
+
+	/**
+	 * Creates a new event instance with realistic content.
+	 * 
+	 * @return New event.
+	 */
+	public abstract DomainEvent create();
+
+	/**
+	 * Creates the codecs for the {@link BinaryEventSerializer}.
+	 * 
+	 * @return Codecs for all benchmark events.
+	 */
+	public static List<EventCodec<?>> createCodecs() {
+		final List<EventCodec<?>> codecs = new ArrayList<EventCodec<?>>();
+		codecs.add(new AuctionStartedEventCodec());
+		codecs.add(new BidPlacedEventCodec());
+		return codecs;
+	}
+
+	private static void putDateTime(final ByteBuffer buf, final DateTime dateTime) {
+		buf.putLong(dateTime.getMillis());
+		BinaryEventSerializer.putString(buf, dateTime.getZone().getID());
+	}
+
+	private static DateTime getDateTime(final ByteBuffer buf) {
+		final long millis = buf.getLong();
+		return new DateTime(millis, DateTimeZone.forID(BinaryEventSerializer.getString(buf)));
+	}
+
+	private static void putUUID(final ByteBuffer buf, final UUID uuid) {
+		buf.putLong(uuid.getMostSignificantBits());
+		buf.putLong(uuid.getLeastSignificantBits());
+	}
+
+	private static UUID getUUID(final ByteBuffer buf) {
+		final long msb = buf.getLong();
+		return new UUID(msb, buf.getLong());
+	}
+
+	/**
+	 * Codec for {@link AuctionStartedEvent}.
+	 */
+	private static final class AuctionStartedEventCodec implements
+	        EventCodec<AuctionStartedEvent> {
+
+		@Override
+		public Class<AuctionStartedEvent> getEventClass() {
+			return AuctionStartedEvent.class;
+		}
+
+		@Override
+		public int getVersion() {
+			return 1;
+		}
+
+		@Override
+		public void write(final ByteBuffer buf, final AuctionStartedEvent event) {
+			putUUID(buf, event.getSellerId());
+			buf.putLong(event.getCategoryId());
+			BinaryEventSerializer.putString(buf, event.getTitle());
+			BinaryEventSerializer.putString(buf, event.getDescription());
+			buf.putLong(event.getStartPrice());
+			BinaryEventSerializer.putString(buf, event.getCurrency());
+			putDateTime(buf, event.getStartTime());
+			putDateTime(buf, event.getEndTime());
+		}
+
+		@Override
+		public AuctionStartedEvent read(final ByteBuffer buf, final int version) {
+			final UUID sellerId = getUUID(buf);
+			final long categoryId = buf.getLong();
+			final String title = BinaryEventSerializer.getString(buf);
+			final String description = BinaryEventSerializer.getString(buf);
+			final long startPrice = buf.getLong();
+			final String currency = BinaryEventSerializer.getString(buf);
+			final DateTime startTime = getDateTime(buf);
+			final DateTime endTime = getDateTime(buf);
+			return new AuctionStartedEvent(sellerId, categoryId, title, description, startPrice,
+			        currency, startTime, endTime);
+		}
+
+	}
+
+	/**
+	 * Codec for {@link BidPlacedEvent}.
+	 */
+	private static final class BidPlacedEventCodec implements EventCodec<BidPlacedEvent> {
+
+		@Override
+		public Class<BidPlacedEvent> getEventClass() {
+			return BidPlacedEvent.class;
+		}
+
+		@Override
+		public int getVersion() {
+			return 1;
+		}
+
+		@Override
+		public void write(final ByteBuffer buf, final BidPlacedEvent event) {
+			putUUID(buf, event.getBidderId());
+			buf.putLong(event.getAmount());
+			BinaryEventSerializer.putString(buf, event.getCurrency());
+			putDateTime(buf, event.getPlacedAt());
+		}
+
+		@Override
+		public BidPlacedEvent read(final ByteBuffer buf, final int version) {
+			final UUID bidderId = getUUID(buf);
+			final long amount = buf.getLong();
+			final String currency = BinaryEventSerializer.getString(buf);
+			final DateTime placedAt = getDateTime(buf);
+			return new BidPlacedEvent(bidderId, amount, currency, placedAt);
+		}
+
+	}
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.axon.support.benchmarks;
+
+import java.util.UUID;
+
+import org.axonframework.domain.AggregateIdentifier;
+import org.axonframework.domain.DomainEvent;
+import org.joda.time.DateTime;
+
+/**
+ * A bid was placed on an auction. Small event with typical attribute types.
+ */
+public final class BidPlacedEvent extends DomainEvent {
+
+	private static final long serialVersionUID = 100L;
+
+	private final long versionUID = serialVersionUID;
+
+	private UUID bidderId;
+
+	private long amount;
+
+	private String currency;
+
+	private DateTime placedAt;
+
+	/**
+	 * Default constructor for serialization.
+	 */
+	protected BidPlacedEvent() {
+		super();
+	}
+
+	/**
+	 * Constructor with event attributes.
+	 * 
+	 * @param bidderId
+	 *            Unique identifier of the user that placed the bid.
+	 * @param amount
+	 *            Amount in cents.
+	 * @param currency
+	 *            ISO currency code.
+	 * @param placedAt
+	 *            Date/time the bid was placed.
+	 */
+	public BidPlacedEvent(final UUID bidderId, final long amount, final String currency,
+	        final DateTime placedAt) {
+		super();
+		this.bidderId = bidderId;
+		this.amount = amount;
+		this.currency = currency;
+		this.placedAt = placedAt;
+	}
+
+	/**
+	 * Constructor with aggregate data and event attributes.
+	 * 
+	 * @param sequenceNumber
+	 *            Sequence number of the event.
+	 * @param aggregateIdentifier
+	 *            Identifier of the auction.
+	 * @param bidderId
+	 *            Unique identifier of the user that placed the bid.
+	 * @param amount
+	 *            Amount in cents.
+	 * @param currency
+	 *            ISO currency code.
+	 * @param placedAt
+	 *            Date/time the bid was placed.
+	 */
+	public BidPlacedEvent(final long sequenceNumber, final AggregateIdentifier aggregateIdentifier,
+	        final UUID bidderId, final long amount, final String currency,
+	        final DateTime placedAt) {
+		super(sequenceNumber, aggregateIdentifier);
+		this.bidderId = bidderId;
+		this.amount = amount;
+		this.currency = currency;
+		this.placedAt = placedAt;
+	}
+
+	/**
+	 * Returns the instance version UID.
+	 * 
+	 * @return Version of the instance.
+	 */
+	public final long getVersionUID() {
+		return versionUID;
+	}
+
+	/**
+	 * Returns the unique identifier of the user that placed the bid.
+	 * 
+	 * @return Bidder ID.
+	 */
+	public final UUID getBidderId() {
+		return bidderId;
+	}
+
+	/**
+	 * Returns the amount.
+	 * 
+	 * @return Amount in cents.
+	 */
+	public final long getAmount() {
+		return amount;
+	}
+
+	/**
+	 * Returns the currency.
+	 * 
+	 * @return ISO currency code.
+	 */
+	public final String getCurrency() {
+		return currency;
+	}
+
+	/**
+	 * Returns the date/time the bid was placed.
+	 * 
+	 * @return Timestamp of the bid.
+	 */
+	public final DateTime getPlacedAt() {
+		return placedAt;
+	}
+
+}
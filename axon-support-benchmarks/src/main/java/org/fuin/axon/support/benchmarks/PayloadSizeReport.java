@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.axon.support.benchmarks;
+
+import org.axonframework.domain.DomainEvent;
+import org.axonframework.eventstore.EventSerializer;
+
+/**
+ * Prints the size of every {@link BenchmarkEvent} serialized with every
+ * {@link SerializerBackend}. Verifies that each backend is able to read its
+ * own data.
+ */
+public final class PayloadSizeReport {
+
+	/**
+	 * Private constructor to avoid instantiation.
+	 */
+	private PayloadSizeReport() {
+		throw new UnsupportedOperationException("You cannot create an instance of a utility class!");
+	}
+
+	/**
+	 * Prints the payload sizes in bytes.
+	 * 
+	 * @param args
+	 *            Not used.
+	 */
+	public static void main(final String[] args) {
+		final StringBuilder sb = new StringBuilder(String.format("%-10s", "Backend"));
+		for (final BenchmarkEvent event : BenchmarkEvent.values()) {
+			sb.append(String.format("%18s", event));
+		}
+		System.out.println(sb);
+		for (final SerializerBackend backend : SerializerBackend.values()) {
+			final EventSerializer serializer = backend.create();
+			sb.setLength(0);
+			sb.append(String.format("%-10s", backend));
+			for (final BenchmarkEvent event : BenchmarkEvent.values()) {
+				final DomainEvent domainEvent = event.create();
+				final byte[] data = serializer.serialize(domainEvent);
+				final DomainEvent copy = serializer.deserialize(data);
+				if (!domainEvent.equals(copy)) {
+					throw new IllegalStateException(backend + " could not read " + event);
+				}
+				sb.append(String.format("%18d", data.length));
+			}
+			System.out.println(sb);
+		}
+	}
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.axon.support.benchmarks;
+
+import org.axonframework.eventstore.EventSerializer;
+import org.fuin.axon.support.base.AxonSupportUtils;
+import org.fuin.axon.support.base.BinaryEventSerializer;
+import org.fuin.axon.support.base.VersioningEventSerializer;
+import org.fuin.serialver4j.base.ClassesHistory;
+import org.fuin.serialver4j.base.SimpleConverterFactory;
+import org.fuin.serialver4j.base.VersioningJavaSerializer;
+import org.fuin.serialver4j.hessian.VersioningBurlapSerializer;
+import org.fuin.serialver4j.hessian.VersioningHessian2Serializer;
+import org.fuin.serialver4j.xstream.VersioningXStreamSerializer;
+
+/**
+ * Serializer backends to compare.
+ */
+public enum SerializerBackend {
+
+	/** Burlap (XML variant of Hessian) via serialver4j. */
+	BURLAP {
+		@Override
+		public EventSerializer create() {
+			return new VersioningEventSerializer(new VersioningBurlapSerializer(
+			        createClassesHistory(), 512, AxonSupportUtils.createSerializerFactory()));
+		}
+	},
+
+	/** Hessian 2 via serialver4j. */
+	HESSIAN2 {
+		@Override
+		public EventSerializer create() {
+			return new VersioningEventSerializer(new VersioningHessian2Serializer(
+			        createClassesHistory(), 512, AxonSupportUtils.createSerializerFactory()));
+		}
+	},
+
+	/** XStream via serialver4j. */
+	XSTREAM {
+		@Override
+		public EventSerializer create() {
+			return new VersioningEventSerializer(new VersioningXStreamSerializer(
+			        createClassesHistory(), AxonSupportUtils.createXStream(), 1024));
+		}
+	},
+
+	/** Java serialization via serialver4j. */
+	JAVA {
+		@Override
+		public EventSerializer create() {
+			return new VersioningEventSerializer(new VersioningJavaSerializer(
+			        createClassesHistory()));
+		}
+	},
+
+	/** Binary codecs with XStream fallback. */
+	BINARY {
+		@Override
+		public EventSerializer create() {
+			final BinaryEventSerializer serializer = new BinaryEventSerializer(XSTREAM.create());
+			serializer.setCodecs(BenchmarkEvent.createCodecs());
+			return serializer;
+		}
+	};
+
+	/**
+	 * Creates a new serializer instance.
+	 * 
+	 * @return Serializer.
+	 */
+	public abstract EventSerializer create();
+
+	private static ClassesHistory createClassesHistory() {
+		return new ClassesHistory("versionUID", new SimpleConverterFactory());
+	}
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.axon.support.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.axonframework.domain.DomainEvent;
+import org.axonframework.eventstore.EventSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures serialize/deserialize throughput of all {@link SerializerBackend}s
+ * for all {@link BenchmarkEvent}s. Run it with the GC profiler to get the
+ * allocation rate per operation ("gc.alloc.rate.norm"):<br>
+ * <br>
+ * <code>mvn package &amp;&amp; java -jar target/benchmarks.jar SerializerBenchmark -prof gc</code>
+ * <br>
+ * <br>
+ * or simply execute the {@link #main(String[])} method. The size of the
+ * serialized events is printed by {@link PayloadSizeReport}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializerBenchmark {
+
+	/** Backend to measure. */
+	@Param
+	public SerializerBackend backend;
+
+	/** Event to serialize. */
+	@Param
+	public BenchmarkEvent event;
+
+	private EventSerializer serializer;
+
+	private DomainEvent domainEvent;
+
+	private byte[] serializedEvent;
+
+	/**
+	 * Creates the serializer and the event.
+	 */
+	@Setup(Level.Trial)
+	public final void setUp() {
+		serializer = backend.create();
+		domainEvent = event.create();
+		serializedEvent = serializer.serialize(domainEvent);
+	}
+
+	/**
+	 * Serializes the event.
+	 * 
+	 * @return Serialized event.
+	 */
+	@Benchmark
+	public final byte[] serialize() {
+		return serializer.serialize(domainEvent);
+	}
+
+	/**
+	 * Deserializes the event.
+	 * 
+	 * @return Event.
+	 */
+	@Benchmark
+	public final DomainEvent deserialize() {
+		return serializer.deserialize(serializedEvent);
+	}
+
+	/**
+	 * Runs the benchmark with the GC profiler.
+	 * 
+	 * @param args
+	 *            Not used.
+	 * 
+	 * @throws RunnerException
+	 *             Error running the benchmark.
+	 */
+	public static void main(final String[] args) throws RunnerException {
+		final Options options = new OptionsBuilder().include(
+		        SerializerBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class).build();
+		new Runner(options).run();
+	}
+
+}
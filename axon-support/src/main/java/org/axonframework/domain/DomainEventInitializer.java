@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.axonframework.domain;
+
+/**
+ * Assigns the aggregate identifier and sequence number of a deserialized
+ * event. Uses the same package visible setters the framework itself uses when
+ * an aggregate registers a new event, so no private or final fields are
+ * touched.
+ */
+public final class DomainEventInitializer {
+
+	/**
+	 * Private constructor to avoid instantiation.
+	 */
+	private DomainEventInitializer() {
+		throw new UnsupportedOperationException("You cannot create an instance of a utility class!");
+	}
+
+	/**
+	 * Sets the aggregate identifier and sequence number of a new event.
+	 * 
+	 * @param event
+	 *            Event without aggregate identifier and sequence number.
+	 * @param aggregateIdentifier
+	 *            Identifier of the aggregate the event belongs to.
+	 * @param sequenceNumber
+	 *            Sequence number of the event.
+	 */
+	public static void initialize(final DomainEvent event,
+	        final AggregateIdentifier aggregateIdentifier, final long sequenceNumber) {
+		if (event == null) {
+			throw new IllegalArgumentException("The argument 'event' cannot be null");
+		}
+		if (aggregateIdentifier == null) {
+			throw new IllegalArgumentException(
+			        "The argument 'aggregateIdentifier' cannot be null");
+		}
+		if ((event.getAggregateIdentifier() != null) || (event.getSequenceNumber() != null)) {
+			throw new IllegalStateException("The event is already initialized: "
+			        + event.getClass().getName());
+		}
+		event.setAggregateIdentifier(aggregateIdentifier);
+		event.setSequenceNumber(sequenceNumber);
+	}
+
+}
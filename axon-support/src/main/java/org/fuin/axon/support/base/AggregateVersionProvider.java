@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.axon.support.base;
+
+import org.axonframework.domain.AggregateIdentifier;
+
+/**
+ * Provides the version of an aggregate as it is known by the event store
+ * without reading the events.
+ */
+public interface AggregateVersionProvider {
+
+	/**
+	 * Returns the sequence number of the last event stored for an aggregate.
+	 * 
+	 * @param type
+	 *            Type of the aggregate.
+	 * @param identifier
+	 *            Unique aggregate identifier.
+	 * 
+	 * @return Sequence number of the last event or NULL if the aggregate is
+	 *         unknown.
+	 */
+	public Long getLastSequenceNumber(String type, AggregateIdentifier identifier);
+
+}
@@ -0,0 +1,419 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.axon.support.base;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.axonframework.domain.AggregateIdentifier;
+import org.axonframework.domain.DomainEvent;
+import org.axonframework.domain.DomainEventInitializer;
+import org.axonframework.domain.EventMetaData;
+import org.axonframework.domain.MutableEventMetaData;
+import org.axonframework.domain.StringAggregateIdentifier;
+import org.axonframework.eventstore.EventSerializer;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+/**
+ * Serializer that writes events with a registered {@link EventCodec} into a
+ * compact binary format. The data is written into a reusable per-thread
+ * buffer and read directly from the given bytes without any intermediate
+ * streams.<br>
+ * <br>
+ * Every binary event starts with a magic number followed by the event class
+ * name and the codec's layout version. Data without the magic number (for
+ * example events written by a {@link VersioningEventSerializer}) is passed to
+ * the fallback serializer.<br>
+ * <br>
+ * The codec creates the event with its public constructor. The aggregate
+ * identifier and sequence number are assigned the same way the framework does
+ * for new events and the meta data is restored with
+ * {@link MutableEventMetaData#put(String, java.io.Serializable)}. Events that
+ * cannot be restored this way are written by the fallback serializer: Events
+ * without a registered codec, without aggregate identifier or sequence number,
+ * with an unknown aggregate identifier type, with an event revision or with
+ * additional meta data.
+ */
+public final class BinaryEventSerializer implements EventSerializer {
+
+	/** Marks data written by this serializer: 0xFF 'B' 'E' + format version 1. */
+	static final int MAGIC = 0xFF424501;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int MAX_BUF_SIZE = 64 * 1024 * 1024;
+
+	private static final String IDENTIFIER_KEY = "_identifier";
+
+	private static final String TIMESTAMP_KEY = "_timestamp";
+
+	private static final byte ID_NULL = 0;
+
+	private static final byte ID_AXON_UUID = 1;
+
+	private static final byte ID_AXON_STRING = 2;
+
+	private static final byte ID_UUID = 3;
+
+	private static final byte ID_LONG = 4;
+
+	private final EventSerializer fallback;
+
+	private final int bufSize;
+
+	private final ConcurrentMap<Class<?>, EventCodec<?>> codecsByClass;
+
+	private final ConcurrentMap<String, EventCodec<?>> codecsByName;
+
+	private final ThreadLocal<ByteBuffer> buffers;
+
+	/**
+	 * Constructor with fallback serializer. The initial size of the per-thread
+	 * buffer is set to 1024.
+	 * 
+	 * @param fallback
+	 *            Serializer for events without a codec and for reading data
+	 *            that was not written by this serializer.
+	 */
+	public BinaryEventSerializer(final EventSerializer fallback) {
+		this(fallback, 1024);
+	}
+
+	/**
+	 * Constructor with fallback serializer and buffer size.
+	 * 
+	 * @param fallback
+	 *            Serializer for events without a codec and for reading data
+	 *            that was not written by this serializer.
+	 * @param bufSize
+	 *            Initial size of the per-thread buffer used for serializing
+	 *            events. The buffer grows if necessary.
+	 */
+	public BinaryEventSerializer(final EventSerializer fallback, final int bufSize) {
+		super();
+		if (fallback == null) {
+			throw new IllegalArgumentException("The argument 'fallback' cannot be null");
+		}
+		if (bufSize < 64) {
+			throw new IllegalArgumentException("The buffer size must be at least 64: " + bufSize);
+		}
+		this.fallback = fallback;
+		this.bufSize = bufSize;
+		this.codecsByClass = new ConcurrentHashMap<Class<?>, EventCodec<?>>();
+		this.codecsByName = new ConcurrentHashMap<String, EventCodec<?>>();
+		this.buffers = new ThreadLocal<ByteBuffer>() {
+			@Override
+			protected ByteBuffer initialValue() {
+				return ByteBuffer.allocate(BinaryEventSerializer.this.bufSize);
+			}
+		};
+	}
+
+	/**
+	 * Registers a codec. A codec that was registered before for the same event
+	 * class is replaced. All codecs should be registered before the serializer
+	 * is used the first time. Lookups on the serialization path never lock.
+	 * 
+	 * @param codec
+	 *            Codec to add.
+	 */
+	public final void addCodec(final EventCodec<?> codec) {
+		codecsByClass.put(codec.getEventClass(), codec);
+		codecsByName.put(codec.getEventClass().getName(), codec);
+	}
+
+	/**
+	 * Registers a list of codecs.
+	 * 
+	 * @param codecs
+	 *            Codecs to add.
+	 */
+	public final void setCodecs(final List<EventCodec<?>> codecs) {
+		for (final EventCodec<?> codec : codecs) {
+			addCodec(codec);
+		}
+	}
+
+	/**
+	 * Returns the fallback serializer.
+	 * 
+	 * @return Serializer used for events without a codec.
+	 */
+	public final EventSerializer getFallback() {
+		return fallback;
+	}
+
+	/**
+	 * Returns the initial size of the per-thread buffer.
+	 * 
+	 * @return Buffer size.
+	 */
+	public final int getBufSize() {
+		return bufSize;
+	}
+
+	@Override
+	public final byte[] serialize(final DomainEvent event) {
+		final EventCodec<DomainEvent> codec = findCodec(event.getClass());
+		if ((codec == null) || !canWrite(event)) {
+			return fallback.serialize(event);
+		}
+		ByteBuffer buf = buffers.get();
+		while (true) {
+			buf.clear();
+			try {
+				write(buf, codec, event);
+				break;
+			} catch (final BufferOverflowException ex) {
+				if (buf.capacity() >= MAX_BUF_SIZE) {
+					throw new IllegalStateException("Serialized event exceeds " + MAX_BUF_SIZE
+					        + " bytes: " + event.getClass().getName());
+				}
+				buf = ByteBuffer.allocate(buf.capacity() * 2);
+				buffers.set(buf);
+			}
+		}
+		final byte[] result = new byte[buf.position()];
+		buf.flip();
+		buf.get(result);
+		return result;
+	}
+
+	@Override
+	public final DomainEvent deserialize(final byte[] serializedEvent) {
+		if (isBinary(ByteBuffer.wrap(serializedEvent))) {
+			return read(ByteBuffer.wrap(serializedEvent));
+		}
+		return fallback.deserialize(serializedEvent);
+	}
+
+	/**
+	 * Deserializes an event from the remaining bytes of the buffer without
+	 * copying them if they were written by this serializer. The position of
+	 * the buffer is not changed.
+	 * 
+	 * @param serializedEvent
+	 *            Buffer with the event.
+	 * 
+	 * @return Event.
+	 */
+	public final DomainEvent deserialize(final ByteBuffer serializedEvent) {
+		final ByteBuffer buf = serializedEvent.duplicate();
+		if (isBinary(buf)) {
+			return read(buf);
+		}
+		final byte[] bytes = new byte[buf.remaining()];
+		buf.get(bytes);
+		return fallback.deserialize(bytes);
+	}
+
+	@SuppressWarnings("unchecked")
+	private EventCodec<DomainEvent> findCodec(final Class<?> eventClass) {
+		return (EventCodec<DomainEvent>) codecsByClass.get(eventClass);
+	}
+
+	@SuppressWarnings("unchecked")
+	private EventCodec<DomainEvent> findCodec(final String eventClassName) {
+		return (EventCodec<DomainEvent>) codecsByName.get(eventClassName);
+	}
+
+	private static boolean canWrite(final DomainEvent event) {
+		if ((event.getSequenceNumber() == null) || (event.getEventRevision() != 0)) {
+			return false;
+		}
+		final byte idType = identifierType(event.getAggregateIdentifier());
+		if ((idType < 0) || (idType == ID_NULL)) {
+			return false;
+		}
+		if (!(event.getMetaData() instanceof MutableEventMetaData)) {
+			return false;
+		}
+		for (final String key : event.getMetaData().keySet()) {
+			if (!IDENTIFIER_KEY.equals(key) && !TIMESTAMP_KEY.equals(key)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isBinary(final ByteBuffer buf) {
+		return (buf.remaining() >= 4) && (buf.getInt(buf.position()) == MAGIC);
+	}
+
+	private static void write(final ByteBuffer buf, final EventCodec<DomainEvent> codec,
+	        final DomainEvent event) {
+		buf.putInt(MAGIC);
+		putString(buf, event.getClass().getName());
+		buf.putInt(codec.getVersion());
+		final AggregateIdentifier id = event.getAggregateIdentifier();
+		final byte idType = identifierType(id);
+		buf.put(idType);
+		if (idType != ID_NULL) {
+			putString(buf, id.asString());
+		}
+		final Long sequenceNumber = event.getSequenceNumber();
+		buf.put((byte) (sequenceNumber == null ? 0 : 1));
+		if (sequenceNumber != null) {
+			buf.putLong(sequenceNumber);
+		}
+		buf.putLong(event.getEventRevision());
+		final EventMetaData metaData = event.getMetaData();
+		final UUID eventId = metaData.getEventIdentifier();
+		buf.putLong(eventId.getMostSignificantBits());
+		buf.putLong(eventId.getLeastSignificantBits());
+		final DateTime timestamp = metaData.getTimestamp();
+		buf.putLong(timestamp.getMillis());
+		putString(buf, timestamp.getZone().getID());
+		codec.write(buf, event);
+	}
+
+	private DomainEvent read(final ByteBuffer buf) {
+		buf.getInt();
+		final String eventClassName = getString(buf);
+		final EventCodec<DomainEvent> codec = findCodec(eventClassName);
+		if (codec == null) {
+			throw new IllegalStateException("No codec registered for: " + eventClassName);
+		}
+		final int version = buf.getInt();
+		final byte idType = buf.get();
+		final AggregateIdentifier id;
+		if (idType == ID_NULL) {
+			id = null;
+		} else {
+			id = createIdentifier(idType, getString(buf));
+		}
+		final Long sequenceNumber;
+		if (buf.get() == 0) {
+			sequenceNumber = null;
+		} else {
+			sequenceNumber = buf.getLong();
+		}
+		final long eventRevision = buf.getLong();
+		final UUID eventId = new UUID(buf.getLong(), buf.getLong());
+		final long millis = buf.getLong();
+		final DateTime timestamp = new DateTime(millis, DateTimeZone.forID(getString(buf)));
+		if ((id == null) || (sequenceNumber == null) || (eventRevision != 0)) {
+			// Never written by "serialize(DomainEvent)"
+			throw new IllegalStateException("Cannot restore event without aggregate "
+			        + "identifier, without sequence number or with revision: " + eventClassName);
+		}
+		final DomainEvent event = codec.read(buf, version);
+		DomainEventInitializer.initialize(event, id, sequenceNumber);
+		final EventMetaData metaData = event.getMetaData();
+		if (!(metaData instanceof MutableEventMetaData)) {
+			throw new IllegalStateException("Cannot restore meta data of type: "
+			        + metaData.getClass().getName());
+		}
+		((MutableEventMetaData) metaData).put(IDENTIFIER_KEY, eventId);
+		((MutableEventMetaData) metaData).put(TIMESTAMP_KEY, timestamp);
+		return event;
+	}
+
+	private static byte identifierType(final AggregateIdentifier id) {
+		if (id == null) {
+			return ID_NULL;
+		}
+		final Class<?> clasz = id.getClass();
+		if (clasz == org.axonframework.domain.UUIDAggregateIdentifier.class) {
+			return ID_AXON_UUID;
+		}
+		if (clasz == StringAggregateIdentifier.class) {
+			return ID_AXON_STRING;
+		}
+		if (clasz == UUIDAggregateIdentifier.class) {
+			return ID_UUID;
+		}
+		if (clasz == LongAggregateIdentifier.class) {
+			return ID_LONG;
+		}
+		return -1;
+	}
+
+	private static AggregateIdentifier createIdentifier(final byte idType, final String value) {
+		try {
+			switch (idType) {
+			case ID_AXON_UUID:
+				return new org.axonframework.domain.UUIDAggregateIdentifier(value);
+			case ID_AXON_STRING:
+				return new StringAggregateIdentifier(value);
+			case ID_UUID:
+				return new UUIDAggregateIdentifier(value);
+			case ID_LONG:
+				return new LongAggregateIdentifier(value);
+			default:
+				throw new IllegalStateException("Unknown aggregate identifier type: " + idType);
+			}
+		} catch (final IllegalAggregateIdentifierException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	/**
+	 * Writes a string that may be null. Helper method for {@link EventCodec}
+	 * implementations.
+	 * 
+	 * @param buf
+	 *            Buffer to write to.
+	 * @param str
+	 *            String to write or NULL.
+	 */
+	public static void putString(final ByteBuffer buf, final String str) {
+		if (str == null) {
+			buf.putInt(-1);
+		} else {
+			final byte[] bytes = str.getBytes(UTF8);
+			buf.putInt(bytes.length);
+			buf.put(bytes);
+		}
+	}
+
+	/**
+	 * Reads a string written with {@link #putString(ByteBuffer, String)}.
+	 * Helper method for {@link EventCodec} implementations.
+	 * 
+	 * @param buf
+	 *            Buffer to read from.
+	 * 
+	 * @return String or NULL.
+	 */
+	public static String getString(final ByteBuffer buf) {
+		final int length = buf.getInt();
+		if (length < 0) {
+			return null;
+		}
+		if (length > buf.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		final String str;
+		if (buf.hasArray()) {
+			str = new String(buf.array(), buf.arrayOffset() + buf.position(), length, UTF8);
+			buf.position(buf.position() + length);
+		} else {
+			final byte[] bytes = new byte[length];
+			buf.get(bytes);
+			str = new String(bytes, UTF8);
+		}
+		return str;
+	}
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.axon.support.base;
+
+/**
+ * Determines which commands have to be executed one after another.
+ */
+public interface CommandRoutingKeyResolver {
+
+	/**
+	 * Returns a key for the command. Commands with equal keys are executed in
+	 * the order they were dispatched and never concurrently. Usually the key
+	 * is the identifier of the aggregate the command targets.
+	 * 
+	 * @param command
+	 *            Command to return a key for.
+	 * 
+	 * @return Key or <code>null</code> if the command can be executed in any
+	 *         order.
+	 */
+	public Object getRoutingKey(Object command);
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.axon.support.base;
+
+import java.nio.ByteBuffer;
+
+import org.axonframework.domain.DomainEvent;
+
+/**
+ * Writes and reads the payload of a single event class for the
+ * {@link BinaryEventSerializer}. The common {@link DomainEvent} data
+ * (aggregate identifier, sequence number, meta data) is handled by the
+ * serializer and must not be written by the codec.
+ * 
+ * @param <T>
+ *            Type of the event.
+ */
+public interface EventCodec<T extends DomainEvent> {
+
+	/**
+	 * Returns the event class this codec is responsible for.
+	 * 
+	 * @return Event class.
+	 */
+	public Class<T> getEventClass();
+
+	/**
+	 * Returns the current version of the binary layout. The version is stored
+	 * with every event and passed to {@link #read(ByteBuffer, int)} again.
+	 * 
+	 * @return Layout version.
+	 */
+	public int getVersion();
+
+	/**
+	 * Writes the event specific data with the current layout version. The
+	 * buffer may be too small - In this case a
+	 * {@link java.nio.BufferOverflowException} is thrown and the serializer
+	 * retries with a larger buffer.
+	 * 
+	 * @param buf
+	 *            Buffer to write to.
+	 * @param event
+	 *            Event to write.
+	 */
+	public void write(ByteBuffer buf, T event);
+
+	/**
+	 * Reads the event specific data and creates a new event.
+	 * 
+	 * @param buf
+	 *            Buffer to read from.
+	 * @param version
+	 *            Layout version used to write the event.
+	 * 
+	 * @return New event instance.
+	 */
+	public T read(ByteBuffer buf, int version);
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.axon.support.base;
+
+import org.axonframework.eventstore.SnapshotEventStore;
+
+/**
+ * Event store that is able to defer forcing appended events to the storage
+ * device. This allows writing the events of multiple append operations and
+ * make them durable with a single {@link #flush()}. Events appended without
+ * flushing are not visible to readers until the flush succeeded.
+ */
+public interface FlushableEventStore extends SnapshotEventStore {
+
+	/**
+	 * Determines if every append operation forces the data to the storage
+	 * device before it returns.
+	 * 
+	 * @param flushOnAppend
+	 *            TRUE if every append is forced to disk, FALSE if the caller
+	 *            is responsible for calling {@link #flush()}.
+	 */
+	public void setFlushOnAppend(boolean flushOnAppend);
+
+	/**
+	 * Forces all events appended so far to the storage device and makes them
+	 * visible to readers. If the flush fails, the events stay invisible until
+	 * either a later flush succeeds or {@link #rollback()} is called.
+	 */
+	public void flush();
+
+	/**
+	 * Discards all events appended since the last successful {@link #flush()}.
+	 * Used after a failed flush to make sure events that were reported as not
+	 * written never show up later.
+	 */
+	public void rollback();
+
+}
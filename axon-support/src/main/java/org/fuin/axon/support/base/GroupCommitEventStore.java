@@ -0,0 +1,457 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.axon.support.base;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.axonframework.domain.AggregateIdentifier;
+import org.axonframework.domain.DomainEvent;
+import org.axonframework.domain.DomainEventStream;
+import org.axonframework.domain.SimpleDomainEventStream;
+import org.axonframework.eventstore.EventStoreException;
+import org.axonframework.eventstore.EventStoreManagement;
+import org.axonframework.eventstore.EventVisitor;
+import org.axonframework.eventstore.SnapshotEventStore;
+
+/**
+ * Event store that coalesces concurrent append operations into a single
+ * {@link FlushableEventStore#flush()} of the underlying store ("group
+ * commit").<br>
+ * <br>
+ * All append operations are handed over to a single writer thread. The writer
+ * takes the first waiting operation and collects further ones until either
+ * the {@link #setMaxDelayMillis(long) maximum delay} is over or the
+ * {@link #setMaxBatchSize(int) maximum number of events} is reached. All
+ * collected operations are written to the delegate without forcing the data
+ * to disk, followed by a single flush. A caller returns only after its events
+ * are durable. Read operations are passed to the delegate directly. If the
+ * flush fails, all requests of the batch fail and the delegate is told to
+ * {@link FlushableEventStore#rollback() discard} the written events, so a
+ * failed command never changes an aggregate's event stream.<br>
+ * <br>
+ * The store has to be {@link #start() started} before it can be used and
+ * should be {@link #stop() stopped} when it is no longer needed.
+ */
+public class GroupCommitEventStore implements SnapshotEventStore, EventStoreManagement,
+        AggregateVersionProvider {
+
+	/** Default maximum time to wait for more append operations. */
+	public static final long DEFAULT_MAX_DELAY_MILLIS = 2;
+
+	/** Default maximum number of events written with a single flush. */
+	public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+
+	private final FlushableEventStore delegate;
+
+	private final BlockingQueue<AppendRequest> queue;
+
+	private long maxDelayMillis;
+
+	private int maxBatchSize;
+
+	private boolean running;
+
+	private Thread writer;
+
+	/** Error of a failed rollback - No more appends are accepted. */
+	private volatile RuntimeException rollbackError;
+
+	/**
+	 * Constructor with the store to write to.
+	 * 
+	 * @param delegate
+	 *            Store that is used for reading and writing the events.
+	 */
+	public GroupCommitEventStore(final FlushableEventStore delegate) {
+		super();
+		if (delegate == null) {
+			throw new IllegalArgumentException("The argument 'delegate' cannot be null");
+		}
+		this.delegate = delegate;
+		this.queue = new LinkedBlockingQueue<AppendRequest>();
+		this.maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+		this.maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+	}
+
+	/**
+	 * Returns the store that is used for reading and writing the events.
+	 * 
+	 * @return Underlying store.
+	 */
+	public final FlushableEventStore getDelegate() {
+		return delegate;
+	}
+
+	/**
+	 * Sets the maximum time the writer waits for more append operations
+	 * before the collected ones are flushed. A value of zero only combines
+	 * the operations that are already waiting.
+	 * 
+	 * @param maxDelayMillis
+	 *            Delay in milliseconds.
+	 */
+	public final void setMaxDelayMillis(final long maxDelayMillis) {
+		if (maxDelayMillis < 0) {
+			throw new IllegalArgumentException("The maximum delay cannot be negative: "
+			        + maxDelayMillis);
+		}
+		this.maxDelayMillis = maxDelayMillis;
+	}
+
+	/**
+	 * Returns the maximum time the writer waits for more append operations.
+	 * 
+	 * @return Delay in milliseconds.
+	 */
+	public final long getMaxDelayMillis() {
+		return maxDelayMillis;
+	}
+
+	/**
+	 * Sets the number of events that causes a flush without waiting for the
+	 * maximum delay to be over.
+	 * 
+	 * @param maxBatchSize
+	 *            Number of events.
+	 */
+	public final void setMaxBatchSize(final int maxBatchSize) {
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("The maximum batch size must be at least 1: "
+			        + maxBatchSize);
+		}
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * Returns the number of events that causes a flush without waiting for the
+	 * maximum delay to be over.
+	 * 
+	 * @return Number of events.
+	 */
+	public final int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	/**
+	 * Disables flushing on every append of the underlying store and starts the
+	 * writer thread. Calling this method on an already started store has no
+	 * effect.
+	 */
+	public final synchronized void start() {
+		if (running) {
+			return;
+		}
+		delegate.setFlushOnAppend(false);
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeLoop();
+			}
+		}, "GroupCommitEventStore-Writer");
+		writer.setDaemon(true);
+		running = true;
+		writer.start();
+	}
+
+	/**
+	 * Writes all pending append operations, stops the writer thread and
+	 * enables flushing on every append of the underlying store again.
+	 */
+	public final void stop() {
+		final Thread thread;
+		synchronized (this) {
+			if (!running) {
+				return;
+			}
+			running = false;
+			queue.add(AppendRequest.STOP);
+			thread = writer;
+			writer = null;
+		}
+		boolean interrupted = false;
+		while (thread.isAlive()) {
+			try {
+				thread.join();
+			} catch (final InterruptedException ex) {
+				interrupted = true;
+			}
+		}
+		delegate.setFlushOnAppend(true);
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public final void appendEvents(final String type, final DomainEventStream events) {
+		final List<DomainEvent> eventList = new ArrayList<DomainEvent>();
+		while (events.hasNext()) {
+			eventList.add(events.next());
+		}
+		if (eventList.size() > 0) {
+			submit(new AppendRequest(type, eventList, false));
+		}
+	}
+
+	@Override
+	public final void appendSnapshotEvent(final String type, final DomainEvent snapshotEvent) {
+		final List<DomainEvent> eventList = new ArrayList<DomainEvent>(1);
+		eventList.add(snapshotEvent);
+		submit(new AppendRequest(type, eventList, true));
+	}
+
+	@Override
+	public final DomainEventStream readEvents(final String type,
+	        final AggregateIdentifier identifier) {
+		return delegate.readEvents(type, identifier);
+	}
+
+	@Override
+	public final Long getLastSequenceNumber(final String type,
+	        final AggregateIdentifier identifier) {
+		if (!(delegate instanceof AggregateVersionProvider)) {
+			throw new UnsupportedOperationException("The underlying store does not implement "
+			        + AggregateVersionProvider.class.getName() + ": "
+			        + delegate.getClass().getName());
+		}
+		return ((AggregateVersionProvider) delegate).getLastSequenceNumber(type, identifier);
+	}
+
+	@Override
+	public final void visitEvents(final EventVisitor visitor) {
+		if (!(delegate instanceof EventStoreManagement)) {
+			throw new UnsupportedOperationException("The underlying store does not implement "
+			        + EventStoreManagement.class.getName() + ": " + delegate.getClass().getName());
+		}
+		((EventStoreManagement) delegate).visitEvents(visitor);
+	}
+
+	/**
+	 * Hands the request over to the writer thread and waits until it's
+	 * completed.
+	 * 
+	 * @param request
+	 *            Request to execute.
+	 */
+	private void submit(final AppendRequest request) {
+		synchronized (this) {
+			if (!running) {
+				throw new IllegalStateException("The event store was not started");
+			}
+			if (rollbackError != null) {
+				throw new EventStoreException("A failed flush could not be rolled back",
+				        rollbackError);
+			}
+			queue.add(request);
+		}
+		request.await();
+	}
+
+	/**
+	 * Main loop of the writer thread.
+	 */
+	private void writeLoop() {
+		final List<AppendRequest> batch = new ArrayList<AppendRequest>();
+		boolean stop = false;
+		while (!stop) {
+			try {
+				final AppendRequest first = queue.take();
+				if (first == AppendRequest.STOP) {
+					stop = true;
+				} else {
+					batch.add(first);
+					stop = collect(batch, first.events.size());
+				}
+			} catch (final InterruptedException ex) {
+				// Only "stop()" ends the writer - Write what was collected so far
+			}
+			if (batch.size() > 0) {
+				write(batch);
+				batch.clear();
+			}
+		}
+	}
+
+	/**
+	 * Adds further waiting requests to the batch until the maximum delay is
+	 * over or the maximum number of events is reached.
+	 * 
+	 * @param batch
+	 *            Batch to add the requests to.
+	 * @param eventCount
+	 *            Number of events already in the batch.
+	 * 
+	 * @return TRUE if the stop request was found, else FALSE.
+	 * 
+	 * @throws InterruptedException
+	 *             The thread was interrupted while waiting.
+	 */
+	private boolean collect(final List<AppendRequest> batch, final int eventCount)
+	        throws InterruptedException {
+		int count = eventCount;
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+		while (count < maxBatchSize) {
+			final long remaining = deadline - System.nanoTime();
+			final AppendRequest next;
+			if (remaining > 0) {
+				next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+			} else {
+				next = queue.poll();
+			}
+			if (next == null) {
+				return false;
+			}
+			if (next == AppendRequest.STOP) {
+				return true;
+			}
+			batch.add(next);
+			count = count + next.events.size();
+		}
+		return false;
+	}
+
+	/**
+	 * Writes all requests of the batch to the underlying store, flushes it
+	 * once and completes the requests. A failed flush rolls back the whole
+	 * batch.
+	 * 
+	 * @param batch
+	 *            Requests to write.
+	 */
+	private void write(final List<AppendRequest> batch) {
+		boolean written = false;
+		for (int i = 0; i < batch.size(); i++) {
+			final AppendRequest request = batch.get(i);
+			if (rollbackError != null) {
+				// Events of the failed batch may still be in the delegate
+				request.error = rollbackError;
+				continue;
+			}
+			try {
+				if (request.snapshot) {
+					delegate.appendSnapshotEvent(request.type, request.events.get(0));
+				} else {
+					delegate.appendEvents(request.type, new SimpleDomainEventStream(
+					        request.events));
+				}
+				written = true;
+			} catch (final RuntimeException ex) {
+				request.error = ex;
+			}
+		}
+		RuntimeException flushError = null;
+		if (written) {
+			try {
+				delegate.flush();
+			} catch (final RuntimeException ex) {
+				flushError = ex;
+				rollback();
+			}
+		}
+		for (int i = 0; i < batch.size(); i++) {
+			final AppendRequest request = batch.get(i);
+			if ((request.error == null) && (flushError != null)) {
+				request.error = flushError;
+			}
+			request.done.countDown();
+		}
+	}
+
+	/**
+	 * Discards the events written since the last successful flush. If even
+	 * that fails, no more appends are accepted: Otherwise the events of the
+	 * failed batch could become durable together with the next one.
+	 */
+	private void rollback() {
+		try {
+			delegate.rollback();
+		} catch (final RuntimeException ex) {
+			rollbackError = ex;
+		}
+	}
+
+	/**
+	 * A single append operation waiting for the writer.
+	 */
+	private static final class AppendRequest {
+
+		/** Marker that tells the writer to stop. */
+		public static final AppendRequest STOP = new AppendRequest(null,
+		        new ArrayList<DomainEvent>(), false);
+
+		public final String type;
+
+		public final List<DomainEvent> events;
+
+		public final boolean snapshot;
+
+		public final CountDownLatch done;
+
+		/** Set by the writer before {@link #done} is counted down. */
+		public volatile RuntimeException error;
+
+		/**
+		 * Constructor with all data.
+		 * 
+		 * @param type
+		 *            Type of the aggregate.
+		 * @param events
+		 *            Events to append.
+		 * @param snapshot
+		 *            Is this a snapshot event?
+		 */
+		public AppendRequest(final String type, final List<DomainEvent> events,
+		        final boolean snapshot) {
+			super();
+			this.type = type;
+			this.events = events;
+			this.snapshot = snapshot;
+			this.done = new CountDownLatch(1);
+		}
+
+		/**
+		 * Waits until the writer completed the request and rethrows an error
+		 * that occurred while writing.
+		 */
+		public void await() {
+			boolean interrupted = false;
+			while (done.getCount() > 0) {
+				try {
+					done.await();
+				} catch (final InterruptedException ex) {
+					// The events may already be written - So we have to wait
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			if (error != null) {
+				if (error instanceof EventStoreException) {
+					throw error;
+				}
+				throw new EventStoreException("Error appending events of type: " + type, error);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,479 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.axon.support.base;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.axonframework.commandhandling.CommandBus;
+import org.axonframework.commandhandling.CommandCallback;
+import org.axonframework.commandhandling.CommandHandler;
+
+/**
+ * Command bus that executes the commands asynchronously on a fixed number of
+ * worker threads ("lanes"). Each lane has a bounded queue. Commands with the
+ * same {@link CommandRoutingKeyResolver routing key} always use the same lane
+ * and are therefore executed in order - Commands for the same aggregate don't
+ * run into concurrent modification conflicts. Commands without a key are
+ * distributed round robin.<br>
+ * <br>
+ * If the queue of a lane is full, the caller waits up to
+ * {@link #setMaxWaitMillis(long) the maximum wait time} for free space. If
+ * there is still no space, the command is rejected with a
+ * {@link RejectedExecutionException} that is passed to the callback.<br>
+ * <br>
+ * The commands are executed by the delegate bus, so subscriptions,
+ * interceptors and the unit of work are handled by it. The bus has to be
+ * {@link #start() started} before it can be used and should be
+ * {@link #stop() stopped} when it is no longer needed.
+ */
+public class LaneCommandBus implements CommandBus {
+
+	/** Default number of worker threads. */
+	public static final int DEFAULT_LANES = 4;
+
+	/** Default maximum number of waiting commands per lane. */
+	public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+	/** Default time to wait for space in a full queue. */
+	public static final long DEFAULT_MAX_WAIT_MILLIS = 100;
+
+	private final CommandBus delegate;
+
+	private final AtomicInteger roundRobin = new AtomicInteger();
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	private CommandRoutingKeyResolver routingKeyResolver;
+
+	private int lanes;
+
+	private int queueCapacity;
+
+	private long maxWaitMillis;
+
+	private volatile Lane[] running;
+
+	/**
+	 * Constructor with the bus that executes the commands.
+	 * 
+	 * @param delegate
+	 *            Bus used to execute the commands - Usually a
+	 *            {@link org.axonframework.commandhandling.SimpleCommandBus}.
+	 */
+	public LaneCommandBus(final CommandBus delegate) {
+		super();
+		if (delegate == null) {
+			throw new IllegalArgumentException("The argument 'delegate' cannot be null");
+		}
+		this.delegate = delegate;
+		this.lanes = DEFAULT_LANES;
+		this.queueCapacity = DEFAULT_QUEUE_CAPACITY;
+		this.maxWaitMillis = DEFAULT_MAX_WAIT_MILLIS;
+	}
+
+	/**
+	 * Returns the bus that executes the commands.
+	 * 
+	 * @return Underlying bus.
+	 */
+	public final CommandBus getDelegate() {
+		return delegate;
+	}
+
+	/**
+	 * Sets the resolver for the routing keys. If no resolver is set, all
+	 * commands are distributed round robin.
+	 * 
+	 * @param routingKeyResolver
+	 *            Resolver or <code>null</code>.
+	 */
+	public final void setRoutingKeyResolver(final CommandRoutingKeyResolver routingKeyResolver) {
+		this.routingKeyResolver = routingKeyResolver;
+	}
+
+	/**
+	 * Returns the resolver for the routing keys.
+	 * 
+	 * @return Resolver or <code>null</code>.
+	 */
+	public final CommandRoutingKeyResolver getRoutingKeyResolver() {
+		return routingKeyResolver;
+	}
+
+	/**
+	 * Sets the number of worker threads. Only has an effect if it's called
+	 * before {@link #start()}.
+	 * 
+	 * @param lanes
+	 *            Number of lanes.
+	 */
+	public final void setLanes(final int lanes) {
+		if (lanes < 1) {
+			throw new IllegalArgumentException("The number of lanes must be at least 1: " + lanes);
+		}
+		this.lanes = lanes;
+	}
+
+	/**
+	 * Returns the number of worker threads.
+	 * 
+	 * @return Number of lanes.
+	 */
+	public final int getLanes() {
+		return lanes;
+	}
+
+	/**
+	 * Sets the maximum number of commands waiting in a single lane. Only has
+	 * an effect if it's called before {@link #start()}.
+	 * 
+	 * @param queueCapacity
+	 *            Capacity of a lane's queue.
+	 */
+	public final void setQueueCapacity(final int queueCapacity) {
+		if (queueCapacity < 1) {
+			throw new IllegalArgumentException("The queue capacity must be at least 1: "
+			        + queueCapacity);
+		}
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Returns the maximum number of commands waiting in a single lane.
+	 * 
+	 * @return Capacity of a lane's queue.
+	 */
+	public final int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/**
+	 * Sets the time a caller waits for space in a full queue before the
+	 * command is rejected. A value of zero rejects the command immediately.
+	 * 
+	 * @param maxWaitMillis
+	 *            Wait time in milliseconds.
+	 */
+	public final void setMaxWaitMillis(final long maxWaitMillis) {
+		if (maxWaitMillis < 0) {
+			throw new IllegalArgumentException("The maximum wait time cannot be negative: "
+			        + maxWaitMillis);
+		}
+		this.maxWaitMillis = maxWaitMillis;
+	}
+
+	/**
+	 * Returns the time a caller waits for space in a full queue.
+	 * 
+	 * @return Wait time in milliseconds.
+	 */
+	public final long getMaxWaitMillis() {
+		return maxWaitMillis;
+	}
+
+	/**
+	 * Returns the number of commands rejected because the queue was full.
+	 * 
+	 * @return Number of rejected commands.
+	 */
+	public final long getRejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * Determines if the worker threads are started.
+	 * 
+	 * @return TRUE if commands are accepted.
+	 */
+	public final boolean isRunning() {
+		return running != null;
+	}
+
+	/**
+	 * Returns the number of commands waiting in all lanes.
+	 * 
+	 * @return Number of queued commands.
+	 */
+	public final int getQueueSize() {
+		final Lane[] current = running;
+		if (current == null) {
+			return 0;
+		}
+		int size = 0;
+		for (final Lane lane : current) {
+			size = size + lane.queue.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Starts the worker threads. Calling this method on an already started bus
+	 * has no effect.
+	 */
+	public final synchronized void start() {
+		if (running != null) {
+			return;
+		}
+		final Lane[] newLanes = new Lane[lanes];
+		for (int i = 0; i < newLanes.length; i++) {
+			newLanes[i] = new Lane("LaneCommandBus-" + i, queueCapacity);
+		}
+		for (final Lane lane : newLanes) {
+			lane.thread.start();
+		}
+		running = newLanes;
+	}
+
+	/**
+	 * Executes all queued commands and stops the worker threads. Commands
+	 * dispatched while stopping are either executed or rejected - every
+	 * callback is informed.
+	 */
+	public final void stop() {
+		final Lane[] current;
+		synchronized (this) {
+			if (running == null) {
+				return;
+			}
+			current = running;
+			running = null;
+		}
+		boolean interrupted = false;
+		for (final Lane lane : current) {
+			// Must be visible before the lane drains its queue
+			lane.closed = true;
+			while (true) {
+				try {
+					lane.queue.put(LaneTask.STOP);
+					break;
+				} catch (final InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+		}
+		for (final Lane lane : current) {
+			while (lane.thread.isAlive()) {
+				try {
+					lane.thread.join();
+				} catch (final InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public final void dispatch(final Object command) {
+		enqueue(new LaneTask(command, null));
+	}
+
+	@Override
+	public final <R> void dispatch(final Object command, final CommandCallback<R> callback) {
+		enqueue(new LaneTask(command, callback));
+	}
+
+	@Override
+	public final <C> void subscribe(final Class<C> commandType,
+	        final CommandHandler<? super C> handler) {
+		delegate.subscribe(commandType, handler);
+	}
+
+	@Override
+	public final <C> void unsubscribe(final Class<C> commandType,
+	        final CommandHandler<? super C> handler) {
+		delegate.unsubscribe(commandType, handler);
+	}
+
+	/**
+	 * Puts the task into the queue of the lane selected by the routing key.
+	 * 
+	 * @param task
+	 *            Task to add.
+	 */
+	private void enqueue(final LaneTask task) {
+		final Lane[] current = running;
+		if (current == null) {
+			throw new IllegalStateException("The command bus was not started");
+		}
+		final Lane lane = current[selectLane(task.command, current.length)];
+		boolean added;
+		try {
+			added = lane.queue.offer(task, maxWaitMillis, TimeUnit.MILLISECONDS);
+		} catch (final InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			added = false;
+		}
+		if (!added) {
+			rejected.incrementAndGet();
+			final RejectedExecutionException ex = new RejectedExecutionException("Command queue '"
+			        + lane.thread.getName() + "' is full: " + task.command.getClass().getName());
+			if (task.callback == null) {
+				throw ex;
+			}
+			task.callback.onFailure(ex);
+		} else if (lane.closed && lane.queue.remove(task)) {
+			// The lane may have drained its queue before the task was added. If
+			// the task is still there, nobody else will ever take it.
+			rejected.incrementAndGet();
+			final RejectedExecutionException ex = new RejectedExecutionException(
+			        "The command bus was stopped");
+			if (task.callback == null) {
+				throw ex;
+			}
+			task.callback.onFailure(ex);
+		}
+	}
+
+	private int selectLane(final Object command, final int count) {
+		final Object key;
+		if (routingKeyResolver == null) {
+			key = null;
+		} else {
+			key = routingKeyResolver.getRoutingKey(command);
+		}
+		if (key == null) {
+			return (roundRobin.getAndIncrement() & Integer.MAX_VALUE) % count;
+		}
+		return (key.hashCode() & Integer.MAX_VALUE) % count;
+	}
+
+	/**
+	 * Worker thread with it's queue.
+	 */
+	private final class Lane implements Runnable {
+
+		private final BlockingQueue<LaneTask> queue;
+
+		private final Thread thread;
+
+		/** Set by {@link LaneCommandBus#stop()} before the stop marker is added. */
+		private volatile boolean closed;
+
+		/**
+		 * Constructor with name and capacity.
+		 * 
+		 * @param name
+		 *            Name of the thread.
+		 * @param capacity
+		 *            Maximum number of waiting tasks.
+		 */
+		public Lane(final String name, final int capacity) {
+			super();
+			this.queue = new ArrayBlockingQueue<LaneTask>(capacity);
+			this.thread = new Thread(this, name);
+			this.thread.setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					final LaneTask task = queue.take();
+					if (task == LaneTask.STOP) {
+						break;
+					}
+					task.execute(delegate);
+				}
+			} catch (final InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			// Tasks added after the stop marker are never executed
+			final List<LaneTask> remaining = new ArrayList<LaneTask>();
+			queue.drainTo(remaining);
+			for (final LaneTask task : remaining) {
+				if (task != LaneTask.STOP) {
+					rejected.incrementAndGet();
+					task.reject(new RejectedExecutionException("The command bus was stopped"));
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Command with it's callback.
+	 */
+	private static final class LaneTask {
+
+		/** Marker that stops a lane. */
+		static final LaneTask STOP = new LaneTask(null, null);
+
+		private final Object command;
+
+		@SuppressWarnings("rawtypes")
+		private final CommandCallback callback;
+
+		/**
+		 * Constructor with command and callback.
+		 * 
+		 * @param command
+		 *            Command to execute.
+		 * @param callback
+		 *            Callback or <code>null</code>.
+		 */
+		@SuppressWarnings("rawtypes")
+		public LaneTask(final Object command, final CommandCallback callback) {
+			super();
+			this.command = command;
+			this.callback = callback;
+		}
+
+		/**
+		 * Executes the command. Exceptions are passed to the callback and
+		 * never stop the lane.
+		 * 
+		 * @param bus
+		 *            Bus to dispatch the command to.
+		 */
+		@SuppressWarnings("unchecked")
+		public void execute(final CommandBus bus) {
+			try {
+				if (callback == null) {
+					bus.dispatch(command);
+				} else {
+					bus.dispatch(command, callback);
+				}
+			} catch (final RuntimeException ex) {
+				reject(ex);
+			}
+		}
+
+		/**
+		 * Informs the caller that the command was not executed. There is
+		 * nobody to inform if the command was dispatched without a callback.
+		 * 
+		 * @param ex
+		 *            Reason.
+		 */
+		public void reject(final RuntimeException ex) {
+			if (callback != null) {
+				callback.onFailure(ex);
+			}
+		}
+
+	}
+
+}
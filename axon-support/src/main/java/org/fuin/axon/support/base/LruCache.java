@@ -0,0 +1,346 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.axon.support.base;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import net.sf.jsr107cache.Cache;
+import net.sf.jsr107cache.CacheEntry;
+import net.sf.jsr107cache.CacheListener;
+import net.sf.jsr107cache.CacheStatistics;
+
+/**
+ * Simple cache with a maximum number of entries. If the cache is full, the
+ * least recently used entry is evicted. Hits and misses of {@link #get(Object)}
+ * are counted and available via {@link #getCacheStatistics()}. There is no
+ * cache loader and no expiration.
+ */
+@SuppressWarnings("rawtypes")
+public final class LruCache implements Cache {
+
+	private final int maxSize;
+
+	private final LinkedHashMap<Object, Object> map;
+
+	private final List<CacheListener> listeners;
+
+	private final Statistics statistics;
+
+	private int hits;
+
+	private int misses;
+
+	private int evictions;
+
+	/**
+	 * Constructor with maximum size.
+	 * 
+	 * @param maxSize
+	 *            Maximum number of entries.
+	 */
+	public LruCache(final int maxSize) {
+		super();
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("The maximum size must be at least 1: " + maxSize);
+		}
+		this.maxSize = maxSize;
+		this.map = new LinkedHashMap<Object, Object>(16, 0.75f, true);
+		this.listeners = new CopyOnWriteArrayList<CacheListener>();
+		this.statistics = new Statistics();
+	}
+
+	/**
+	 * Returns the maximum number of entries.
+	 * 
+	 * @return Maximum size.
+	 */
+	public final int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Returns the number of entries evicted because the cache was full.
+	 * 
+	 * @return Number of evictions.
+	 */
+	public final synchronized int getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Returns the number of successful lookups with {@link #get(Object)}.
+	 * 
+	 * @return Number of hits.
+	 */
+	public final synchronized int getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups with {@link #get(Object)} that found
+	 * nothing.
+	 * 
+	 * @return Number of misses.
+	 */
+	public final synchronized int getMisses() {
+		return misses;
+	}
+
+	@Override
+	public final Object get(final Object key) {
+		synchronized (this) {
+			final Object value = map.get(key);
+			if (value == null) {
+				misses++;
+			} else {
+				hits++;
+			}
+			return value;
+		}
+	}
+
+	@Override
+	public final Object peek(final Object key) {
+		synchronized (this) {
+			return map.get(key);
+		}
+	}
+
+	@Override
+	public final Map getAll(final Collection keys) {
+		final Map<Object, Object> result = new HashMap<Object, Object>();
+		for (final Object key : keys) {
+			final Object value = get(key);
+			if (value != null) {
+				result.put(key, value);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public final Object put(final Object key, final Object value) {
+		final Object old;
+		final List<Object> evicted = new ArrayList<Object>();
+		synchronized (this) {
+			old = map.put(key, value);
+			final Iterator<Object> it = map.keySet().iterator();
+			while (map.size() > maxSize) {
+				evicted.add(it.next());
+				it.remove();
+				evictions++;
+			}
+		}
+		for (final CacheListener listener : listeners) {
+			listener.onPut(key);
+			for (final Object evictedKey : evicted) {
+				listener.onEvict(evictedKey);
+			}
+		}
+		return old;
+	}
+
+	@Override
+	public final void putAll(final Map entries) {
+		for (final Object obj : entries.entrySet()) {
+			final Map.Entry entry = (Map.Entry) obj;
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Override
+	public final Object remove(final Object key) {
+		final Object old;
+		synchronized (this) {
+			old = map.remove(key);
+		}
+		if (old != null) {
+			for (final CacheListener listener : listeners) {
+				listener.onRemove(key);
+			}
+		}
+		return old;
+	}
+
+	@Override
+	public final void clear() {
+		synchronized (this) {
+			map.clear();
+		}
+		for (final CacheListener listener : listeners) {
+			listener.onClear();
+		}
+	}
+
+	@Override
+	public final synchronized boolean containsKey(final Object key) {
+		return map.containsKey(key);
+	}
+
+	@Override
+	public final synchronized boolean containsValue(final Object value) {
+		return map.containsValue(value);
+	}
+
+	@Override
+	public final synchronized boolean isEmpty() {
+		return map.isEmpty();
+	}
+
+	@Override
+	public final synchronized int size() {
+		return map.size();
+	}
+
+	/**
+	 * Returns a copy of the entries.
+	 * 
+	 * @return Unmodifiable set of entries.
+	 */
+	@Override
+	public final synchronized Set entrySet() {
+		return Collections.unmodifiableSet(new HashMap<Object, Object>(map).entrySet());
+	}
+
+	/**
+	 * Returns a copy of the keys.
+	 * 
+	 * @return Unmodifiable set of keys.
+	 */
+	@Override
+	public final synchronized Set keySet() {
+		return Collections.unmodifiableSet(new HashSet<Object>(map.keySet()));
+	}
+
+	/**
+	 * Returns a copy of the values.
+	 * 
+	 * @return Unmodifiable collection of values.
+	 */
+	@Override
+	public final synchronized Collection values() {
+		return Collections.unmodifiableList(new ArrayList<Object>(map.values()));
+	}
+
+	/**
+	 * Does nothing because there is no cache loader.
+	 * 
+	 * @param key
+	 *            Ignored.
+	 */
+	@Override
+	public final void load(final Object key) {
+		// No cache loader
+	}
+
+	/**
+	 * Does nothing because there is no cache loader.
+	 * 
+	 * @param keys
+	 *            Ignored.
+	 */
+	@Override
+	public final void loadAll(final Collection keys) {
+		// No cache loader
+	}
+
+	/**
+	 * Does nothing because entries never expire.
+	 */
+	@Override
+	public final void evict() {
+		// No expiration
+	}
+
+	/**
+	 * Entry meta data is not tracked by this cache.
+	 * 
+	 * @param key
+	 *            Ignored.
+	 * 
+	 * @return Always NULL.
+	 */
+	@Override
+	public final CacheEntry getCacheEntry(final Object key) {
+		return null;
+	}
+
+	@Override
+	public final CacheStatistics getCacheStatistics() {
+		return statistics;
+	}
+
+	@Override
+	public final void addListener(final CacheListener listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public final void removeListener(final CacheListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Live view on the statistics of the cache.
+	 */
+	private final class Statistics implements CacheStatistics {
+
+		@Override
+		public int getStatisticsAccuracy() {
+			return STATISTICS_ACCURACY_GUARANTEED;
+		}
+
+		@Override
+		public int getObjectCount() {
+			return size();
+		}
+
+		@Override
+		public int getCacheHits() {
+			synchronized (LruCache.this) {
+				return hits;
+			}
+		}
+
+		@Override
+		public int getCacheMisses() {
+			synchronized (LruCache.this) {
+				return misses;
+			}
+		}
+
+		@Override
+		public void clearStatistics() {
+			synchronized (LruCache.this) {
+				hits = 0;
+				misses = 0;
+				evictions = 0;
+			}
+		}
+
+	}
+
+}
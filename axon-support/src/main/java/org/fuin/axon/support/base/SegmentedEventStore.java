@@ -0,0 +1,1193 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.axon.support.base;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.axonframework.domain.AggregateIdentifier;
+import org.axonframework.domain.DomainEvent;
+import org.axonframework.domain.DomainEventStream;
+import org.axonframework.eventstore.EventSerializer;
+import org.axonframework.eventstore.EventStoreException;
+import org.axonframework.eventstore.EventStoreManagement;
+import org.axonframework.eventstore.EventStreamNotFoundException;
+import org.axonframework.eventstore.EventVisitor;
+import org.axonframework.eventstore.XStreamEventSerializer;
+
+/**
+ * Event store that appends the events of all aggregates to a sequence of large
+ * pre-allocated segment files. The segments are memory mapped and an in-memory
+ * index stores the position of every event per aggregate, so reading an
+ * aggregate's events requires no file operations at all.<br>
+ * <br>
+ * Each record is protected by a CRC32 checksum. When the store is opened, all
+ * segments are scanned to rebuild the index. A partially written record at the
+ * end of the last segment (crash during append) is discarded. New segments are
+ * created as temporary files and renamed after they have been fully allocated,
+ * so a crash during a rollover never leaves a half initialized segment.<br>
+ * <br>
+ * By default every append operation forces the data to disk before it
+ * returns. If {@link #setFlushOnAppend(boolean)} is set to FALSE the caller
+ * has to invoke {@link #flush()} to make the appended events durable. Such
+ * events are added to the index only after the flush succeeded, and
+ * {@link #rollback()} truncates them from the segments if it failed.<br>
+ * <br>
+ * The store has to be {@link #open() opened} before it can be used and should
+ * be {@link #close() closed} when it is no longer needed.
+ */
+public class SegmentedEventStore implements FlushableEventStore, EventStoreManagement,
+        AggregateVersionProvider {
+
+	/** Default size of a segment file in bytes (64 MB). */
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final String SEGMENT_SUFFIX = ".seg";
+
+	private static final String TMP_SUFFIX = ".tmp";
+
+	/** Length value that marks the end of the written data in a segment. */
+	private static final int END_OF_DATA = 0;
+
+	/** Length value that marks a segment as closed (rollover). */
+	private static final int END_OF_SEGMENT = -1;
+
+	private static final byte KIND_EVENT = 1;
+
+	private static final byte KIND_SNAPSHOT = 2;
+
+	/** Flag set in the kind of the last record of every append operation. */
+	private static final byte COMMIT_FLAG = 0x10;
+
+	private static final byte KIND_MASK = 0x0F;
+
+	/** Length + CRC. */
+	private static final int RECORD_PREFIX_SIZE = 8;
+
+	/** Kind + type length + id length + sequence number. */
+	private static final int RECORD_FIXED_HEADER_SIZE = 1 + 2 + 2 + 8;
+
+	private final EventSerializer eventSerializer;
+
+	private final ReadWriteLock lock;
+
+	private final List<Segment> segments;
+
+	private final Map<String, Map<String, AggregateIndex>> index;
+
+	/** Serializes all operations that change the segments. */
+	private final Object appendLock;
+
+	/** Records written since the last flush - Not yet in the index. */
+	private final List<PendingRecord> unflushed;
+
+	private File baseDir;
+
+	private int segmentSize;
+
+	private boolean opened;
+
+	private volatile boolean flushOnAppend;
+
+	/** Write position inside the last segment. */
+	private int writePos;
+
+	/** The last segment is closed and a new one must be created on next write. */
+	private boolean rolloverPending;
+
+	/** Index of the segment that contains the end of the flushed data. */
+	private int flushedSegment;
+
+	/** End of the flushed data inside {@link #flushedSegment}. */
+	private int flushedPos;
+
+	/** Value of {@link #rolloverPending} at the time of the last flush. */
+	private boolean flushedRolloverPending;
+
+	/**
+	 * Default constructor that uses a {@link XStreamEventSerializer}.
+	 */
+	public SegmentedEventStore() {
+		this(new XStreamEventSerializer());
+	}
+
+	/**
+	 * Constructor with serializer.
+	 * 
+	 * @param eventSerializer
+	 *            Serializer to use for the events.
+	 */
+	public SegmentedEventStore(final EventSerializer eventSerializer) {
+		super();
+		this.eventSerializer = eventSerializer;
+		this.lock = new ReentrantReadWriteLock();
+		this.segments = new ArrayList<Segment>();
+		this.index = new HashMap<String, Map<String, AggregateIndex>>();
+		this.appendLock = new Object();
+		this.unflushed = new ArrayList<PendingRecord>();
+		this.segmentSize = DEFAULT_SEGMENT_SIZE;
+		this.flushOnAppend = true;
+	}
+
+	/**
+	 * Sets the directory where the segment files are located.
+	 * 
+	 * @param baseDir
+	 *            Directory to set.
+	 */
+	public final void setBaseDir(final File baseDir) {
+		this.baseDir = baseDir;
+	}
+
+	/**
+	 * Returns the directory where the segment files are located.
+	 * 
+	 * @return Directory.
+	 */
+	public final File getBaseDir() {
+		return baseDir;
+	}
+
+	/**
+	 * Sets the size of newly created segment files. Existing segments keep
+	 * their size.
+	 * 
+	 * @param segmentSize
+	 *            Size in bytes.
+	 */
+	public final void setSegmentSize(final int segmentSize) {
+		if (segmentSize < 1024) {
+			throw new IllegalArgumentException("The segment size must be at least 1024 bytes: "
+			        + segmentSize);
+		}
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * Returns the size of newly created segment files.
+	 * 
+	 * @return Size in bytes.
+	 */
+	public final int getSegmentSize() {
+		return segmentSize;
+	}
+
+	@Override
+	public final void setFlushOnAppend(final boolean flushOnAppend) {
+		this.flushOnAppend = flushOnAppend;
+	}
+
+	/**
+	 * Returns if every append operation forces the data to disk.
+	 * 
+	 * @return TRUE if every append is forced to disk, else FALSE.
+	 */
+	public final boolean isFlushOnAppend() {
+		return flushOnAppend;
+	}
+
+	/**
+	 * Returns the number of segment files.
+	 * 
+	 * @return Number of segments.
+	 */
+	public final int getSegmentCount() {
+		lock.readLock().lock();
+		try {
+			return segments.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Opens all existing segments, rebuilds the index and discards a partially
+	 * written record at the end of the last segment. Creates the first segment
+	 * if the base directory is empty. Calling this method on an already opened
+	 * store has no effect.
+	 */
+	public final void open() {
+		lock.writeLock().lock();
+		try {
+			if (opened) {
+				return;
+			}
+			if (baseDir == null) {
+				throw new IllegalStateException("The base directory was not set");
+			}
+			if (!baseDir.exists() && !baseDir.mkdirs()) {
+				throw new EventStoreException("Cannot create base directory: " + baseDir);
+			}
+			deleteTemporaryFiles();
+			try {
+				final File[] files = listSegmentFiles();
+				for (int i = 0; i < files.length; i++) {
+					final Segment segment = openSegment(files[i], i);
+					segments.add(segment);
+					final boolean last = (i == files.length - 1);
+					recover(segment, last);
+				}
+				if (segments.size() == 0) {
+					segments.add(createSegment(0));
+					writePos = 0;
+					rolloverPending = false;
+				}
+				markFlushed();
+				opened = true;
+			} catch (final IOException ex) {
+				throw new EventStoreException("Error opening the event store: " + baseDir, ex);
+			} finally {
+				if (!opened) {
+					closeSegments();
+					index.clear();
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Forces all data to disk and closes the segment files.
+	 */
+	public final void close() {
+		synchronized (appendLock) {
+			lock.writeLock().lock();
+			try {
+				if (!opened) {
+					return;
+				}
+				opened = false;
+				if (segments.size() > 0) {
+					segments.get(segments.size() - 1).buffer.force();
+				}
+				closeSegments();
+				index.clear();
+				unflushed.clear();
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	@Override
+	public final void flush() {
+		synchronized (appendLock) {
+			final Segment segment;
+			lock.readLock().lock();
+			try {
+				ensureOpen();
+				segment = segments.get(segments.size() - 1);
+			} finally {
+				lock.readLock().unlock();
+			}
+			// Readers are not blocked while forcing - Only appends wait
+			segment.buffer.force();
+			lock.writeLock().lock();
+			try {
+				publishUnflushed();
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Discards all records written since the last successful flush. Segments
+	 * created since then are deleted and the discarded part of the last kept
+	 * segment is overwritten with zeros, so the records cannot show up again
+	 * after a restart. Clearing is a best effort: If the storage device fails
+	 * permanently, a restart may still recover the discarded records.
+	 */
+	@Override
+	public final void rollback() {
+		synchronized (appendLock) {
+			lock.writeLock().lock();
+			try {
+				ensureOpen();
+				unflushed.clear();
+				final boolean sameSegment = (segments.size() - 1 == flushedSegment);
+				final int discardedEnd = writePos;
+				while (segments.size() - 1 > flushedSegment) {
+					final Segment segment = segments.remove(segments.size() - 1);
+					try {
+						segment.raf.close();
+					} catch (final IOException ex) {
+						// Nothing we can do about it
+					}
+					if (!segment.file.delete()) {
+						throw new EventStoreException("Cannot delete discarded segment: "
+						        + segment.file);
+					}
+				}
+				final Segment segment = segments.get(flushedSegment);
+				if (!flushedRolloverPending) {
+					// Records and the rollover marker may follow the flushed data
+					if (sameSegment) {
+						clear(segment, flushedPos, discardedEnd);
+					} else {
+						clear(segment, flushedPos, segment.size);
+					}
+				}
+				writePos = flushedPos;
+				rolloverPending = flushedRolloverPending;
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	@Override
+	public final void appendEvents(final String type, final DomainEventStream events) {
+		final List<byte[]> records = new ArrayList<byte[]>();
+		final List<DomainEvent> eventList = new ArrayList<DomainEvent>();
+		while (events.hasNext()) {
+			final DomainEvent event = events.next();
+			records.add(createRecord(KIND_EVENT, type, event));
+			eventList.add(event);
+		}
+		if (records.size() > 0) {
+			write(KIND_EVENT, type, eventList, records);
+		}
+	}
+
+	@Override
+	public final void appendSnapshotEvent(final String type, final DomainEvent snapshotEvent) {
+		final List<byte[]> records = new ArrayList<byte[]>(1);
+		records.add(createRecord(KIND_SNAPSHOT, type, snapshotEvent));
+		final List<DomainEvent> eventList = new ArrayList<DomainEvent>(1);
+		eventList.add(snapshotEvent);
+		write(KIND_SNAPSHOT, type, eventList, records);
+	}
+
+	@Override
+	public final DomainEventStream readEvents(final String type,
+	        final AggregateIdentifier identifier) {
+		final List<ByteBuffer> payloads = new ArrayList<ByteBuffer>();
+		lock.readLock().lock();
+		try {
+			ensureOpen();
+			final AggregateIndex aggregateIndex = findIndex(type, identifier.asString());
+			if (aggregateIndex == null) {
+				throw new EventStreamNotFoundException(type, identifier);
+			}
+			long minSequenceNumber = Long.MIN_VALUE;
+			if (aggregateIndex.hasSnapshot()) {
+				payloads.add(slice(aggregateIndex.snapshotPosition,
+				        aggregateIndex.snapshotLength));
+				minSequenceNumber = aggregateIndex.snapshotSequenceNumber;
+			}
+			for (int i = 0; i < aggregateIndex.size; i++) {
+				if (aggregateIndex.sequenceNumbers[i] > minSequenceNumber) {
+					payloads.add(slice(aggregateIndex.positions[i], aggregateIndex.lengths[i]));
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return new MappedEventStream(eventSerializer, payloads);
+	}
+
+	@Override
+	public final Long getLastSequenceNumber(final String type,
+	        final AggregateIdentifier identifier) {
+		lock.readLock().lock();
+		try {
+			ensureOpen();
+			final AggregateIndex aggregateIndex = findIndex(type, identifier.asString());
+			if ((aggregateIndex == null) || (aggregateIndex.size == 0)) {
+				return null;
+			}
+			return aggregateIndex.sequenceNumbers[aggregateIndex.size - 1];
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public final void visitEvents(final EventVisitor visitor) {
+		final List<Segment> visitSegments;
+		final int lastLimit;
+		lock.readLock().lock();
+		try {
+			ensureOpen();
+			// Records that are not flushed yet are not visible
+			visitSegments = new ArrayList<Segment>(segments.subList(0, flushedSegment + 1));
+			lastLimit = flushedPos;
+		} finally {
+			lock.readLock().unlock();
+		}
+		final RecordHandler handler = new RecordHandler() {
+			@Override
+			public void handle(final Segment segment, final byte kind, final boolean commit,
+			        final int recordPos, final String type, final String aggregateId,
+			        final long sequenceNumber, final int payloadPos, final int payloadLength) {
+				if (kind == KIND_EVENT) {
+					final ByteBuffer payload = slice(segment, payloadPos, payloadLength);
+					visitor.doWithEvent(deserialize(eventSerializer, payload));
+				}
+			}
+		};
+		for (int i = 0; i < visitSegments.size(); i++) {
+			final Segment segment = visitSegments.get(i);
+			final int limit = (i == visitSegments.size() - 1) ? lastLimit : segment.size;
+			scan(segment, limit, handler);
+		}
+	}
+
+	/**
+	 * Writes the records to the current segment. If {@link #isFlushOnAppend()}
+	 * is set, the data is forced to disk and the index is updated. Otherwise
+	 * the index is updated by the next {@link #flush()}.
+	 * 
+	 * @param kind
+	 *            Kind of the records.
+	 * @param type
+	 *            Type of the aggregate.
+	 * @param events
+	 *            Events that belong to the records.
+	 * @param records
+	 *            Serialized records in the same order as the events.
+	 */
+	private void write(final byte kind, final String type, final List<DomainEvent> events,
+	        final List<byte[]> records) {
+		int total = 0;
+		for (int i = 0; i < records.size(); i++) {
+			final byte[] record = records.get(i);
+			seal(record, i == records.size() - 1);
+			total = total + record.length;
+		}
+		synchronized (appendLock) {
+			lock.writeLock().lock();
+			try {
+				ensureOpen();
+				if (total > segmentSize) {
+					throw new EventStoreException("Events with " + total
+					        + " bytes exceed the segment size of " + segmentSize);
+				}
+				Segment segment = segments.get(segments.size() - 1);
+				try {
+					if (rolloverPending || (writePos + total > segment.size)) {
+						segment = rollover(segment);
+					}
+				} catch (final IOException ex) {
+					throw new EventStoreException("Error creating a new segment in: " + baseDir,
+					        ex);
+				}
+				final ByteBuffer buf = segment.buffer.duplicate();
+				buf.position(writePos);
+				for (int i = 0; i < records.size(); i++) {
+					final byte[] record = records.get(i);
+					final DomainEvent event = events.get(i);
+					buf.put(record);
+					final int length = payloadLength(record);
+					final long position = toPosition(segment.index, writePos + record.length
+					        - length);
+					unflushed.add(new PendingRecord(kind, writePos, type, event
+					        .getAggregateIdentifier().asString(), event.getSequenceNumber(),
+					        position, length));
+					writePos = writePos + record.length;
+				}
+				if (flushOnAppend) {
+					segment.buffer.force();
+					publishUnflushed();
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Adds all flushed records to the index and remembers the current write
+	 * position as end of the flushed data. Requires the write lock.
+	 */
+	private void publishUnflushed() {
+		for (final PendingRecord record : unflushed) {
+			addToIndex(record);
+		}
+		unflushed.clear();
+		markFlushed();
+	}
+
+	private void markFlushed() {
+		flushedSegment = segments.size() - 1;
+		flushedPos = writePos;
+		flushedRolloverPending = rolloverPending;
+	}
+
+	private void addToIndex(final PendingRecord record) {
+		final AggregateIndex aggregateIndex = getOrCreateIndex(record.type, record.aggregateId);
+		if (record.kind == KIND_SNAPSHOT) {
+			aggregateIndex.setSnapshot(record.position, record.length, record.sequenceNumber);
+		} else {
+			aggregateIndex.add(record.position, record.length, record.sequenceNumber);
+		}
+	}
+
+	/**
+	 * Closes the current segment and creates the next one.
+	 * 
+	 * @param current
+	 *            Current (last) segment.
+	 * 
+	 * @return New segment.
+	 * 
+	 * @throws IOException
+	 *             Error creating the new segment.
+	 */
+	private Segment rollover(final Segment current) throws IOException {
+		if (!rolloverPending && (writePos + 4 <= current.size)) {
+			current.buffer.putInt(writePos, END_OF_SEGMENT);
+		}
+		current.buffer.force();
+		final Segment next = createSegment(current.index + 1);
+		segments.add(next);
+		writePos = 0;
+		rolloverPending = false;
+		return next;
+	}
+
+	/**
+	 * Creates and maps a new segment. The file is first allocated under a
+	 * temporary name and renamed afterwards.
+	 * 
+	 * @param segmentIndex
+	 *            Index of the segment to create.
+	 * 
+	 * @return New segment.
+	 * 
+	 * @throws IOException
+	 *             Error creating the file.
+	 */
+	private Segment createSegment(final int segmentIndex) throws IOException {
+		final File file = new File(baseDir, segmentName(segmentIndex));
+		final File tmpFile = new File(baseDir, segmentName(segmentIndex) + TMP_SUFFIX);
+		final RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw");
+		try {
+			raf.setLength(segmentSize);
+			raf.getFD().sync();
+		} finally {
+			raf.close();
+		}
+		if (!tmpFile.renameTo(file)) {
+			throw new IOException("Cannot rename '" + tmpFile + "' to '" + file + "'");
+		}
+		return openSegment(file, segmentIndex);
+	}
+
+	/**
+	 * Scans a segment at startup and adds all committed records to the index.
+	 * Records of an append operation that was not completed are discarded if
+	 * they are located at the end of the last segment.
+	 * 
+	 * @param segment
+	 *            Segment to scan.
+	 * @param last
+	 *            Is this the last segment?
+	 */
+	private void recover(final Segment segment, final boolean last) {
+		final List<PendingRecord> pending = new ArrayList<PendingRecord>();
+		final ScanResult result = scan(segment, segment.size, new RecordHandler() {
+			@Override
+			public void handle(final Segment seg, final byte kind, final boolean commit,
+			        final int recordPos, final String type, final String aggregateId,
+			        final long sequenceNumber, final int payloadPos, final int payloadLength) {
+				pending.add(new PendingRecord(kind, recordPos, type, aggregateId,
+				        sequenceNumber, toPosition(seg.index, payloadPos), payloadLength));
+				if (commit) {
+					for (final PendingRecord record : pending) {
+						addToIndex(record);
+					}
+					pending.clear();
+				}
+			}
+		});
+		if (!last && (result.corrupt || (pending.size() > 0))) {
+			throw new EventStoreException("Corrupt record at position " + result.position
+			        + " in segment: " + segment.file);
+		}
+		if (last) {
+			int endPos = result.position;
+			if (pending.size() > 0) {
+				endPos = pending.get(0).recordPos;
+			}
+			if (result.corrupt || (pending.size() > 0)) {
+				// Discard the incomplete append operation
+				clear(segment, endPos, segment.size);
+			}
+			writePos = endPos;
+			rolloverPending = result.closed && (pending.size() == 0);
+		}
+	}
+
+	/**
+	 * Overwrites a part of a segment with zeros and forces it to disk.
+	 * 
+	 * @param segment
+	 *            Segment to change.
+	 * @param from
+	 *            First position to clear.
+	 * @param to
+	 *            Position after the last one to clear.
+	 */
+	private static void clear(final Segment segment, final int from, final int to) {
+		if (from >= to) {
+			return;
+		}
+		final ByteBuffer buf = segment.buffer.duplicate();
+		buf.position(from);
+		buf.limit(to);
+		final byte[] zeros = new byte[Math.min(8192, to - from)];
+		while (buf.hasRemaining()) {
+			buf.put(zeros, 0, Math.min(zeros.length, buf.remaining()));
+		}
+		segment.buffer.force();
+	}
+
+	/**
+	 * Reads all records of a segment up to the given limit.
+	 * 
+	 * @param segment
+	 *            Segment to read.
+	 * @param limit
+	 *            Position where to stop reading.
+	 * @param handler
+	 *            Handler that receives all valid records.
+	 * 
+	 * @return Result of the scan.
+	 */
+	private ScanResult scan(final Segment segment, final int limit, final RecordHandler handler) {
+		final ByteBuffer buf = segment.buffer.duplicate();
+		final CRC32 crc = new CRC32();
+		int pos = 0;
+		while (pos + RECORD_PREFIX_SIZE <= limit) {
+			final int length = buf.getInt(pos);
+			if (length == END_OF_DATA) {
+				return new ScanResult(pos, false, false);
+			}
+			if (length == END_OF_SEGMENT) {
+				return new ScanResult(pos, true, false);
+			}
+			if ((length < RECORD_FIXED_HEADER_SIZE) || (pos + RECORD_PREFIX_SIZE + length > limit)) {
+				return new ScanResult(pos, false, true);
+			}
+			final int bodyPos = pos + RECORD_PREFIX_SIZE;
+			final byte[] body = new byte[length];
+			buf.position(bodyPos);
+			buf.get(body);
+			crc.reset();
+			crc.update(body);
+			if ((int) crc.getValue() != buf.getInt(pos + 4)) {
+				return new ScanResult(pos, false, true);
+			}
+			final ByteBuffer header = ByteBuffer.wrap(body);
+			final byte flags = header.get();
+			final String type = readString(header);
+			final String aggregateId = readString(header);
+			final long sequenceNumber = header.getLong();
+			final int payloadOffset = header.position();
+			handler.handle(segment, (byte) (flags & KIND_MASK), (flags & COMMIT_FLAG) != 0, pos,
+			        type, aggregateId, sequenceNumber, bodyPos + payloadOffset, length
+			                - payloadOffset);
+			pos = bodyPos + length;
+		}
+		return new ScanResult(pos, false, false);
+	}
+
+	/**
+	 * Serializes an event into a record (prefix, header and payload). The
+	 * checksum is set later by {@link #seal(byte[], boolean)}.
+	 * 
+	 * @param kind
+	 *            Kind of record.
+	 * @param type
+	 *            Type of the aggregate.
+	 * @param event
+	 *            Event to serialize.
+	 * 
+	 * @return Record.
+	 */
+	private byte[] createRecord(final byte kind, final String type, final DomainEvent event) {
+		final byte[] typeBytes = type.getBytes(UTF8);
+		final byte[] idBytes = event.getAggregateIdentifier().asString().getBytes(UTF8);
+		final byte[] payload = eventSerializer.serialize(event);
+		final int length = RECORD_FIXED_HEADER_SIZE + typeBytes.length + idBytes.length
+		        + payload.length;
+		final ByteBuffer buf = ByteBuffer.allocate(RECORD_PREFIX_SIZE + length);
+		buf.putInt(length);
+		buf.putInt(0);
+		buf.put(kind);
+		buf.putShort((short) typeBytes.length);
+		buf.put(typeBytes);
+		buf.putShort((short) idBytes.length);
+		buf.put(idBytes);
+		buf.putLong(event.getSequenceNumber());
+		buf.put(payload);
+		return buf.array();
+	}
+
+	/**
+	 * Sets the commit flag (if requested) and calculates the checksum.
+	 * 
+	 * @param record
+	 *            Record to seal.
+	 * @param commit
+	 *            Is this the last record of an append operation?
+	 */
+	private static void seal(final byte[] record, final boolean commit) {
+		if (commit) {
+			record[RECORD_PREFIX_SIZE] = (byte) (record[RECORD_PREFIX_SIZE] | COMMIT_FLAG);
+		}
+		final CRC32 crc = new CRC32();
+		crc.update(record, RECORD_PREFIX_SIZE, record.length - RECORD_PREFIX_SIZE);
+		ByteBuffer.wrap(record).putInt(4, (int) crc.getValue());
+	}
+
+	/**
+	 * Returns the length of the payload contained in a record.
+	 * 
+	 * @param record
+	 *            Record created by {@link #createRecord(byte, String, DomainEvent)}.
+	 * 
+	 * @return Payload length.
+	 */
+	private static int payloadLength(final byte[] record) {
+		final ByteBuffer buf = ByteBuffer.wrap(record);
+		final int typeLength = buf.getShort(RECORD_PREFIX_SIZE + 1) & 0xFFFF;
+		final int idLength = buf.getShort(RECORD_PREFIX_SIZE + 3 + typeLength) & 0xFFFF;
+		return record.length - RECORD_PREFIX_SIZE - RECORD_FIXED_HEADER_SIZE - typeLength
+		        - idLength;
+	}
+
+	private static String readString(final ByteBuffer buf) {
+		final int length = buf.getShort() & 0xFFFF;
+		final String str = new String(buf.array(), buf.position(), length, UTF8);
+		buf.position(buf.position() + length);
+		return str;
+	}
+
+	private static long toPosition(final int segmentIndex, final int offset) {
+		return (((long) segmentIndex) << 32) | (offset & 0xFFFFFFFFL);
+	}
+
+	private ByteBuffer slice(final long position, final int length) {
+		return slice(segments.get((int) (position >>> 32)), (int) position, length);
+	}
+
+	private static ByteBuffer slice(final Segment segment, final int offset, final int length) {
+		final ByteBuffer buf = segment.buffer.duplicate();
+		buf.position(offset);
+		buf.limit(offset + length);
+		return buf.slice();
+	}
+
+	private static DomainEvent deserialize(final EventSerializer serializer,
+	        final ByteBuffer payload) {
+		if (serializer instanceof BinaryEventSerializer) {
+			// Read directly from the mapped segment
+			return ((BinaryEventSerializer) serializer).deserialize(payload);
+		}
+		final byte[] bytes = new byte[payload.remaining()];
+		payload.duplicate().get(bytes);
+		return serializer.deserialize(bytes);
+	}
+
+	private AggregateIndex findIndex(final String type, final String aggregateId) {
+		final Map<String, AggregateIndex> typeIndex = index.get(type);
+		if (typeIndex == null) {
+			return null;
+		}
+		return typeIndex.get(aggregateId);
+	}
+
+	private AggregateIndex getOrCreateIndex(final String type, final String aggregateId) {
+		Map<String, AggregateIndex> typeIndex = index.get(type);
+		if (typeIndex == null) {
+			typeIndex = new HashMap<String, AggregateIndex>();
+			index.put(type, typeIndex);
+		}
+		AggregateIndex aggregateIndex = typeIndex.get(aggregateId);
+		if (aggregateIndex == null) {
+			aggregateIndex = new AggregateIndex();
+			typeIndex.put(aggregateId, aggregateIndex);
+		}
+		return aggregateIndex;
+	}
+
+	private void ensureOpen() {
+		if (!opened) {
+			throw new IllegalStateException("The event store is not open: " + baseDir);
+		}
+	}
+
+	private File[] listSegmentFiles() {
+		final File[] files = baseDir.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(final File dir, final String name) {
+				return name.endsWith(SEGMENT_SUFFIX);
+			}
+		});
+		Arrays.sort(files);
+		for (int i = 0; i < files.length; i++) {
+			if (!files[i].getName().equals(segmentName(i))) {
+				throw new EventStoreException("Missing segment '" + segmentName(i) + "' in: "
+				        + baseDir);
+			}
+		}
+		return files;
+	}
+
+	private void deleteTemporaryFiles() {
+		final File[] files = baseDir.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(final File dir, final String name) {
+				return name.endsWith(SEGMENT_SUFFIX + TMP_SUFFIX);
+			}
+		});
+		for (final File file : files) {
+			if (!file.delete()) {
+				throw new EventStoreException("Cannot delete temporary segment: " + file);
+			}
+		}
+	}
+
+	private void closeSegments() {
+		for (final Segment segment : segments) {
+			try {
+				segment.raf.close();
+			} catch (final IOException ex) {
+				// Nothing we can do about it
+			}
+		}
+		segments.clear();
+	}
+
+	private static String segmentName(final int segmentIndex) {
+		final String str = "0000000000" + segmentIndex;
+		return str.substring(str.length() - 10) + SEGMENT_SUFFIX;
+	}
+
+	private static Segment openSegment(final File file, final int segmentIndex)
+	        throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			final FileChannel channel = raf.getChannel();
+			final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+			        channel.size());
+			return new Segment(segmentIndex, file, raf, buffer);
+		} catch (final IOException ex) {
+			raf.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * A memory mapped segment file.
+	 */
+	private static final class Segment {
+
+		private final int index;
+
+		private final File file;
+
+		private final RandomAccessFile raf;
+
+		private final MappedByteBuffer buffer;
+
+		private final int size;
+
+		/**
+		 * Constructor with all data.
+		 * 
+		 * @param index
+		 *            Zero based index of the segment.
+		 * @param file
+		 *            Segment file.
+		 * @param raf
+		 *            Opened file.
+		 * @param buffer
+		 *            Mapped content of the file.
+		 */
+		public Segment(final int index, final File file, final RandomAccessFile raf,
+		        final MappedByteBuffer buffer) {
+			super();
+			this.index = index;
+			this.file = file;
+			this.raf = raf;
+			this.buffer = buffer;
+			this.size = buffer.capacity();
+		}
+
+	}
+
+	/**
+	 * Positions of all events and the latest snapshot of one aggregate.
+	 */
+	private static final class AggregateIndex {
+
+		private long[] positions = new long[8];
+
+		private int[] lengths = new int[8];
+
+		private long[] sequenceNumbers = new long[8];
+
+		private int size;
+
+		private long snapshotPosition = -1;
+
+		private int snapshotLength;
+
+		private long snapshotSequenceNumber;
+
+		/**
+		 * Adds an event.
+		 * 
+		 * @param position
+		 *            Segment and offset of the payload.
+		 * @param length
+		 *            Length of the payload.
+		 * @param sequenceNumber
+		 *            Sequence number of the event.
+		 */
+		public void add(final long position, final int length, final long sequenceNumber) {
+			if (size == positions.length) {
+				positions = Arrays.copyOf(positions, size * 2);
+				lengths = Arrays.copyOf(lengths, size * 2);
+				sequenceNumbers = Arrays.copyOf(sequenceNumbers, size * 2);
+			}
+			positions[size] = position;
+			lengths[size] = length;
+			sequenceNumbers[size] = sequenceNumber;
+			size++;
+		}
+
+		/**
+		 * Sets the latest snapshot.
+		 * 
+		 * @param position
+		 *            Segment and offset of the payload.
+		 * @param length
+		 *            Length of the payload.
+		 * @param sequenceNumber
+		 *            Sequence number of the snapshot.
+		 */
+		public void setSnapshot(final long position, final int length,
+		        final long sequenceNumber) {
+			snapshotPosition = position;
+			snapshotLength = length;
+			snapshotSequenceNumber = sequenceNumber;
+		}
+
+		/**
+		 * Determines if a snapshot is available.
+		 * 
+		 * @return If there is a snapshot <code>true</code> else
+		 *         <code>false</code>.
+		 */
+		public boolean hasSnapshot() {
+			return snapshotPosition >= 0;
+		}
+
+	}
+
+	/**
+	 * Record that is not yet in the index: Found at startup before its commit
+	 * flag or written but not flushed yet.
+	 */
+	private static final class PendingRecord {
+
+		private final byte kind;
+
+		private final int recordPos;
+
+		private final String type;
+
+		private final String aggregateId;
+
+		private final long sequenceNumber;
+
+		private final long position;
+
+		private final int length;
+
+		/**
+		 * Constructor with all data.
+		 * 
+		 * @param kind
+		 *            Event or snapshot.
+		 * @param recordPos
+		 *            Position of the record inside the segment.
+		 * @param type
+		 *            Type of the aggregate.
+		 * @param aggregateId
+		 *            Aggregate identifier.
+		 * @param sequenceNumber
+		 *            Sequence number of the event.
+		 * @param position
+		 *            Segment and offset of the payload.
+		 * @param length
+		 *            Length of the payload.
+		 */
+		public PendingRecord(final byte kind, final int recordPos, final String type,
+		        final String aggregateId, final long sequenceNumber, final long position,
+		        final int length) {
+			super();
+			this.kind = kind;
+			this.recordPos = recordPos;
+			this.type = type;
+			this.aggregateId = aggregateId;
+			this.sequenceNumber = sequenceNumber;
+			this.position = position;
+			this.length = length;
+		}
+
+	}
+
+	/**
+	 * Result of scanning a segment.
+	 */
+	private static final class ScanResult {
+
+		private final int position;
+
+		private final boolean closed;
+
+		private final boolean corrupt;
+
+		/**
+		 * Constructor with all data.
+		 * 
+		 * @param position
+		 *            Position where the scan stopped.
+		 * @param closed
+		 *            The segment was closed by a rollover.
+		 * @param corrupt
+		 *            An invalid record was found at the position.
+		 */
+		public ScanResult(final int position, final boolean closed, final boolean corrupt) {
+			super();
+			this.position = position;
+			this.closed = closed;
+			this.corrupt = corrupt;
+		}
+
+	}
+
+	/**
+	 * Receives the records found while scanning a segment.
+	 */
+	private static interface RecordHandler {
+
+		/**
+		 * Handles a single valid record.
+		 * 
+		 * @param segment
+		 *            Segment that contains the record.
+		 * @param kind
+		 *            Event or snapshot.
+		 * @param commit
+		 *            Is this the last record of an append operation?
+		 * @param recordPos
+		 *            Position of the record inside the segment.
+		 * @param type
+		 *            Type of the aggregate.
+		 * @param aggregateId
+		 *            Aggregate identifier.
+		 * @param sequenceNumber
+		 *            Sequence number of the event.
+		 * @param payloadPos
+		 *            Position of the serialized event inside the segment.
+		 * @param payloadLength
+		 *            Length of the serialized event.
+		 */
+		public void handle(Segment segment, byte kind, boolean commit, int recordPos, String type,
+		        String aggregateId, long sequenceNumber, int payloadPos, int payloadLength);
+
+	}
+
+	/**
+	 * Stream that deserializes the events lazily from the mapped segments.
+	 */
+	private static final class MappedEventStream implements DomainEventStream {
+
+		private final EventSerializer serializer;
+
+		private final List<ByteBuffer> payloads;
+
+		private int next;
+
+		private DomainEvent peeked;
+
+		/**
+		 * Constructor with all data.
+		 * 
+		 * @param serializer
+		 *            Serializer used to restore the events.
+		 * @param payloads
+		 *            Serialized events.
+		 */
+		public MappedEventStream(final EventSerializer serializer, final List<ByteBuffer> payloads) {
+			super();
+			this.serializer = serializer;
+			this.payloads = payloads;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return (peeked != null) || (next < payloads.size());
+		}
+
+		@Override
+		public DomainEvent next() {
+			final DomainEvent event = peek();
+			peeked = null;
+			return event;
+		}
+
+		@Override
+		public DomainEvent peek() {
+			if (peeked == null) {
+				if (next >= payloads.size()) {
+					throw new NoSuchElementException();
+				}
+				peeked = deserialize(serializer, payloads.get(next));
+				payloads.set(next, null);
+				next++;
+			}
+			return peeked;
+		}
+
+	}
+
+}
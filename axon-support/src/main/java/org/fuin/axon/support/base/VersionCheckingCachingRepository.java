@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.axon.support.base;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.jsr107cache.Cache;
+
+import org.axonframework.domain.AggregateIdentifier;
+import org.axonframework.eventsourcing.CachingGenericEventSourcingRepository;
+import org.axonframework.eventsourcing.EventSourcedAggregateRoot;
+
+/**
+ * Caching repository that verifies the version of a cached aggregate against
+ * the event store before it is returned. If events were added to the store
+ * without using this repository, the cached instance is discarded and the
+ * aggregate is loaded from the store again.<br>
+ * <br>
+ * Access to an aggregate is serialized by the pessimistic per-aggregate lock
+ * of the underlying locking repository. Use a {@link LruCache} to limit the
+ * number of cached aggregates and to get hit/miss statistics.
+ * 
+ * @param <T>
+ *            Type of the aggregate.
+ */
+public class VersionCheckingCachingRepository<T extends EventSourcedAggregateRoot> extends
+        CachingGenericEventSourcingRepository<T> {
+
+	private final AtomicInteger staleEntries;
+
+	private Cache cache;
+
+	private AggregateVersionProvider versionProvider;
+
+	/**
+	 * Constructor with aggregate type.
+	 * 
+	 * @param aggregateType
+	 *            Type of the aggregate.
+	 */
+	public VersionCheckingCachingRepository(final Class<T> aggregateType) {
+		super(aggregateType);
+		this.staleEntries = new AtomicInteger();
+	}
+
+	@Override
+	public final void setCache(final Cache cache) {
+		super.setCache(cache);
+		this.cache = cache;
+	}
+
+	/**
+	 * Returns the cache.
+	 * 
+	 * @return Cache or NULL if no cache was set.
+	 */
+	public final Cache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Sets the source of the current aggregate versions. If no provider is
+	 * set, cached aggregates are returned without a check.
+	 * 
+	 * @param versionProvider
+	 *            Usually the event store.
+	 */
+	public final void setVersionProvider(final AggregateVersionProvider versionProvider) {
+		this.versionProvider = versionProvider;
+	}
+
+	/**
+	 * Returns the source of the current aggregate versions.
+	 * 
+	 * @return Version provider or NULL.
+	 */
+	public final AggregateVersionProvider getVersionProvider() {
+		return versionProvider;
+	}
+
+	/**
+	 * Returns the number of cached aggregates that were outdated.
+	 * 
+	 * @return Number of discarded cache entries.
+	 */
+	public final int getStaleEntries() {
+		return staleEntries.get();
+	}
+
+	@Override
+	public T doLoad(final AggregateIdentifier identifier, final Long expectedVersion) {
+		final T aggregate = super.doLoad(identifier, expectedVersion);
+		if ((versionProvider == null) || (cache == null)) {
+			return aggregate;
+		}
+		final Long storeVersion = versionProvider.getLastSequenceNumber(getTypeIdentifier(),
+		        identifier);
+		if ((storeVersion == null) || storeVersion.equals(aggregate.getVersion())) {
+			return aggregate;
+		}
+		staleEntries.incrementAndGet();
+		cache.remove(identifier);
+		return super.doLoad(identifier, expectedVersion);
+	}
+
+}
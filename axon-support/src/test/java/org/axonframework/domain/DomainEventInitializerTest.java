@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.axonframework.domain;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Test {@link DomainEventInitializer}.
+ */
+// TESTCODE:BEGIN
+public class DomainEventInitializerTest {
+
+	@Test
+	public final void testInitialize() {
+
+		// PREPARE
+		final StubDomainEvent event = new StubDomainEvent();
+		final AggregateIdentifier id = new StringAggregateIdentifier("abc");
+
+		// TEST
+		DomainEventInitializer.initialize(event, id, 7);
+
+		// ASSERT
+		assertThat(event.getAggregateIdentifier()).isEqualTo(id);
+		assertThat(event.getSequenceNumber()).isEqualTo(7L);
+
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public final void testAlreadyInitialized() {
+		final StubDomainEvent event = new StubDomainEvent(new StringAggregateIdentifier("abc"), 1);
+		DomainEventInitializer.initialize(event, new StringAggregateIdentifier("def"), 2);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public final void testNullIdentifier() {
+		DomainEventInitializer.initialize(new StubDomainEvent(), null, 0);
+	}
+
+}
+// TESTCODE:END
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.axon.support.base;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.nio.ByteBuffer;
+
+import org.axonframework.domain.DomainEvent;
+import org.axonframework.domain.StringAggregateIdentifier;
+import org.axonframework.domain.StubDomainEvent;
+import org.axonframework.eventstore.XStreamEventSerializer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test {@link BinaryEventSerializer}.
+ * 
+ * @author Michael Schnell
+ */
+// TESTCODE:BEGIN
+public class BinaryEventSerializerTest {
+
+	private XStreamEventSerializer fallback;
+
+	private BinaryEventSerializer testee;
+
+	@Before
+	public final void setUp() {
+		fallback = new XStreamEventSerializer();
+		testee = new BinaryEventSerializer(fallback, 64);
+		testee.addCodec(new StubDomainEventCodec());
+	}
+
+	@After
+	public final void tearDown() {
+		testee = null;
+		fallback = null;
+	}
+
+	@Test
+	public final void testSerializeDeserialize() {
+
+		// PREPARE
+		final StubDomainEvent event = new StubDomainEvent(new UUIDAggregateIdentifier(), 5);
+
+		// TEST
+		final byte[] data = testee.serialize(event);
+		final DomainEvent copy = testee.deserialize(data);
+
+		// ASSERT
+		assertThat(ByteBuffer.wrap(data).getInt()).isEqualTo(BinaryEventSerializer.MAGIC);
+		assertThat(copy).isInstanceOf(StubDomainEvent.class);
+		assertThat(copy).isEqualTo(event);
+		assertThat(copy.getAggregateIdentifier()).isEqualTo(event.getAggregateIdentifier());
+		assertThat(copy.getSequenceNumber()).isEqualTo(5L);
+		assertThat(copy.getEventIdentifier()).isEqualTo(event.getEventIdentifier());
+		assertThat(copy.getTimestamp()).isEqualTo(event.getTimestamp());
+
+	}
+
+	@Test
+	public final void testDeserializeDirectBuffer() throws IllegalAggregateIdentifierException {
+
+		// PREPARE
+		final StubDomainEvent event = new StubDomainEvent(new LongAggregateIdentifier(4711L), 1);
+		final byte[] data = testee.serialize(event);
+		final ByteBuffer buf = ByteBuffer.allocateDirect(data.length + 10);
+		buf.position(10);
+		buf.put(data);
+		buf.position(10);
+
+		// TEST
+		final DomainEvent copy = testee.deserialize(buf);
+
+		// ASSERT
+		assertThat(copy).isEqualTo(event);
+		assertThat(copy.getAggregateIdentifier()).isEqualTo(event.getAggregateIdentifier());
+		assertThat(buf.position()).isEqualTo(10);
+
+	}
+
+	@Test
+	public final void testBufferGrows() {
+
+		// PREPARE
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append('x');
+		}
+		final StubDomainEvent event = new StubDomainEvent(new StringAggregateIdentifier(sb
+		        .toString()), 0);
+
+		// TEST
+		final DomainEvent copy = testee.deserialize(testee.serialize(event));
+
+		// ASSERT
+		assertThat(copy.getAggregateIdentifier().asString()).isEqualTo(sb.toString());
+
+	}
+
+	@Test
+	public final void testFallback() {
+
+		// PREPARE
+		final BinaryEventSerializer withoutCodec = new BinaryEventSerializer(fallback);
+		final StubDomainEvent event = new StubDomainEvent(new UUIDAggregateIdentifier(), 2);
+
+		// TEST
+		final byte[] data = withoutCodec.serialize(event);
+		final DomainEvent copy1 = testee.deserialize(data);
+		final DomainEvent copy2 = testee.deserialize(ByteBuffer.wrap(data));
+
+		// ASSERT
+		assertThat(ByteBuffer.wrap(data).getInt()).isNotEqualTo(BinaryEventSerializer.MAGIC);
+		assertThat(copy1).isEqualTo(event);
+		assertThat(copy2).isEqualTo(event);
+
+	}
+
+	@Test
+	public final void testFallbackWithoutSequenceNumber() {
+
+		// PREPARE
+		final StubDomainEvent event = new StubDomainEvent(new UUIDAggregateIdentifier());
+
+		// TEST
+		final byte[] data = testee.serialize(event);
+		final DomainEvent copy = testee.deserialize(data);
+
+		// ASSERT
+		assertThat(ByteBuffer.wrap(data).getInt()).isNotEqualTo(BinaryEventSerializer.MAGIC);
+		assertThat(copy.getAggregateIdentifier()).isEqualTo(event.getAggregateIdentifier());
+		assertThat(copy.getSequenceNumber()).isNull();
+
+	}
+
+	@Test
+	public final void testPutGetString() {
+
+		// PREPARE
+		final ByteBuffer buf = ByteBuffer.allocate(100);
+
+		// TEST
+		BinaryEventSerializer.putString(buf, "\u00e4bc");
+		BinaryEventSerializer.putString(buf, null);
+		BinaryEventSerializer.putString(buf, "");
+		buf.flip();
+
+		// ASSERT
+		assertThat(BinaryEventSerializer.getString(buf)).isEqualTo("\u00e4bc");
+		assertThat(BinaryEventSerializer.getString(buf)).isNull();
+		assertThat(BinaryEventSerializer.getString(buf)).isEqualTo("");
+		assertThat(buf.remaining()).isEqualTo(0);
+
+	}
+
+	/**
+	 * Codec for the stub event that has no data of its own.
+	 */
+	private static final class StubDomainEventCodec implements EventCodec<StubDomainEvent> {
+
+		@Override
+		public Class<StubDomainEvent> getEventClass() {
+			return StubDomainEvent.class;
+		}
+
+		@Override
+		public int getVersion() {
+			return 1;
+		}
+
+		@Override
+		public void write(final ByteBuffer buf, final StubDomainEvent event) {
+			buf.putLong(event.getVersionUID());
+		}
+
+		@Override
+		public StubDomainEvent read(final ByteBuffer buf, final int version) {
+			buf.getLong();
+			return new StubDomainEvent();
+		}
+
+	}
+
+}
+// TESTCODE:END
@@ -0,0 +1,433 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.axon.support.base;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import org.axonframework.domain.AggregateIdentifier;
+import org.axonframework.domain.DomainEvent;
+import org.axonframework.domain.DomainEventStream;
+import org.axonframework.domain.SimpleDomainEventStream;
+import org.axonframework.domain.StubDomainEvent;
+import org.axonframework.domain.UUIDAggregateIdentifier;
+import org.axonframework.eventstore.EventStoreException;
+import org.axonframework.eventstore.EventStreamNotFoundException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test {@link GroupCommitEventStore}.
+ * 
+ * @author Michael Schnell
+ */
+// TESTCODE:BEGIN
+public class GroupCommitEventStoreTest {
+
+	private StubEventStore delegate;
+
+	private GroupCommitEventStore testee;
+
+	@Before
+	public final void setUp() {
+		delegate = new StubEventStore();
+		testee = new GroupCommitEventStore(delegate);
+		testee.setMaxDelayMillis(100);
+		testee.start();
+	}
+
+	@After
+	public final void tearDown() {
+		testee.stop();
+		testee = null;
+		delegate = null;
+	}
+
+	@Test
+	public final void testStartStop() {
+
+		// TEST & ASSERT
+		assertThat(delegate.flushOnAppend).isFalse();
+		testee.stop();
+		assertThat(delegate.flushOnAppend).isTrue();
+
+	}
+
+	@Test
+	public final void testAppendIsDurable() {
+
+		// PREPARE
+		final DomainEvent event = new StubDomainEvent(new UUIDAggregateIdentifier(), 0);
+
+		// TEST
+		testee.appendEvents("test", new SimpleDomainEventStream(event));
+
+		// ASSERT
+		assertThat(delegate.isDurable(event)).isTrue();
+		assertThat(delegate.flushCount).isEqualTo(1);
+
+	}
+
+	@Test
+	public final void testSnapshotIsDurable() {
+
+		// PREPARE
+		final DomainEvent event = new StubDomainEvent(new UUIDAggregateIdentifier(), 3);
+
+		// TEST
+		testee.appendSnapshotEvent("test", event);
+
+		// ASSERT
+		assertThat(delegate.isDurable(event)).isTrue();
+		assertThat(delegate.snapshots).containsOnly(event);
+
+	}
+
+	@Test
+	public final void testConcurrentAppendsShareFlush() throws InterruptedException {
+
+		// PREPARE
+		final int threadCount = 10;
+		final CountDownLatch startSignal = new CountDownLatch(1);
+		final List<Boolean> results = Collections.synchronizedList(new ArrayList<Boolean>());
+		final List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < threadCount; i++) {
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					final AggregateIdentifier id = new UUIDAggregateIdentifier();
+					final DomainEvent event1 = new StubDomainEvent(id, 0);
+					final DomainEvent event2 = new StubDomainEvent(id, 1);
+					try {
+						startSignal.await();
+					} catch (final InterruptedException ex) {
+						throw new RuntimeException(ex);
+					}
+					testee.appendEvents("test", new SimpleDomainEventStream(event1, event2));
+					results.add(delegate.isDurable(event1) && delegate.isDurable(event2));
+				}
+			});
+		}
+
+		// TEST
+		for (final Thread thread : threads) {
+			thread.start();
+		}
+		startSignal.countDown();
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+
+		// ASSERT
+		assertThat(results).hasSize(threadCount);
+		assertThat(results).containsOnly(Boolean.TRUE);
+		assertThat(delegate.events).hasSize(threadCount * 2);
+		assertThat(delegate.flushCount).isLessThan(threadCount);
+
+	}
+
+	@Test
+	public final void testMaxBatchSize() {
+
+		// PREPARE
+		testee.stop();
+		testee.setMaxDelayMillis(10000);
+		testee.setMaxBatchSize(1);
+		testee.start();
+		final DomainEvent event = new StubDomainEvent(new UUIDAggregateIdentifier(), 0);
+		final long start = System.currentTimeMillis();
+
+		// TEST
+		testee.appendEvents("test", new SimpleDomainEventStream(event));
+
+		// ASSERT
+		assertThat(System.currentTimeMillis() - start).isLessThan(5000);
+		assertThat(delegate.isDurable(event)).isTrue();
+
+	}
+
+	@Test(expected = EventStoreException.class)
+	public final void testAppendError() {
+		testee.appendEvents("error", new SimpleDomainEventStream(new StubDomainEvent(
+		        new UUIDAggregateIdentifier(), 0)));
+	}
+
+	@Test
+	public final void testFlushErrorRollsBack() {
+
+		// PREPARE
+		final DomainEvent durable = new StubDomainEvent(new UUIDAggregateIdentifier(), 0);
+		final DomainEvent failed = new StubDomainEvent(new UUIDAggregateIdentifier(), 0);
+		testee.appendEvents("test", new SimpleDomainEventStream(durable));
+		delegate.failFlush = true;
+
+		// TEST
+		try {
+			testee.appendEvents("test", new SimpleDomainEventStream(failed));
+			throw new IllegalStateException("Expected " + EventStoreException.class);
+		} catch (final EventStoreException ex) {
+			// Expected
+		}
+
+		// ASSERT
+		assertThat(delegate.rollbackCount).isEqualTo(1);
+		assertThat(delegate.events).containsExactly(durable);
+
+	}
+
+	@Test
+	public final void testFlushErrorHidesEventsFromReaders() {
+
+		// PREPARE
+		testee.stop();
+		final File baseDir = new File("target/group-commit-event-store/" + UUID.randomUUID());
+		final SegmentedEventStore store = new SegmentedEventStore();
+		store.setBaseDir(baseDir);
+		store.open();
+		final FailingFlushEventStore failing = new FailingFlushEventStore(store);
+		testee = new GroupCommitEventStore(failing);
+		testee.start();
+		final AggregateIdentifier id = new UUIDAggregateIdentifier();
+		testee.appendEvents("test", new SimpleDomainEventStream(new StubDomainEvent(id, 0)));
+		failing.failFlush = true;
+
+		try {
+
+			// TEST
+			try {
+				testee.appendEvents("test", new SimpleDomainEventStream(new StubDomainEvent(
+				        id, 1)));
+				throw new IllegalStateException("Expected " + EventStoreException.class);
+			} catch (final EventStoreException ex) {
+				// Expected
+			}
+			failing.failFlush = false;
+
+			// ASSERT
+			assertThat(testee.getLastSequenceNumber("test", id)).isEqualTo(0L);
+			testee.appendEvents("test", new SimpleDomainEventStream(new StubDomainEvent(id, 1)));
+			testee.stop();
+			store.close();
+			store.open();
+			final DomainEventStream stream = store.readEvents("test", id);
+			assertThat(stream.next().getSequenceNumber()).isEqualTo(0L);
+			assertThat(stream.next().getSequenceNumber()).isEqualTo(1L);
+			assertThat(stream.hasNext()).isFalse();
+
+		} finally {
+			testee.stop();
+			store.close();
+		}
+
+	}
+
+	@Test
+	public final void testFlushErrorNewAggregateNotVisible() {
+
+		// PREPARE
+		testee.stop();
+		final File baseDir = new File("target/group-commit-event-store/" + UUID.randomUUID());
+		final SegmentedEventStore store = new SegmentedEventStore();
+		store.setBaseDir(baseDir);
+		store.open();
+		final FailingFlushEventStore failing = new FailingFlushEventStore(store);
+		failing.failFlush = true;
+		failing.skipRollback = true;
+		testee = new GroupCommitEventStore(failing);
+		testee.start();
+		final AggregateIdentifier id = new UUIDAggregateIdentifier();
+
+		try {
+
+			// TEST
+			try {
+				testee.appendEvents("test", new SimpleDomainEventStream(new StubDomainEvent(
+				        id, 0)));
+				throw new IllegalStateException("Expected " + EventStoreException.class);
+			} catch (final EventStoreException ex) {
+				// Expected
+			}
+
+			// ASSERT
+			assertThat(testee.getLastSequenceNumber("test", id)).isNull();
+			try {
+				testee.readEvents("test", id);
+				throw new IllegalStateException("Expected "
+				        + EventStreamNotFoundException.class);
+			} catch (final EventStreamNotFoundException ex) {
+				// Expected
+			}
+
+		} finally {
+			testee.stop();
+			store.close();
+		}
+
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public final void testNotStarted() {
+		testee.stop();
+		testee.appendEvents("test", new SimpleDomainEventStream(new StubDomainEvent(
+		        new UUIDAggregateIdentifier(), 0)));
+	}
+
+	/**
+	 * Remembers all events and which of them were flushed.
+	 */
+	private static final class StubEventStore implements FlushableEventStore {
+
+		private final List<DomainEvent> events = new ArrayList<DomainEvent>();
+
+		private final List<DomainEvent> snapshots = new ArrayList<DomainEvent>();
+
+		private volatile boolean flushOnAppend = true;
+
+		private int durableEvents;
+
+		private int durableSnapshots;
+
+		private int flushCount;
+
+		private int rollbackCount;
+
+		private volatile boolean failFlush;
+
+		@Override
+		public void setFlushOnAppend(final boolean flushOnAppend) {
+			this.flushOnAppend = flushOnAppend;
+		}
+
+		@Override
+		public synchronized void flush() {
+			if (failFlush) {
+				throw new IllegalStateException("Flush failed");
+			}
+			durableEvents = events.size();
+			durableSnapshots = snapshots.size();
+			flushCount++;
+		}
+
+		@Override
+		public synchronized void rollback() {
+			events.subList(durableEvents, events.size()).clear();
+			snapshots.subList(durableSnapshots, snapshots.size()).clear();
+			rollbackCount++;
+		}
+
+		@Override
+		public synchronized void appendEvents(final String type, final DomainEventStream stream) {
+			if ("error".equals(type)) {
+				throw new IllegalArgumentException("Error");
+			}
+			while (stream.hasNext()) {
+				events.add(stream.next());
+			}
+		}
+
+		@Override
+		public synchronized void appendSnapshotEvent(final String type,
+		        final DomainEvent snapshotEvent) {
+			snapshots.add(snapshotEvent);
+		}
+
+		@Override
+		public DomainEventStream readEvents(final String type,
+		        final AggregateIdentifier identifier) {
+			throw new UnsupportedOperationException();
+		}
+
+		public synchronized boolean isDurable(final DomainEvent event) {
+			final int idx = events.indexOf(event);
+			if (idx > -1) {
+				return idx < durableEvents;
+			}
+			final int snapshotIdx = snapshots.indexOf(event);
+			return (snapshotIdx > -1) && (snapshotIdx < durableSnapshots);
+		}
+
+	}
+
+	/**
+	 * Passes everything to a real store but fails to flush on request.
+	 */
+	private static final class FailingFlushEventStore implements FlushableEventStore,
+	        AggregateVersionProvider {
+
+		private final SegmentedEventStore store;
+
+		private volatile boolean failFlush;
+
+		private volatile boolean skipRollback;
+
+		public FailingFlushEventStore(final SegmentedEventStore store) {
+			super();
+			this.store = store;
+		}
+
+		@Override
+		public void setFlushOnAppend(final boolean flushOnAppend) {
+			store.setFlushOnAppend(flushOnAppend);
+		}
+
+		@Override
+		public void flush() {
+			if (failFlush) {
+				throw new IllegalStateException("Flush failed");
+			}
+			store.flush();
+		}
+
+		@Override
+		public void rollback() {
+			if (!skipRollback) {
+				store.rollback();
+			}
+		}
+
+		@Override
+		public void appendEvents(final String type, final DomainEventStream events) {
+			store.appendEvents(type, events);
+		}
+
+		@Override
+		public void appendSnapshotEvent(final String type, final DomainEvent snapshotEvent) {
+			store.appendSnapshotEvent(type, snapshotEvent);
+		}
+
+		@Override
+		public DomainEventStream readEvents(final String type,
+		        final AggregateIdentifier identifier) {
+			return store.readEvents(type, identifier);
+		}
+
+		@Override
+		public Long getLastSequenceNumber(final String type,
+		        final AggregateIdentifier identifier) {
+			return store.getLastSequenceNumber(type, identifier);
+		}
+
+	}
+
+}
+// TESTCODE:END
@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.axon.support.base;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.axonframework.commandhandling.CommandCallback;
+import org.axonframework.commandhandling.CommandHandler;
+import org.axonframework.commandhandling.SimpleCommandBus;
+import org.axonframework.commandhandling.callbacks.FutureCallback;
+import org.axonframework.unitofwork.UnitOfWork;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test {@link LaneCommandBus}.
+ * 
+ * @author Michael Schnell
+ */
+// TESTCODE:BEGIN
+public class LaneCommandBusTest {
+
+	private SimpleCommandBus simpleCommandBus;
+
+	private LaneCommandBus testee;
+
+	@Before
+	public final void setUp() {
+		simpleCommandBus = new SimpleCommandBus();
+		testee = new LaneCommandBus(simpleCommandBus);
+		testee.setRoutingKeyResolver(new CommandRoutingKeyResolver() {
+			@Override
+			public Object getRoutingKey(final Object command) {
+				return ((String) command).substring(0, 1);
+			}
+		});
+	}
+
+	@After
+	public final void tearDown() {
+		testee.stop();
+		testee = null;
+		simpleCommandBus = null;
+	}
+
+	@Test
+	public final void testSameKeyIsExecutedInOrder() throws InterruptedException,
+	        ExecutionException {
+
+		// PREPARE
+		final Map<String, List<String>> executed = Collections
+		        .synchronizedMap(new HashMap<String, List<String>>());
+		final Map<String, String> threads = Collections
+		        .synchronizedMap(new HashMap<String, String>());
+		testee.subscribe(String.class, new CommandHandler<String>() {
+			@Override
+			public Object handle(final String command, final UnitOfWork unitOfWork) {
+				final String key = command.substring(0, 1);
+				final String threadName = Thread.currentThread().getName();
+				synchronized (executed) {
+					if (!executed.containsKey(key)) {
+						executed.put(key, new ArrayList<String>());
+						threads.put(key, threadName);
+					}
+					executed.get(key).add(command);
+					assertThat(threads.get(key)).isEqualTo(threadName);
+				}
+				return command;
+			}
+		});
+		testee.setLanes(3);
+		testee.start();
+
+		// TEST
+		final List<FutureCallback<Object>> callbacks = new ArrayList<FutureCallback<Object>>();
+		for (int i = 0; i < 100; i++) {
+			for (final String key : new String[] { "a", "b", "c", "d" }) {
+				final FutureCallback<Object> callback = new FutureCallback<Object>();
+				testee.dispatch(key + i, callback);
+				callbacks.add(callback);
+			}
+		}
+		for (final FutureCallback<Object> callback : callbacks) {
+			callback.get();
+		}
+
+		// ASSERT
+		assertThat(executed).hasSize(4);
+		for (final String key : new String[] { "a", "b", "c", "d" }) {
+			final List<String> commands = executed.get(key);
+			assertThat(commands).hasSize(100);
+			for (int i = 0; i < 100; i++) {
+				assertThat(commands.get(i)).isEqualTo(key + i);
+			}
+		}
+		assertThat(testee.getRejected()).isEqualTo(0);
+
+	}
+
+	@Test
+	public final void testRejectWhenFull() throws InterruptedException, ExecutionException {
+
+		// PREPARE
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		testee.subscribe(String.class, new CommandHandler<String>() {
+			@Override
+			public Object handle(final String command, final UnitOfWork unitOfWork)
+			        throws InterruptedException {
+				started.countDown();
+				release.await(10, TimeUnit.SECONDS);
+				return command;
+			}
+		});
+		testee.setLanes(1);
+		testee.setQueueCapacity(1);
+		testee.setMaxWaitMillis(0);
+		testee.start();
+		final FutureCallback<Object> first = new FutureCallback<Object>();
+		testee.dispatch("a1", first);
+		assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+		final FutureCallback<Object> second = new FutureCallback<Object>();
+		testee.dispatch("a2", second);
+
+		// TEST
+		final FutureCallback<Object> third = new FutureCallback<Object>();
+		testee.dispatch("a3", third);
+
+		// ASSERT
+		assertThat(third.isDone()).isTrue();
+		try {
+			third.get();
+			throw new IllegalStateException("Expected " + RejectedExecutionException.class);
+		} catch (final ExecutionException ex) {
+			assertThat(ex.getCause()).isInstanceOf(RejectedExecutionException.class);
+		}
+		assertThat(testee.getRejected()).isEqualTo(1);
+		release.countDown();
+		assertThat(first.get()).isEqualTo("a1");
+		assertThat(second.get()).isEqualTo("a2");
+
+	}
+
+	@Test
+	public final void testHandlerFailureIsPassedToCallback() throws InterruptedException {
+
+		// PREPARE
+		testee.subscribe(String.class, new CommandHandler<String>() {
+			@Override
+			public Object handle(final String command, final UnitOfWork unitOfWork) {
+				throw new IllegalArgumentException(command);
+			}
+		});
+		testee.start();
+		final FutureCallback<Object> callback = new FutureCallback<Object>();
+
+		// TEST
+		testee.dispatch("a1", callback);
+
+		// ASSERT
+		try {
+			callback.get();
+			throw new IllegalStateException("Expected " + ExecutionException.class);
+		} catch (final ExecutionException ex) {
+			assertThat(ex.getCause()).isInstanceOf(IllegalArgumentException.class);
+		}
+
+	}
+
+	@Test
+	public final void testStopWhileDispatching() throws InterruptedException {
+
+		// PREPARE
+		testee.subscribe(String.class, new CommandHandler<String>() {
+			@Override
+			public Object handle(final String command, final UnitOfWork unitOfWork) {
+				return command;
+			}
+		});
+		testee.setLanes(2);
+		testee.setMaxWaitMillis(1000);
+		final int threadCount = 4;
+		final AtomicInteger accepted = new AtomicInteger();
+		final AtomicInteger completed = new AtomicInteger();
+		final CommandCallback<Object> callback = new CommandCallback<Object>() {
+			@Override
+			public void onSuccess(final Object result) {
+				completed.incrementAndGet();
+			}
+
+			@Override
+			public void onFailure(final Throwable cause) {
+				completed.incrementAndGet();
+			}
+		};
+
+		for (int round = 0; round < 50; round++) {
+			testee.start();
+			final CountDownLatch startSignal = new CountDownLatch(1);
+			final List<Thread> threads = new ArrayList<Thread>();
+			for (int i = 0; i < threadCount; i++) {
+				final String key = String.valueOf((char) ('a' + i));
+				threads.add(new Thread() {
+					@Override
+					public void run() {
+						try {
+							startSignal.await();
+						} catch (final InterruptedException ex) {
+							return;
+						}
+						for (int j = 0; j < 1000; j++) {
+							try {
+								testee.dispatch(key + j, callback);
+								accepted.incrementAndGet();
+							} catch (final IllegalStateException ex) {
+								// Bus already stopped
+								return;
+							}
+						}
+					}
+				});
+			}
+			for (final Thread thread : threads) {
+				thread.start();
+			}
+
+			// TEST
+			startSignal.countDown();
+			testee.stop();
+			for (final Thread thread : threads) {
+				thread.join();
+			}
+
+		}
+
+		// ASSERT
+		assertThat(completed.get()).isEqualTo(accepted.get());
+
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public final void testNotStarted() {
+		testee.dispatch("a1");
+	}
+
+}
+// TESTCODE:END
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.axon.support.base;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.jsr107cache.CacheListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test {@link LruCache}.
+ * 
+ * @author Michael Schnell
+ */
+// TESTCODE:BEGIN
+public class LruCacheTest {
+
+	private List<String> events;
+
+	private LruCache testee;
+
+	@Before
+	public final void setUp() {
+		events = new ArrayList<String>();
+		testee = new LruCache(2);
+		testee.addListener(new CacheListener() {
+			@Override
+			public void onRemove(final Object key) {
+				events.add("remove:" + key);
+			}
+
+			@Override
+			public void onPut(final Object key) {
+				events.add("put:" + key);
+			}
+
+			@Override
+			public void onLoad(final Object key) {
+				events.add("load:" + key);
+			}
+
+			@Override
+			public void onEvict(final Object key) {
+				events.add("evict:" + key);
+			}
+
+			@Override
+			public void onClear() {
+				events.add("clear");
+			}
+		});
+	}
+
+	@After
+	public final void tearDown() {
+		testee = null;
+		events = null;
+	}
+
+	@Test
+	public final void testLeastRecentlyUsedIsEvicted() {
+
+		// PREPARE
+		testee.put("a", "A");
+		testee.put("b", "B");
+		testee.get("a");
+
+		// TEST
+		testee.put("c", "C");
+
+		// ASSERT
+		assertThat(testee.size()).isEqualTo(2);
+		assertThat(testee.containsKey("a")).isTrue();
+		assertThat(testee.containsKey("b")).isFalse();
+		assertThat(testee.containsKey("c")).isTrue();
+		assertThat(testee.getEvictions()).isEqualTo(1);
+		assertThat(events).containsExactly("put:a", "put:b", "put:c", "evict:b");
+
+	}
+
+	@Test
+	public final void testStatistics() {
+
+		// PREPARE
+		testee.put("a", "A");
+
+		// TEST
+		testee.get("a");
+		testee.get("a");
+		testee.get("x");
+		testee.peek("y");
+
+		// ASSERT
+		assertThat(testee.getCacheStatistics().getCacheHits()).isEqualTo(2);
+		assertThat(testee.getCacheStatistics().getCacheMisses()).isEqualTo(1);
+		assertThat(testee.getCacheStatistics().getObjectCount()).isEqualTo(1);
+		assertThat(testee.getHits()).isEqualTo(2);
+		assertThat(testee.getMisses()).isEqualTo(1);
+		testee.getCacheStatistics().clearStatistics();
+		assertThat(testee.getCacheStatistics().getCacheHits()).isEqualTo(0);
+		assertThat(testee.getCacheStatistics().getCacheMisses()).isEqualTo(0);
+
+	}
+
+	@Test
+	public final void testRemoveAndClear() {
+
+		// PREPARE
+		testee.put("a", "A");
+		testee.put("b", "B");
+
+		// TEST
+		final Object removed = testee.remove("a");
+		testee.remove("x");
+		testee.clear();
+
+		// ASSERT
+		assertThat(removed).isEqualTo("A");
+		assertThat(testee.isEmpty()).isTrue();
+		assertThat(events).containsExactly("put:a", "put:b", "remove:a", "clear");
+
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public final void testIllegalMaxSize() {
+		new LruCache(0);
+	}
+
+}
+// TESTCODE:END
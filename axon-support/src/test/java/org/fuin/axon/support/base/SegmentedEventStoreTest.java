@@ -0,0 +1,414 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.axon.support.base;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.axonframework.domain.AggregateIdentifier;
+import org.axonframework.domain.DomainEvent;
+import org.axonframework.domain.DomainEventStream;
+import org.axonframework.domain.SimpleDomainEventStream;
+import org.axonframework.domain.StubDomainEvent;
+import org.axonframework.domain.UUIDAggregateIdentifier;
+import org.axonframework.eventstore.EventStreamNotFoundException;
+import org.axonframework.eventstore.EventVisitor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test {@link SegmentedEventStore}.
+ * 
+ * @author Michael Schnell
+ */
+// TESTCODE:BEGIN
+public class SegmentedEventStoreTest {
+
+	private File baseDir;
+
+	private AggregateIdentifier aggregateIdentifier;
+
+	private SegmentedEventStore testee;
+
+	@Before
+	public final void setUp() {
+		baseDir = new File("target/segmented-event-store/" + UUID.randomUUID());
+		aggregateIdentifier = new UUIDAggregateIdentifier();
+		testee = createEventStore(SegmentedEventStore.DEFAULT_SEGMENT_SIZE);
+	}
+
+	@After
+	public final void tearDown() {
+		testee.close();
+		testee = null;
+		aggregateIdentifier = null;
+		delete(baseDir);
+		baseDir = null;
+	}
+
+	@Test
+	public final void testSaveStreamAndReadBack() {
+
+		// PREPARE
+		final StubDomainEvent event1 = new StubDomainEvent(aggregateIdentifier, 0);
+		final StubDomainEvent event2 = new StubDomainEvent(aggregateIdentifier, 1);
+		final StubDomainEvent event3 = new StubDomainEvent(aggregateIdentifier, 2);
+
+		// TEST
+		testee.appendEvents("test", new SimpleDomainEventStream(event1, event2, event3));
+		final List<DomainEvent> events = toList(testee.readEvents("test", aggregateIdentifier));
+
+		// ASSERT
+		assertThat(events).containsExactly(event1, event2, event3);
+
+	}
+
+	@Test
+	public final void testAppendSnapShot() {
+
+		// PREPARE
+		writeEvents(testee, 0, 5);
+		testee.appendSnapshotEvent("test", new StubDomainEvent(aggregateIdentifier, 4));
+		writeEvents(testee, 5, 5);
+		testee.appendSnapshotEvent("test", new StubDomainEvent(aggregateIdentifier, 9));
+		writeEvents(testee, 10, 2);
+
+		// TEST
+		final List<DomainEvent> events = toList(testee.readEvents("test", aggregateIdentifier));
+
+		// ASSERT
+		assertThat(events).hasSize(3);
+		assertThat(events.get(0).getSequenceNumber()).isEqualTo(9L);
+		assertThat(events.get(1).getSequenceNumber()).isEqualTo(10L);
+		assertThat(events.get(2).getSequenceNumber()).isEqualTo(11L);
+
+	}
+
+	@Test(expected = EventStreamNotFoundException.class)
+	public final void testReadUnknownAggregate() {
+		testee.readEvents("test", aggregateIdentifier);
+	}
+
+	@Test
+	public final void testTypesAreSeparated() {
+
+		// PREPARE
+		writeEvents(testee, 0, 2);
+
+		// TEST & ASSERT
+		try {
+			testee.readEvents("other", aggregateIdentifier);
+		} catch (final EventStreamNotFoundException ex) {
+			// Expected
+			return;
+		}
+		throw new IllegalStateException("Expected " + EventStreamNotFoundException.class);
+
+	}
+
+	@Test
+	public final void testReopen() {
+
+		// PREPARE
+		writeEvents(testee, 0, 3);
+		testee.appendSnapshotEvent("test", new StubDomainEvent(aggregateIdentifier, 1));
+		testee.close();
+
+		// TEST
+		testee = createEventStore(SegmentedEventStore.DEFAULT_SEGMENT_SIZE);
+		writeEvents(testee, 3, 1);
+		final List<DomainEvent> events = toList(testee.readEvents("test", aggregateIdentifier));
+
+		// ASSERT
+		assertThat(events).hasSize(3);
+		assertThat(events.get(0).getSequenceNumber()).isEqualTo(1L);
+		assertThat(events.get(1).getSequenceNumber()).isEqualTo(2L);
+		assertThat(events.get(2).getSequenceNumber()).isEqualTo(3L);
+
+	}
+
+	@Test
+	public final void testRollover() {
+
+		// PREPARE
+		testee.close();
+		delete(baseDir);
+		testee = createEventStore(2048);
+
+		// TEST
+		for (int i = 0; i < 50; i++) {
+			writeEvents(testee, i, 1);
+		}
+		final int segmentCount = testee.getSegmentCount();
+		testee.close();
+		testee = createEventStore(2048);
+
+		// ASSERT
+		assertThat(segmentCount).isGreaterThan(1);
+		assertThat(testee.getSegmentCount()).isEqualTo(segmentCount);
+		final List<DomainEvent> events = toList(testee.readEvents("test", aggregateIdentifier));
+		assertThat(events).hasSize(50);
+		for (int i = 0; i < 50; i++) {
+			assertThat(events.get(i).getSequenceNumber()).isEqualTo((long) i);
+		}
+
+	}
+
+	@Test
+	public final void testRecoverIncompleteAppend() throws IOException {
+
+		// PREPARE
+		writeEvents(testee, 0, 2);
+		testee.close();
+		final File segmentFile = new File(baseDir, "0000000000.seg");
+		final long end = findEndOfData(segmentFile);
+		// Simulate a crash: Record header was written but not the content
+		final RandomAccessFile raf = new RandomAccessFile(segmentFile, "rw");
+		try {
+			raf.seek(end);
+			raf.writeInt(100);
+			raf.writeInt(12345);
+			raf.write(new byte[] { 1, 2, 3 });
+		} finally {
+			raf.close();
+		}
+
+		// TEST
+		testee = createEventStore(SegmentedEventStore.DEFAULT_SEGMENT_SIZE);
+		writeEvents(testee, 2, 1);
+		testee.close();
+		testee = createEventStore(SegmentedEventStore.DEFAULT_SEGMENT_SIZE);
+
+		// ASSERT
+		final List<DomainEvent> events = toList(testee.readEvents("test", aggregateIdentifier));
+		assertThat(events).hasSize(3);
+		assertThat(events.get(2).getSequenceNumber()).isEqualTo(2L);
+		assertThat(findEndOfData(segmentFile)).isGreaterThan(end);
+
+	}
+
+	@Test
+	public final void testTemporarySegmentIsDeleted() throws IOException {
+
+		// PREPARE
+		testee.close();
+		final File tmpFile = new File(baseDir, "0000000001.seg.tmp");
+		assertThat(tmpFile.createNewFile()).isTrue();
+
+		// TEST
+		testee = createEventStore(SegmentedEventStore.DEFAULT_SEGMENT_SIZE);
+
+		// ASSERT
+		assertThat(tmpFile.exists()).isFalse();
+		assertThat(testee.getSegmentCount()).isEqualTo(1);
+
+	}
+
+	@Test
+	public final void testVisitEvents() {
+
+		// PREPARE
+		final AggregateIdentifier otherIdentifier = new UUIDAggregateIdentifier();
+		writeEvents(testee, 0, 2);
+		testee.appendSnapshotEvent("test", new StubDomainEvent(aggregateIdentifier, 1));
+		testee.appendEvents("test", new SimpleDomainEventStream(new StubDomainEvent(
+		        otherIdentifier, 0)));
+		final List<DomainEvent> visited = new ArrayList<DomainEvent>();
+
+		// TEST
+		testee.visitEvents(new EventVisitor() {
+			@Override
+			public void doWithEvent(final DomainEvent event) {
+				visited.add(event);
+			}
+		});
+
+		// ASSERT
+		assertThat(visited).hasSize(3);
+		assertThat(visited.get(0).getAggregateIdentifier()).isEqualTo(aggregateIdentifier);
+		assertThat(visited.get(1).getAggregateIdentifier()).isEqualTo(aggregateIdentifier);
+		assertThat(visited.get(2).getAggregateIdentifier()).isEqualTo(otherIdentifier);
+
+	}
+
+	@Test
+	public final void testFlushOnAppendDisabled() {
+
+		// PREPARE
+		testee.setFlushOnAppend(false);
+
+		// TEST
+		writeEvents(testee, 0, 3);
+		testee.flush();
+		testee.close();
+		testee = createEventStore(SegmentedEventStore.DEFAULT_SEGMENT_SIZE);
+
+		// ASSERT
+		assertThat(testee.isFlushOnAppend()).isTrue();
+		assertThat(toList(testee.readEvents("test", aggregateIdentifier))).hasSize(3);
+
+	}
+
+	@Test
+	public final void testUnflushedEventsAreInvisible() {
+
+		// PREPARE
+		testee.setFlushOnAppend(false);
+
+		// TEST
+		writeEvents(testee, 0, 2);
+
+		// ASSERT
+		assertThat(testee.getLastSequenceNumber("test", aggregateIdentifier)).isNull();
+		testee.flush();
+		assertThat(testee.getLastSequenceNumber("test", aggregateIdentifier)).isEqualTo(1L);
+
+	}
+
+	@Test
+	public final void testRollback() {
+
+		// PREPARE
+		testee.close();
+		delete(baseDir);
+		testee = createEventStore(2048);
+		writeEvents(testee, 0, 3);
+		testee.setFlushOnAppend(false);
+		for (int i = 3; i < 50; i++) {
+			writeEvents(testee, i, 1);
+		}
+		assertThat(testee.getSegmentCount()).isGreaterThan(1);
+
+		// TEST
+		testee.rollback();
+		writeEvents(testee, 3, 1);
+		testee.flush();
+		testee.close();
+		testee = createEventStore(2048);
+
+		// ASSERT
+		assertThat(testee.getSegmentCount()).isEqualTo(1);
+		final List<DomainEvent> events = toList(testee.readEvents("test", aggregateIdentifier));
+		assertThat(events).hasSize(4);
+		assertThat(events.get(3).getSequenceNumber()).isEqualTo(3L);
+
+	}
+
+	@Test
+	public final void testRollbackWithinSegment() {
+
+		// PREPARE
+		writeEvents(testee, 0, 3);
+		testee.setFlushOnAppend(false);
+		writeEvents(testee, 3, 1);
+		writeEvents(testee, 4, 1);
+		assertThat(testee.getSegmentCount()).isEqualTo(1);
+
+		// TEST
+		testee.rollback();
+		writeEvents(testee, 3, 1);
+		testee.flush();
+		testee.close();
+		testee = createEventStore(SegmentedEventStore.DEFAULT_SEGMENT_SIZE);
+
+		// ASSERT
+		final List<DomainEvent> events = toList(testee.readEvents("test", aggregateIdentifier));
+		assertThat(events).hasSize(4);
+		assertThat(events.get(3).getSequenceNumber()).isEqualTo(3L);
+
+	}
+
+	@Test
+	public final void testGetLastSequenceNumber() {
+
+		// PREPARE
+		writeEvents(testee, 0, 3);
+		testee.appendSnapshotEvent("test", new StubDomainEvent(aggregateIdentifier, 2));
+
+		// TEST & ASSERT
+		assertThat(testee.getLastSequenceNumber("test", aggregateIdentifier)).isEqualTo(2L);
+		assertThat(testee.getLastSequenceNumber("other", aggregateIdentifier)).isNull();
+		assertThat(testee.getLastSequenceNumber("test", new UUIDAggregateIdentifier())).isNull();
+
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public final void testNotOpened() {
+		final SegmentedEventStore store = new SegmentedEventStore();
+		store.setBaseDir(baseDir);
+		store.readEvents("test", aggregateIdentifier);
+	}
+
+	private SegmentedEventStore createEventStore(final int segmentSize) {
+		final SegmentedEventStore eventStore = new SegmentedEventStore();
+		eventStore.setBaseDir(baseDir);
+		eventStore.setSegmentSize(segmentSize);
+		eventStore.open();
+		return eventStore;
+	}
+
+	private void writeEvents(final SegmentedEventStore eventStore, final int first,
+	        final int numberOfEvents) {
+		final List<DomainEvent> events = new ArrayList<DomainEvent>();
+		for (int i = 0; i < numberOfEvents; i++) {
+			events.add(new StubDomainEvent(aggregateIdentifier, first + i));
+		}
+		eventStore.appendEvents("test", new SimpleDomainEventStream(events));
+	}
+
+	private static List<DomainEvent> toList(final DomainEventStream stream) {
+		final List<DomainEvent> list = new ArrayList<DomainEvent>();
+		while (stream.hasNext()) {
+			list.add(stream.next());
+		}
+		return list;
+	}
+
+	private static long findEndOfData(final File file) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			long pos = 0;
+			int length = raf.readInt();
+			while (length > 0) {
+				pos = pos + 8 + length;
+				raf.seek(pos);
+				length = raf.readInt();
+			}
+			return pos;
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static void delete(final File file) {
+		final File[] files = file.listFiles();
+		if (files != null) {
+			for (final File child : files) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+}
+// TESTCODE:END
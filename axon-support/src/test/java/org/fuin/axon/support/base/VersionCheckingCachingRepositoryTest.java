@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2010. Axon Auction Example
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuin.axon.support.base;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.File;
+import java.util.UUID;
+
+import org.axonframework.domain.AggregateIdentifier;
+import org.axonframework.domain.SimpleDomainEventStream;
+import org.axonframework.domain.StubDomainEvent;
+import org.axonframework.domain.UUIDAggregateIdentifier;
+import org.axonframework.eventhandling.SimpleEventBus;
+import org.axonframework.eventsourcing.annotation.AbstractAnnotatedAggregateRoot;
+import org.axonframework.unitofwork.DefaultUnitOfWork;
+import org.axonframework.unitofwork.UnitOfWork;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test {@link VersionCheckingCachingRepository}.
+ * 
+ * @author Michael Schnell
+ */
+// TESTCODE:BEGIN
+public class VersionCheckingCachingRepositoryTest {
+
+	private File baseDir;
+
+	private SegmentedEventStore eventStore;
+
+	private LruCache cache;
+
+	private VersionCheckingCachingRepository<StubAggregate> testee;
+
+	@Before
+	public final void setUp() {
+		baseDir = new File("target/version-checking-repository/" + UUID.randomUUID());
+		eventStore = new SegmentedEventStore();
+		eventStore.setBaseDir(baseDir);
+		eventStore.setSegmentSize(64 * 1024);
+		eventStore.open();
+		cache = new LruCache(10);
+		testee = new VersionCheckingCachingRepository<StubAggregate>(StubAggregate.class);
+		testee.setEventBus(new SimpleEventBus());
+		testee.setEventStore(eventStore);
+		testee.setCache(cache);
+		testee.setVersionProvider(eventStore);
+	}
+
+	@After
+	public final void tearDown() {
+		testee = null;
+		cache = null;
+		eventStore.close();
+		eventStore = null;
+		final File[] files = baseDir.listFiles();
+		if (files != null) {
+			for (final File file : files) {
+				file.delete();
+			}
+		}
+		baseDir.delete();
+		baseDir = null;
+	}
+
+	@Test
+	public final void testLoadFromCache() {
+
+		// PREPARE
+		final StubAggregate aggregate = addAggregate();
+
+		// TEST
+		final StubAggregate loaded = load(aggregate.getIdentifier());
+
+		// ASSERT
+		assertThat(loaded).isSameAs(aggregate);
+		assertThat(cache.getCacheStatistics().getCacheHits()).isEqualTo(1);
+		assertThat(testee.getStaleEntries()).isEqualTo(0);
+
+	}
+
+	@Test
+	public final void testStaleEntryIsReloaded() {
+
+		// PREPARE
+		final StubAggregate aggregate = addAggregate();
+		// Events added without using the repository
+		eventStore.appendEvents("StubAggregate", new SimpleDomainEventStream(new StubDomainEvent(
+		        aggregate.getIdentifier(), 1)));
+
+		// TEST
+		final StubAggregate loaded = load(aggregate.getIdentifier());
+
+		// ASSERT
+		assertThat(loaded).isNotSameAs(aggregate);
+		assertThat(loaded.getVersion()).isEqualTo(1L);
+		assertThat(testee.getStaleEntries()).isEqualTo(1);
+
+	}
+
+	@Test
+	public final void testLoadWithoutCacheEntry() {
+
+		// PREPARE
+		final StubAggregate aggregate = addAggregate();
+		cache.clear();
+
+		// TEST
+		final StubAggregate loaded = load(aggregate.getIdentifier());
+
+		// ASSERT
+		assertThat(loaded).isNotSameAs(aggregate);
+		assertThat(loaded.getVersion()).isEqualTo(0L);
+		assertThat(cache.getCacheStatistics().getCacheMisses()).isEqualTo(1);
+		assertThat(testee.getStaleEntries()).isEqualTo(0);
+
+	}
+
+	private StubAggregate addAggregate() {
+		final UnitOfWork uow = DefaultUnitOfWork.startAndGet();
+		final StubAggregate aggregate = new StubAggregate(new UUIDAggregateIdentifier());
+		aggregate.doSomething();
+		testee.add(aggregate);
+		uow.commit();
+		return aggregate;
+	}
+
+	private StubAggregate load(final AggregateIdentifier identifier) {
+		final UnitOfWork uow = DefaultUnitOfWork.startAndGet();
+		try {
+			return testee.load(identifier);
+		} finally {
+			uow.commit();
+		}
+	}
+
+	/**
+	 * Aggregate that applies stub events.
+	 */
+	public static final class StubAggregate extends AbstractAnnotatedAggregateRoot {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Constructor with identifier.
+		 * 
+		 * @param identifier
+		 *            Unique aggregate identifier.
+		 */
+		public StubAggregate(final AggregateIdentifier identifier) {
+			super(identifier);
+		}
+
+		/**
+		 * Applies a new event.
+		 */
+		public void doSomething() {
+			apply(new StubDomainEvent());
+		}
+
+	}
+
+}
+// TESTCODE:END